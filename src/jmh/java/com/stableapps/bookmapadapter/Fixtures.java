@@ -0,0 +1,67 @@
+package com.stableapps.bookmapadapter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * OKEx v3 frames kept in {@code src/jmh/resources/fixtures}. They are stored
+ * as readable JSON and compressed with raw deflate, the way OKEx sends them,
+ * when loaded.
+ */
+public final class Fixtures {
+
+    public static final String DEPTH_FUTURES_PARTIAL = "depth-futures-partial.json";
+    public static final String DEPTH_FUTURES_UPDATE = "depth-futures-update.json";
+    public static final String DEPTH_SPOT_PARTIAL = "depth-spot-partial.json";
+    public static final String DEPTH_SPOT_UPDATE = "depth-spot-update.json";
+    public static final String TRADE_FUTURES = "trade-futures.json";
+    public static final String TRADE_SPOT = "trade-spot.json";
+    public static final String ORDER_SPOT = "order-spot.json";
+    public static final String ORDER_FUTURES = "order-futures.json";
+    public static final String ACCOUNT_FUTURES = "account-futures.json";
+    public static final String ACCOUNT_SPOT = "account-spot.json";
+
+    private Fixtures() {
+    }
+
+    public static byte[] json(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No fixture " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the fixture as a compressed websocket frame
+     */
+    public static ByteBuffer frame(String name) {
+        return ByteBuffer.wrap(deflate(json(name)));
+    }
+
+    public static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+}
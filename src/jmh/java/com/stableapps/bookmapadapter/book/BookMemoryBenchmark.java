@@ -0,0 +1,124 @@
+package com.stableapps.bookmapadapter.book;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.stableapps.bookmapadapter.model.DepthLevels;
+import com.stableapps.bookmapadapter.util.FixedPoint;
+
+/**
+ * A workspace of many subscribed aliases, each with a filled book and the
+ * depth book its checksum is validated against, updated in turn the way
+ * interleaved depth messages update them. Run with {@code -prof gc} to compare
+ * collections of heap and direct ladders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx512m" })
+public class BookMemoryBenchmark {
+
+    public enum Storage {
+        HEAP, DIRECT
+    }
+
+    @Param({ "HEAP", "DIRECT" })
+    public Storage storage;
+
+    @Param({ "200" })
+    public int aliases;
+
+    /** Levels per side of each book. */
+    private static final int LEVELS = 400;
+    private static final long MID = 10_000;
+
+    private GranulatedBook[] books;
+    private DepthBook[] depthBooks;
+    private final DepthLevels levels = new DepthLevels();
+    private int next;
+    private long seed = 42;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LadderAllocator allocator = storage == Storage.HEAP ? LadderAllocator.HEAP : new LadderAllocator.Direct();
+        FixedPoint.Unit unit = FixedPoint.Unit.WHOLE;
+        books = new GranulatedBook[aliases];
+        depthBooks = new DepthBook[aliases];
+        for (int i = 0; i < aliases; i++) {
+            books[i] = new GranulatedBook(unit, unit, allocator);
+            depthBooks[i] = new DepthBook(allocator);
+            for (int level = 1; level <= LEVELS; level++) {
+                books[i].update(true, unit.value(MID - level), level);
+                books[i].update(false, unit.value(MID + level), level);
+                depthBooks[i].apply(level(unit.value(MID - level), unit.value(level)), true);
+                depthBooks[i].apply(level(unit.value(MID + level), unit.value(level)), false);
+            }
+            books[i].flush(true, (price, size) -> { });
+            books[i].flush(false, (price, size) -> { });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (GranulatedBook book : books) {
+            book.close();
+        }
+        for (DepthBook depthBook : depthBooks) {
+            depthBook.close();
+        }
+    }
+
+    private DepthLevels level(long price, long size) {
+        levels.clear();
+        levels.add(price, size);
+        return levels;
+    }
+
+    /**
+     * A depth message applied to the book and to the depth book, which is
+     * validated every message like with the default checksum interval.
+     */
+    @Benchmark
+    public long update() {
+        GranulatedBook book = books[next];
+        DepthBook depthBook = depthBooks[next];
+        next = next + 1 == books.length ? 0 : next + 1;
+        seed = seed * 6364136223846793005L + 1442695040888963407L;
+        int offset = (int) (seed >>> 33) % LEVELS + 1;
+        boolean isBid = (seed & 1 << 20) != 0;
+        long price = FixedPoint.Unit.WHOLE.value(isBid ? MID - offset : MID + offset);
+        long size = offset + (seed & 7);
+        depthBook.apply(level(price, FixedPoint.Unit.WHOLE.value(size)), isBid);
+        book.update(isBid, price, size);
+        book.applyWindow();
+        book.updateTopOfBook();
+        book.flush(isBid, (bookPrice, bookSize) -> { });
+        return book.getTopOfBook().getBid() + depthBook.checksum();
+    }
+
+    /**
+     * Cost of a full collection with the books retained.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 20)
+    public void fullGc() {
+        System.gc();
+    }
+}
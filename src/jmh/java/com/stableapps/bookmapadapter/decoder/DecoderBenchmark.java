@@ -0,0 +1,87 @@
+package com.stableapps.bookmapadapter.decoder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.DecodeException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.stableapps.bookmapadapter.Fixtures;
+import com.stableapps.bookmapadapter.model.Message;
+import com.stableapps.bookmapadapter.model.MessageType;
+
+/**
+ * Decoding cost per captured frame: {@code frame} is the whole path of a
+ * websocket frame through {@link MessageDecoder} (inflate, classify, parse),
+ * {@code parse} only the typed {@link AbstractDecoder#decode(byte[], int, int)}
+ * of the already inflated JSON.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+
+    @Param({ Fixtures.DEPTH_FUTURES_PARTIAL, Fixtures.DEPTH_FUTURES_UPDATE, Fixtures.DEPTH_SPOT_UPDATE,
+            Fixtures.TRADE_FUTURES, Fixtures.TRADE_SPOT, Fixtures.ORDER_SPOT, Fixtures.ORDER_FUTURES,
+            Fixtures.ACCOUNT_FUTURES, Fixtures.ACCOUNT_SPOT })
+    public String fixture;
+
+    private MessageDecoder messageDecoder;
+    private AbstractDecoder<? extends Message> decoder;
+    private ByteBuffer frame;
+    private byte[] json;
+
+    @Setup
+    public void setUp() {
+        messageDecoder = new MessageDecoder();
+        messageDecoder.init(null);
+        frame = Fixtures.frame(fixture);
+        json = Fixtures.json(fixture);
+        decoder = decoderFor(MessageClassifier.classify(json, 0, json.length));
+        decoder.init(null);
+    }
+
+    @Benchmark
+    public Message frame() throws DecodeException {
+        frame.rewind();
+        return messageDecoder.decode(frame);
+    }
+
+    @Benchmark
+    public Message parse() throws DecodeException {
+        return decoder.decode(json, 0, json.length);
+    }
+
+    private static AbstractDecoder<? extends Message> decoderFor(MessageType type) {
+        switch (type) {
+        case DEPTH:
+            return new SubscribeContractMarketDepthIncrementalResponseDecoder();
+        case TRADE:
+            return new SubscribeContractTradeRecordResponseDecoder();
+        case SPOT_ORDER:
+            return new SubscribeOrderSpotDecoder();
+        case FUTURES_ORDER:
+            return new SubscribeOrderFuturesDecoder();
+        case FUTURES_ACCOUNT:
+            return new SubscribeFuturesAccountResponseDecoder();
+        case SPOT_ACCOUNT:
+            return new SubscribeSpotAccountResponseDecoder();
+        default:
+            throw new IllegalArgumentException("No benchmark decoder for " + type);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.stableapps.bookmapadapter.decoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import org.apache.commons.compress.compressors.deflate64.Deflate64CompressorInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.stableapps.bookmapadapter.Fixtures;
+
+/**
+ * Compares the commons-compress inflation that {@link AbstractDecoder} used to
+ * do per call with the pooled {@link FrameInflater}. Run with
+ * {@code gradle jmh}, the gc profiler reports allocated bytes per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InflateBenchmark {
+
+    @Param({ "20", "200" })
+    public int levels;
+
+    private ByteBuffer heapFrame;
+    private ByteBuffer directFrame;
+
+    @Setup
+    public void setUp() {
+        byte[] compressed = Fixtures.deflate(depthFrame(levels).getBytes(StandardCharsets.UTF_8));
+        heapFrame = ByteBuffer.wrap(compressed);
+        directFrame = ByteBuffer.allocateDirect(compressed.length);
+        directFrame.put(compressed).flip();
+    }
+
+    @Benchmark
+    public String commonsCompress() throws IOException {
+        byte[] bytes = heapFrame.array();
+        try (final ByteArrayOutputStream out = new ByteArrayOutputStream();
+             final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+             final Deflate64CompressorInputStream zin = new Deflate64CompressorInputStream(in)) {
+            final byte[] buffer = new byte[1024];
+            int offset;
+            while (-1 != (offset = zin.read(buffer))) {
+                out.write(buffer, 0, offset);
+            }
+            return out.toString();
+        }
+    }
+
+    @Benchmark
+    public int frameInflaterHeap() throws DataFormatException {
+        return FrameInflater.get().inflate(heapFrame).length();
+    }
+
+    @Benchmark
+    public int frameInflaterDirect() throws DataFormatException {
+        return FrameInflater.get().inflate(directFrame).length();
+    }
+
+    static String depthFrame(int levels) {
+        StringBuilder sb = new StringBuilder(
+                "{\"table\":\"futures/depth\",\"action\":\"update\",\"data\":[{\"instrument_id\":\"BTC-USD-190628\",\"asks\":[");
+        for (int i = 0; i < levels; i++) {
+            sb.append(i == 0 ? "" : ",").append("[\"").append(BigDecimal.valueOf(390000L + i, 2)).append("\",\"").append(i * 7 % 300)
+                    .append("\",\"0\",\"").append(i % 5).append("\"]");
+        }
+        sb.append("],\"bids\":[");
+        for (int i = 0; i < levels; i++) {
+            sb.append(i == 0 ? "" : ",").append("[\"").append(BigDecimal.valueOf(389999L - i, 2)).append("\",\"").append(i * 11 % 300)
+                    .append("\",\"0\",\"").append(i % 3).append("\"]");
+        }
+        return sb.append("],\"timestamp\":\"2019-05-06T07:19:39.348Z\",\"checksum\":-2036653089}]}").toString();
+    }
+}
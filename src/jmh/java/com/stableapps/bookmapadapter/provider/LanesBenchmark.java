@@ -0,0 +1,149 @@
+package com.stableapps.bookmapadapter.provider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.DecodeException;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.stableapps.bookmapadapter.Fixtures;
+import com.stableapps.bookmapadapter.client.Connector;
+import com.stableapps.bookmapadapter.client.MarketDataLanes;
+import com.stableapps.bookmapadapter.decoder.MessageDecoder;
+import com.stableapps.bookmapadapter.model.InstrumentHandle;
+import com.stableapps.bookmapadapter.model.SubscribeContractMarketDepthResponse;
+import com.stableapps.bookmapadapter.model.rest.InstrumentFutures;
+import com.stableapps.bookmapadapter.util.Constants.Market;
+
+import velox.api.layer1.Layer1ApiDataListener;
+import velox.api.layer1.data.MarketMode;
+import velox.api.layer1.data.TradeInfo;
+
+/**
+ * Depth messages of many active futures contracts, handled on the calling
+ * thread or spread over lanes. A batch is dispatched and then waited for, so
+ * the score is the time per message until it reached the listeners.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LanesBenchmark {
+
+    private static final int ALIASES = 16;
+    private static final int ROUNDS = 64;
+
+    /**
+     * {@code 0} handles the messages on the calling thread.
+     */
+    @Param({ "0", "1", "2", "4" })
+    public int lanes;
+
+    private RealTimeProvider provider;
+    private RealTimeProvider.OkexClient client;
+    private MarketDataLanes marketDataLanes;
+    private Connector.MarketDepthListener countingListener;
+    private final AtomicLong handled = new AtomicLong();
+    private InstrumentHandle[] handles;
+    private SubscribeContractMarketDepthResponse depth;
+
+    @Setup
+    public void setUp() throws DecodeException {
+        provider = new RealTimeProvider("okex", "8443", "wss://real.okex.com:8443/ws/v3");
+        client = (RealTimeProvider.OkexClient) provider.getConnector().client;
+        provider.addListener(new NullListener());
+
+        MessageDecoder decoder = new MessageDecoder();
+        decoder.init(null);
+        SubscribeContractMarketDepthResponse partial = (SubscribeContractMarketDepthResponse) decoder
+                .decode(Fixtures.frame(Fixtures.DEPTH_FUTURES_PARTIAL));
+        handles = new InstrumentHandle[ALIASES];
+        for (int i = 0; i < ALIASES; i++) {
+            String symbol = "BTC-USD-" + (190601 + i);
+            String alias = Market.FUTURES + "@" + symbol;
+            InstrumentFutures futures = new InstrumentFutures();
+            futures.setTickSize(0.01);
+            futures.setContractVal(100);
+            futures.setInstrumentId(symbol);
+            provider.genericInstruments.put(alias, futures);
+            provider.pipsSizeMultipliers.put(alias, new ImmutablePair<>(futures.getTickSize(), 1.0));
+            provider.publishContext(alias);
+            handles[i] = InstrumentHandle.forAlias(alias);
+            client.onMarketDepth(handles[i], partial.action, partial.data);
+        }
+
+        // a separate decoder, the depth decoder reuses its response
+        MessageDecoder updateDecoder = new MessageDecoder();
+        updateDecoder.init(null);
+        depth = (SubscribeContractMarketDepthResponse) updateDecoder
+                .decode(Fixtures.frame(Fixtures.DEPTH_FUTURES_UPDATE));
+
+        if (lanes > 0) {
+            marketDataLanes = new MarketDataLanes(lanes);
+            countingListener = (instrument, action, depths) -> {
+                client.onMarketDepth(instrument, action, depths);
+                handled.incrementAndGet();
+            };
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (marketDataLanes != null) {
+            marketDataLanes.close();
+        }
+        provider.singleThreadExecutor.shutdownNow();
+        provider.singleThreadScheduledExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ALIASES * ROUNDS)
+    public long depth() {
+        long expected = handled.get() + ALIASES * ROUNDS;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (InstrumentHandle handle : handles) {
+                if (marketDataLanes == null) {
+                    client.onMarketDepth(handle, depth.action, depth.data);
+                    handled.incrementAndGet();
+                } else {
+                    marketDataLanes.onMarketDepth(countingListener, handle, depth.action, depth.data);
+                }
+            }
+        }
+        while (handled.get() < expected) {
+            Thread.yield();
+        }
+        return expected;
+    }
+
+    static class NullListener implements Layer1ApiDataListener {
+        @Override
+        public void onTrade(String alias, double price, int size, TradeInfo tradeInfo) {
+        }
+
+        @Override
+        public void onDepth(String alias, boolean isBid, int price, int size) {
+        }
+
+        @Override
+        public void onMarketMode(String alias, MarketMode marketMode) {
+        }
+    }
+}
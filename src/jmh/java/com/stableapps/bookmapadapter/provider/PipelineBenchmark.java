@@ -0,0 +1,181 @@
+package com.stableapps.bookmapadapter.provider;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.DecodeException;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.stableapps.bookmapadapter.Fixtures;
+import com.stableapps.bookmapadapter.client.Connector;
+import com.stableapps.bookmapadapter.decoder.MessageDecoder;
+import com.stableapps.bookmapadapter.model.Expiration;
+import com.stableapps.bookmapadapter.model.Message;
+import com.stableapps.bookmapadapter.model.SubscribeContractMarketDepthResponse;
+import com.stableapps.bookmapadapter.model.SubscribeContractTradeRecordResponse;
+import com.stableapps.bookmapadapter.model.Trade;
+import com.stableapps.bookmapadapter.model.rest.InstrumentFutures;
+import com.stableapps.bookmapadapter.model.rest.InstrumentGeneric;
+import com.stableapps.bookmapadapter.model.rest.InstrumentSpot;
+import com.stableapps.bookmapadapter.util.Constants.Market;
+
+import velox.api.layer1.Layer1ApiDataListener;
+import velox.api.layer1.data.MarketMode;
+import velox.api.layer1.data.TradeInfo;
+
+/**
+ * Market data from a decoded message, or from a compressed frame, to the
+ * Bookmap data listeners. The provider is not connected, instruments are
+ * registered the way a subscription does and a counting listener stands in for
+ * Bookmap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({ "FUTURES", "SPOT" })
+    public Market market;
+
+    private RealTimeProvider provider;
+    private RealTimeProvider.OkexClient client;
+    private Connector connector;
+    private MessageDecoder messageDecoder;
+    private CountingListener listener;
+
+    private ByteBuffer depthFrame;
+    private ByteBuffer tradeFrame;
+    private SubscribeContractMarketDepthResponse depth;
+    private SubscribeContractTradeRecordResponse trade;
+
+    @Setup
+    public void setUp() throws DecodeException {
+        boolean isSpot = market == Market.SPOT;
+        String symbol = isSpot ? "BTC-USDT" : "BTC-USD-190628";
+        String alias = market + "@" + symbol;
+
+        provider = new RealTimeProvider("okex", "8443", "wss://real.okex.com:8443/ws/v3");
+        InstrumentGeneric instrument;
+        if (isSpot) {
+            InstrumentSpot spot = new InstrumentSpot();
+            spot.setTickSize(0.1);
+            spot.setMinSize(0.001);
+            instrument = spot;
+        } else {
+            InstrumentFutures futures = new InstrumentFutures();
+            futures.setTickSize(0.01);
+            futures.setContractVal(100);
+            instrument = futures;
+        }
+        instrument.setInstrumentId(symbol);
+        provider.genericInstruments.put(alias, instrument);
+        provider.pipsSizeMultipliers.put(alias, new ImmutablePair<>(instrument.getTickSize(), isSpot ? 1000.0 : 1.0));
+        provider.publishContext(alias);
+
+        connector = provider.getConnector();
+        client = (RealTimeProvider.OkexClient) connector.client;
+        listener = new CountingListener();
+        provider.addListener(listener);
+
+        messageDecoder = new MessageDecoder();
+        messageDecoder.init(null);
+        connector.handleMessage(messageDecoder.decode(Fixtures.frame(
+                isSpot ? Fixtures.DEPTH_SPOT_PARTIAL : Fixtures.DEPTH_FUTURES_PARTIAL)));
+
+        depthFrame = Fixtures.frame(isSpot ? Fixtures.DEPTH_SPOT_UPDATE : Fixtures.DEPTH_FUTURES_UPDATE);
+        tradeFrame = Fixtures.frame(isSpot ? Fixtures.TRADE_SPOT : Fixtures.TRADE_FUTURES);
+
+        // separate decoders, the depth decoder reuses its response
+        MessageDecoder decoder = new MessageDecoder();
+        decoder.init(null);
+        depth = (SubscribeContractMarketDepthResponse) decoder.decode(depthFrame.duplicate());
+        trade = (SubscribeContractTradeRecordResponse) decoder.decode(tradeFrame.duplicate());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.singleThreadExecutor.shutdownNow();
+        provider.singleThreadScheduledExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public long onMarketDepth() {
+        client.onMarketDepth(depth.instrument, depth.action, depth.data);
+        return listener.depths;
+    }
+
+    @Benchmark
+    public long onTradeRecord() {
+        for (Trade record : trade.getData()) {
+            client.onTradeRecord(trade.instrument, Expiration.quarter, record);
+        }
+        return listener.trades;
+    }
+
+    @Benchmark
+    public long handleDepth() {
+        connector.handleMessage(depth);
+        return listener.depths;
+    }
+
+    @Benchmark
+    public long handleTrade() {
+        connector.handleMessage(trade);
+        return listener.trades;
+    }
+
+    /**
+     * Compressed frame to listener: inflate, classify, parse, dispatch, book.
+     */
+    @Benchmark
+    public long depthFrame() throws DecodeException {
+        depthFrame.rewind();
+        Message message = messageDecoder.decode(depthFrame);
+        connector.handleMessage(message);
+        return listener.depths;
+    }
+
+    @Benchmark
+    public long tradeFrame() throws DecodeException {
+        tradeFrame.rewind();
+        Message message = messageDecoder.decode(tradeFrame);
+        connector.handleMessage(message);
+        return listener.trades;
+    }
+
+    static class CountingListener implements Layer1ApiDataListener {
+        long depths;
+        long trades;
+
+        @Override
+        public void onTrade(String alias, double price, int size, TradeInfo tradeInfo) {
+            trades++;
+        }
+
+        @Override
+        public void onDepth(String alias, boolean isBid, int price, int size) {
+            depths++;
+        }
+
+        @Override
+        public void onMarketMode(String alias, MarketMode marketMode) {
+        }
+    }
+}
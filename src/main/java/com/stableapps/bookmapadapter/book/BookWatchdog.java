@@ -0,0 +1,320 @@
+package com.stableapps.bookmapadapter.book;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.stableapps.bookmapadapter.metrics.Counter;
+import com.stableapps.bookmapadapter.metrics.Histogram;
+import com.stableapps.bookmapadapter.metrics.Metrics;
+import com.stableapps.bookmapadapter.model.DepthLevels;
+import com.stableapps.bookmapadapter.model.MarketDepths;
+
+import velox.api.layer1.common.Log;
+
+/**
+ * Watches the depth and trade channel of every subscribed alias for problems
+ * the checksum does not catch: negative sizes, a crossed or locked book, and a
+ * depth channel that stopped while other aliases of its connection keep
+ * receiving messages. The affected channel of
+ * the alias alone is resubscribed through the given callbacks, depth messages
+ * are dropped until the next {@code partial} snapshot arrives.
+ * <p>
+ * Messages only update timestamps and compare the top of book, staleness is
+ * found by {@link #check} which the caller runs periodically. A depth channel
+ * is only stale if another alias of the same connection received a message
+ * within the interval, a connection that stalls as a whole is left to its
+ * heartbeat.
+ */
+public class BookWatchdog {
+
+    private static final Counter negativeSizes = Metrics.counter("watchdog.detections.negativeSize");
+    private static final Counter crossedBooks = Metrics.counter("watchdog.detections.crossed");
+    private static final Counter staleDepths = Metrics.counter("watchdog.detections.staleDepth");
+    private static final Counter staleTrades = Metrics.counter("watchdog.detections.staleTrade");
+    private static final Counter resubscriptions = Metrics.counter("watchdog.resubscriptions");
+    private static final Counter dropped = Metrics.counter("watchdog.droppedWhileRecovering");
+    private static final Histogram depthRecoveryNanos = Metrics.histogram("watchdog.depthRecoveryNanos");
+    private static final Histogram tradeRecoveryNanos = Metrics.histogram("watchdog.tradeRecoveryNanos");
+
+    /**
+     * A channel is not resubscribed again sooner than this after it was
+     * resubscribed, so a book that OKEx keeps sending crossed does not turn
+     * into a resubscription loop.
+     */
+    private static final long MIN_RESUBSCRIBE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * No channel problem is pending, stored as recovery start.
+     */
+    private static final long HEALTHY = 0;
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final Consumer<String> resubscribeDepth;
+    private final Consumer<String> resubscribeTrade;
+    private volatile long staleDepthNanos;
+    private volatile long staleTradeNanos;
+
+    private static class State {
+        final int connection;
+        volatile long lastDepth;
+        volatile long lastTrade;
+        /** Start of the pending recovery of a channel, or {@link #HEALTHY}. */
+        volatile long depthRecovery = HEALTHY;
+        volatile long tradeRecovery = HEALTHY;
+        volatile long lastDepthResubscribe;
+        volatile long lastTradeResubscribe;
+        volatile boolean isPaused;
+
+        State(int connection, long now) {
+            this.connection = connection;
+            lastDepth = now;
+            lastTrade = now;
+            lastDepthResubscribe = now - MIN_RESUBSCRIBE_INTERVAL_NANOS;
+            lastTradeResubscribe = now - MIN_RESUBSCRIBE_INTERVAL_NANOS;
+        }
+    }
+
+    /**
+     * @param staleDepthMillis a depth channel without messages for this long
+     *                         is resubscribed, {@code 0} disables the check
+     * @param staleTradeMillis a trade channel without trades for this long is
+     *                         resubscribed, {@code 0} disables the check
+     * @param resubscribeDepth called with the alias whose depth channel has to
+     *                         be resubscribed, must not block
+     * @param resubscribeTrade called with the alias whose trade channel has to
+     *                         be resubscribed, must not block
+     */
+    public BookWatchdog(long staleDepthMillis, long staleTradeMillis, Consumer<String> resubscribeDepth,
+            Consumer<String> resubscribeTrade) {
+        setStaleDepthMillis(staleDepthMillis);
+        setStaleTradeMillis(staleTradeMillis);
+        this.resubscribeDepth = resubscribeDepth;
+        this.resubscribeTrade = resubscribeTrade;
+    }
+
+    public void setStaleDepthMillis(long millis) {
+        staleDepthNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public void setStaleTradeMillis(long millis) {
+        staleTradeNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Starts watching an alias, e.g. once it has been subscribed. Watching it
+     * again restarts its timers.
+     *
+     * @param connection index of the connection carrying the alias, its
+     *                   other aliases tell a stopped channel from a quiet
+     *                   connection
+     */
+    public void watch(String alias, int connection) {
+        states.put(alias, new State(connection, System.nanoTime()));
+    }
+
+    /**
+     * Stops watching an alias, e.g. after it has been unsubscribed.
+     */
+    public void remove(String alias) {
+        states.remove(alias);
+    }
+
+    /**
+     * Suspends the staleness check of an alias while its connection is down,
+     * until the reconnect subscribes it again and it is {@link #watch watched}
+     * anew.
+     */
+    public void pause(String alias) {
+        State state = states.get(alias);
+        if (state != null) {
+            state.isPaused = true;
+        }
+    }
+
+    /**
+     * Resubscribes the depth channel of an alias whose messages may have been
+     * handled out of order, depth messages are dropped until the next
+     * {@code partial} snapshot arrives.
+     */
+    public void resync(String alias, String reason) {
+        State state = states.get(alias);
+        if (state != null) {
+            resubscribeDepth(alias, state, System.nanoTime(), reason);
+        }
+    }
+
+    /**
+     * Checks a depth message before it is applied.
+     *
+     * @return {@code false} if the message must not be used, because it is
+     *         invalid or the depth channel of the alias is being resubscribed
+     */
+    public boolean onDepth(String alias, String action, MarketDepths depths) {
+        State state = states.get(alias);
+        if (state == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        state.lastDepth = now;
+
+        if ("partial".equals(action)) {
+            long recovery = state.depthRecovery;
+            if (recovery != HEALTHY) {
+                depthRecoveryNanos.record(now - recovery);
+                state.depthRecovery = HEALTHY;
+            }
+        } else if (state.depthRecovery != HEALTHY) {
+            dropped.increment();
+            return false;
+        }
+
+        if (hasNegativeSize(depths.getBids()) || hasNegativeSize(depths.getAsks())) {
+            negativeSizes.increment();
+            resubscribeDepth(alias, state, now, "negative size");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks the book once a depth message has been applied.
+     */
+    public void onBook(String alias, TopOfBook topOfBook) {
+        long bid = topOfBook.getBid();
+        long ask = topOfBook.getAsk();
+        if (bid == TopOfBook.NONE || ask == TopOfBook.NONE
+                || TopOfBook.priceOf(bid) < TopOfBook.priceOf(ask)) {
+            return;
+        }
+        State state = states.get(alias);
+        if (state != null && state.depthRecovery == HEALTHY) {
+            crossedBooks.increment();
+            resubscribeDepth(alias, state, System.nanoTime(),
+                    "crossed book, bid " + TopOfBook.priceOf(bid) + " ask " + TopOfBook.priceOf(ask));
+        }
+    }
+
+    public void onTrade(String alias) {
+        State state = states.get(alias);
+        if (state == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        state.lastTrade = now;
+        long recovery = state.tradeRecovery;
+        if (recovery != HEALTHY) {
+            tradeRecoveryNanos.record(now - recovery);
+            state.tradeRecovery = HEALTHY;
+        }
+    }
+
+    /**
+     * Resubscribes the channels that went quiet for longer than allowed, and
+     * depth channels still waiting for a snapshot.
+     */
+    public void check() {
+        long now = System.nanoTime();
+        long staleDepthNanos = this.staleDepthNanos;
+        long staleTradeNanos = this.staleTradeNanos;
+        Map<Integer, Activity> connections = staleDepthNanos > 0 ? activityOf() : null;
+        for (Map.Entry<String, State> entry : states.entrySet()) {
+            String alias = entry.getKey();
+            State state = entry.getValue();
+            if (state.isPaused) {
+                continue;
+            }
+            if (state.depthRecovery != HEALTHY) {
+                // detected but not resubscribed yet, or the snapshot is late
+                resubscribeDepth(alias, state, now, "no snapshot yet");
+            } else if (staleDepthNanos > 0
+                    && now - Math.max(state.lastDepth, state.lastDepthResubscribe) > staleDepthNanos
+                    && connections.get(state.connection).isOthersActive(state, now, staleDepthNanos)) {
+                staleDepths.increment();
+                resubscribeDepth(alias, state, now,
+                        "no depth for " + TimeUnit.NANOSECONDS.toSeconds(now - state.lastDepth) + "s");
+            }
+            if (staleTradeNanos > 0 && now - Math.max(state.lastTrade, state.lastTradeResubscribe) > staleTradeNanos) {
+                staleTrades.increment();
+                resubscribeTrade(alias, state, now);
+            }
+        }
+    }
+
+    /**
+     * Latest message of any channel per connection, with the alias it came
+     * from and the runner-up, so each alias can be compared with the others.
+     */
+    private static final class Activity {
+        State latestState;
+        long latest = Long.MIN_VALUE;
+        long second = Long.MIN_VALUE;
+
+        void add(State state, long last) {
+            if (latestState == null || last - latest > 0) {
+                if (latestState != null) {
+                    second = latest;
+                }
+                latestState = state;
+                latest = last;
+            } else if (second == Long.MIN_VALUE || last - second > 0) {
+                second = last;
+            }
+        }
+
+        /**
+         * @return {@code true} if another alias of the connection received a
+         *         message within the interval
+         */
+        boolean isOthersActive(State state, long now, long intervalNanos) {
+            long others = state == latestState ? second : latest;
+            return others != Long.MIN_VALUE && now - others <= intervalNanos;
+        }
+    }
+
+    private Map<Integer, Activity> activityOf() {
+        Map<Integer, Activity> connections = new HashMap<>();
+        for (State state : states.values()) {
+            if (!state.isPaused) {
+                connections.computeIfAbsent(state.connection, connection -> new Activity())
+                        .add(state, state.lastTrade - state.lastDepth > 0 ? state.lastTrade : state.lastDepth);
+            }
+        }
+        return connections;
+    }
+
+    private void resubscribeDepth(String alias, State state, long now, String reason) {
+        if (state.depthRecovery == HEALTHY) {
+            state.depthRecovery = now;
+        }
+        if (now - state.lastDepthResubscribe < MIN_RESUBSCRIBE_INTERVAL_NANOS) {
+            return;
+        }
+        state.lastDepthResubscribe = now;
+        resubscriptions.increment();
+        Log.info("Watchdog resubscribing depth of " + alias + ": " + reason);
+        resubscribeDepth.accept(alias);
+    }
+
+    private void resubscribeTrade(String alias, State state, long now) {
+        if (state.tradeRecovery == HEALTHY) {
+            state.tradeRecovery = now;
+        }
+        state.lastTradeResubscribe = now;
+        resubscriptions.increment();
+        Log.info("Watchdog resubscribing trades of " + alias + ": no trade for "
+                + TimeUnit.NANOSECONDS.toSeconds(now - state.lastTrade) + "s");
+        resubscribeTrade.accept(alias);
+    }
+
+    private static boolean hasNegativeSize(DepthLevels levels) {
+        for (int i = 0; i < levels.size(); i++) {
+            if (levels.getSize(i) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
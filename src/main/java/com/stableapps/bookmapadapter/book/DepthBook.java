@@ -0,0 +1,253 @@
+package com.stableapps.bookmapadapter.book;
+
+import java.nio.LongBuffer;
+import java.util.zip.CRC32;
+
+import com.stableapps.bookmapadapter.model.DepthLevels;
+import com.stableapps.bookmapadapter.util.FixedPoint;
+
+/**
+ * Full precision order book of one instrument as sent by OKEx, before any
+ * granulation. Each side keeps its levels sorted best first together with the
+ * number of decimals the price and size were sent with, so the OKEx checksum
+ * string can be reproduced byte for byte.
+ * <p>
+ * The levels are stored in buffers of a {@link LadderAllocator}, three per
+ * side, so the book lives on or off heap like the granulated books. Only the
+ * best {@link #DEFAULT_DEPTH} levels per side are kept: the checksum covers
+ * the best {@value #CHECKSUM_DEPTH}, the rest stands in for levels that move
+ * up when better ones are removed. A level worse than all of a full side is
+ * dropped without a search through the rest, and inserting or removing a
+ * level moves the levels behind it with bulk copies. A book that runs out of
+ * levels after all fails its checksum and is resynchronized.
+ * <p>
+ * The {@code GranulatedBook} of an alias can not stand in for this book: its
+ * ticks do not remember the decimals a level was sent with, which the
+ * checksum string reproduces, and a depth window may have trimmed them.
+ */
+public class DepthBook {
+
+    /**
+     * Number of levels per side covered by the OKEx checksum.
+     */
+    public static final int CHECKSUM_DEPTH = 25;
+    /**
+     * Levels kept per side, half of the 400 OKEx sends.
+     */
+    public static final int DEFAULT_DEPTH = 200;
+
+    /**
+     * Staging area of the bulk copies between the direct buffers of a side,
+     * whose regions overlap.
+     */
+    private static final ThreadLocal<long[]> scratch = ThreadLocal
+            .withInitial(() -> new long[PriceLadder.DEFAULT_CAPACITY]);
+
+    private final LadderAllocator allocator;
+    private final Side bids;
+    private final Side asks;
+
+    private final CRC32 crc = new CRC32();
+    /**
+     * Enough for 4 numbers of up to 40 characters and separators per level.
+     */
+    private final byte[] checksumBuffer = new byte[CHECKSUM_DEPTH * 4 * 41];
+
+    public DepthBook() {
+        this(LadderAllocator.HEAP);
+    }
+
+    public DepthBook(LadderAllocator allocator) {
+        this(allocator, DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param allocator storage of the levels, given back by {@link #close}
+     * @param depth     levels kept per side, at least {@link #CHECKSUM_DEPTH}
+     *                  and at most the capacity of the allocator's buffers
+     */
+    public DepthBook(LadderAllocator allocator, int depth) {
+        if (depth < CHECKSUM_DEPTH) {
+            throw new IllegalArgumentException("Depth " + depth);
+        }
+        this.allocator = allocator;
+        bids = new Side(true, allocator, depth);
+        asks = new Side(false, allocator, depth);
+    }
+
+    public void clear() {
+        bids.clear();
+        asks.clear();
+    }
+
+    /**
+     * Gives the storage of the book back to its allocator, the book must not
+     * be used afterwards.
+     */
+    public void close() {
+        bids.release(allocator);
+        asks.release(allocator);
+    }
+
+    public void apply(DepthLevels levels, boolean isBid) {
+        Side side = isBid ? bids : asks;
+        for (int i = 0; i < levels.size(); i++) {
+            side.set(levels.getPrice(i), levels.getSize(i), levels.getPriceDecimals(i), levels.getSizeDecimals(i));
+        }
+    }
+
+    public int getBidCount() {
+        return bids.count;
+    }
+
+    public int getAskCount() {
+        return asks.count;
+    }
+
+    /**
+     * Computes the OKEx checksum: the signed CRC32 of
+     * {@code bid1Price:bid1Size:ask1Price:ask1Size:bid2Price:...} over the
+     * best {@value #CHECKSUM_DEPTH} levels, a side that runs out is skipped.
+     */
+    public int checksum() {
+        byte[] buffer = checksumBuffer;
+        int position = 0;
+        for (int i = 0; i < CHECKSUM_DEPTH; i++) {
+            if (i < bids.count) {
+                position = bids.write(i, buffer, position);
+            }
+            if (i < asks.count) {
+                position = asks.write(i, buffer, position);
+            }
+        }
+        crc.reset();
+        // the separator after the last level is not part of the string
+        crc.update(buffer, 0, Math.max(position - 1, 0));
+        return (int) crc.getValue();
+    }
+
+    private static final class Side {
+        private final boolean isBid;
+        private final LongBuffer prices;
+        private final LongBuffer sizes;
+        /** Price decimals in the second byte, size decimals in the first. */
+        private final LongBuffer decimals;
+        private final int capacity;
+        private int count;
+
+        Side(boolean isBid, LadderAllocator allocator, int depth) {
+            this.isBid = isBid;
+            prices = allocator.allocate();
+            sizes = allocator.allocate();
+            decimals = allocator.allocate();
+            capacity = Math.min(depth,
+                    Math.min(prices.capacity(), Math.min(sizes.capacity(), decimals.capacity())));
+        }
+
+        void clear() {
+            count = 0;
+        }
+
+        void release(LadderAllocator allocator) {
+            count = 0;
+            allocator.release(prices);
+            allocator.release(sizes);
+            allocator.release(decimals);
+        }
+
+        void set(long price, long size, int priceDecimal, int sizeDecimal) {
+            if (count == capacity && isBehind(price, prices.get(count - 1))) {
+                // worse than all of a full side, the common case deep in
+                // the book
+                return;
+            }
+            int index = find(price);
+            if (index >= 0) {
+                if (size == 0) {
+                    count--;
+                    shift(index + 1, index, count - index);
+                } else {
+                    sizes.put(index, size);
+                    decimals.put(index, priceDecimal << 8 | sizeDecimal);
+                }
+            } else if (size != 0) {
+                index = -index - 1;
+                if (count == capacity) {
+                    count--;
+                }
+                shift(index, index + 1, count - index);
+                prices.put(index, price);
+                sizes.put(index, size);
+                decimals.put(index, priceDecimal << 8 | sizeDecimal);
+                count++;
+            }
+        }
+
+        /**
+         * Moves {@code length} levels from {@code from} to {@code to}.
+         */
+        private void shift(int from, int to, int length) {
+            if (length <= 0) {
+                return;
+            }
+            move(prices, from, to, length);
+            move(sizes, from, to, length);
+            move(decimals, from, to, length);
+        }
+
+        private static void move(LongBuffer buffer, int from, int to, int length) {
+            if (buffer.hasArray()) {
+                long[] array = buffer.array();
+                int offset = buffer.arrayOffset();
+                System.arraycopy(array, offset + from, array, offset + to, length);
+                return;
+            }
+            long[] staged = scratch.get();
+            LongBuffer source = buffer.duplicate();
+            source.limit(from + length);
+            source.position(from);
+            source.get(staged, 0, length);
+            LongBuffer target = buffer.duplicate();
+            target.limit(to + length);
+            target.position(to);
+            target.put(staged, 0, length);
+        }
+
+        private boolean isBehind(long price, long than) {
+            return isBid ? price < than : price > than;
+        }
+
+        int write(int index, byte[] buffer, int position) {
+            long levelDecimals = decimals.get(index);
+            position = FixedPoint.write(prices.get(index), (int) (levelDecimals >>> 8), buffer, position);
+            buffer[position++] = ':';
+            position = FixedPoint.write(sizes.get(index), (int) (levelDecimals & 0xFF), buffer, position);
+            buffer[position++] = ':';
+            return position;
+        }
+
+        /**
+         * Binary search over the levels sorted best first.
+         *
+         * @return index of the price, or {@code -(insertion point) - 1}
+         */
+        private int find(long price) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long value = prices.get(middle);
+                if (value == price) {
+                    return middle;
+                }
+                boolean isBefore = isBid ? value > price : value < price;
+                if (isBefore) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.stableapps.bookmapadapter.book;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.stableapps.bookmapadapter.metrics.Counter;
+import com.stableapps.bookmapadapter.metrics.Histogram;
+import com.stableapps.bookmapadapter.metrics.Metrics;
+import com.stableapps.bookmapadapter.model.MarketDepths;
+
+import velox.api.layer1.common.Log;
+
+/**
+ * Maintains a {@link DepthBook} per alias and verifies it against the checksum
+ * OKEx sends with every depth message. When a check fails the alias is
+ * resynchronized through the given callback and its messages are dropped
+ * until the next {@code partial} snapshot arrives.
+ * <p>
+ * The books take their storage from the allocator set with
+ * {@link #setAllocator}, the same one as the granulated books, so that with
+ * off-heap books the heap does not grow with the number of aliases either.
+ */
+public class DepthChecksumValidator {
+
+    private static final Counter validations = Metrics.counter("depth.checksum.validations");
+    private static final Counter failures = Metrics.counter("depth.checksum.failures");
+    private static final Counter dropped = Metrics.counter("depth.checksum.droppedWhileResyncing");
+    private static final Histogram validationNanos = Metrics.histogram("depth.checksum.validationNanos");
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final Consumer<String> resync;
+    private volatile int interval;
+    private volatile LadderAllocator allocator = LadderAllocator.HEAP;
+
+    /**
+     * Guarded by its own monitor, so that {@link #remove} can not release the
+     * book while a message is applied to it.
+     */
+    private static class State {
+        final DepthBook book;
+        long updates;
+        volatile boolean isResyncing;
+        boolean isClosed;
+
+        State(LadderAllocator allocator) {
+            book = new DepthBook(allocator);
+        }
+    }
+
+    /**
+     * @param interval validate every {@code interval}-th message of an alias,
+     *                 {@code 1} validates all of them and {@code 0} disables
+     *                 validation
+     * @param resync   called with the alias whose book has to be
+     *                 resubscribed, must not block
+     */
+    public DepthChecksumValidator(int interval, Consumer<String> resync) {
+        this.interval = interval;
+        this.resync = resync;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @param interval validate every {@code interval}-th message of an alias
+     *                 from now on, {@code 0} disables validation
+     */
+    public void setInterval(int interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Checksum interval " + interval);
+        }
+        this.interval = interval;
+    }
+
+    /**
+     * Sets the storage of the books of aliases validated from now on.
+     */
+    public void setAllocator(LadderAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    /**
+     * Applies the message to the book of the alias and validates it when due.
+     *
+     * @return {@code false} if the message must not be used because the book
+     *         of the alias is being resynchronized
+     */
+    public boolean onDepth(String alias, String action, MarketDepths depths) {
+        int interval = this.interval;
+        if (interval <= 0) {
+            return true;
+        }
+        State state = states.get(alias);
+        if (state == null) {
+            state = states.computeIfAbsent(alias, key -> new State(allocator));
+        }
+        synchronized (state) {
+            if (state.isClosed) {
+                // a late message of a removed alias
+                return true;
+            }
+            return onDepth(alias, action, depths, state, interval);
+        }
+    }
+
+    private boolean onDepth(String alias, String action, MarketDepths depths, State state, int interval) {
+        boolean isPartial = "partial".equals(action);
+        if (isPartial) {
+            state.book.clear();
+            state.updates = 0;
+            state.isResyncing = false;
+        } else if (state.isResyncing) {
+            dropped.increment();
+            return false;
+        }
+
+        DepthBook book = state.book;
+        book.apply(depths.getBids(), true);
+        book.apply(depths.getAsks(), false);
+
+        if (state.updates++ % interval != 0) {
+            return true;
+        }
+        long start = System.nanoTime();
+        int checksum = book.checksum();
+        validationNanos.recordSince(start);
+        validations.increment();
+
+        if (checksum == depths.checksum) {
+            return true;
+        }
+        failures.increment();
+        Log.info("Depth checksum mismatch for " + alias + ": expected " + depths.checksum + ", calculated "
+                + checksum + ", resyncing");
+        state.isResyncing = true;
+        resync.accept(alias);
+        return false;
+    }
+
+    /**
+     * Forgets the book of an alias, e.g. after it has been unsubscribed.
+     */
+    public void remove(String alias) {
+        State state = states.remove(alias);
+        if (state != null) {
+            synchronized (state) {
+                state.isClosed = true;
+                state.book.close();
+            }
+        }
+    }
+}
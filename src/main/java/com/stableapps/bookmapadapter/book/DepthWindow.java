@@ -0,0 +1,69 @@
+package com.stableapps.bookmapadapter.book;
+
+import java.util.Locale;
+
+/**
+ * Bound on the part of a book that is kept, measured from the best price of
+ * each side either in exchange ticks or in levels.
+ */
+public final class DepthWindow {
+
+    public enum Mode {
+        /** Keeps levels at most {@code size} ticks from the best price. */
+        TICKS,
+        /** Keeps the {@code size} best levels. */
+        LEVELS
+    }
+
+    private final Mode mode;
+    private final int size;
+
+    private DepthWindow(Mode mode, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Depth window size " + size);
+        }
+        this.mode = mode;
+        this.size = size;
+    }
+
+    public static DepthWindow ticks(int ticks) {
+        return new DepthWindow(Mode.TICKS, ticks);
+    }
+
+    public static DepthWindow levels(int levels) {
+        return new DepthWindow(Mode.LEVELS, levels);
+    }
+
+    /**
+     * Parses a window as written by {@link #toString}, e.g. {@code 200 ticks}
+     * or {@code 50 levels}.
+     *
+     * @throws IllegalArgumentException if the text is not a window
+     */
+    public static DepthWindow parse(String text) {
+        String[] parts = text.trim().split("\\s+");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Depth window " + text);
+        }
+        Mode mode;
+        try {
+            mode = Mode.valueOf(parts[1].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Depth window " + text);
+        }
+        return new DepthWindow(mode, Integer.parseInt(parts[0]));
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return size + " " + mode.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,364 @@
+package com.stableapps.bookmapadapter.book;
+
+import java.util.Arrays;
+
+import com.stableapps.bookmapadapter.metrics.Counter;
+import com.stableapps.bookmapadapter.metrics.Metrics;
+import com.stableapps.bookmapadapter.util.FixedPoint;
+
+/**
+ * Aggregated book of one alias as it is shown in Bookmap. OKEx sends the size
+ * of each exchange tick, the book keeps those and sums them into the price
+ * levels of the pips chosen by the user, which may be coarser than the tick.
+ * <p>
+ * Updates are collected per side and {@link #flush flushed} once per message,
+ * so a price level that several ticks fall into is reported once with its
+ * summed size, and not at all if its size did not change in the end. The same
+ * holds for a snapshot replacing the whole book, see {@link #beginSnapshot}.
+ * <p>
+ * An optional {@link DepthWindow} bounds the levels kept per side. Levels
+ * outside of it are ignored, levels the window moves away from are evicted
+ * and reported as removed. They come back with their next update. The same
+ * happens to a level the tick ladder drops because it is full.
+ */
+public class GranulatedBook {
+
+    private static final Counter evicted = Metrics.counter("depth.window.evicted");
+    private static final Counter suppressed = Metrics.counter("depth.window.suppressed");
+
+    private final FixedPoint.Unit tickUnit;
+    private final FixedPoint.Unit pipsUnit;
+
+    private final LadderAllocator allocator;
+    private final PriceLadder bidTicks;
+    private final PriceLadder askTicks;
+    private final PriceLadder bids;
+    private final PriceLadder asks;
+    private final Changes bidChanges = new Changes();
+    private final Changes askChanges = new Changes();
+    private final TopOfBook topOfBook = new TopOfBook();
+
+    private DepthWindow window;
+    /**
+     * Furthest tick kept per side when the window was last applied, or
+     * {@link PriceLadder#NONE}.
+     */
+    private long bidLimit = PriceLadder.NONE;
+    private long askLimit = PriceLadder.NONE;
+    private final PriceLadder.LevelConsumer evictBid = (tick, size) -> evict(true, tick, size);
+    private final PriceLadder.LevelConsumer evictAsk = (tick, size) -> evict(false, tick, size);
+    private boolean closed;
+
+    /**
+     * @param tickUnit exchange tick, identifies a level
+     * @param pipsUnit price granularity chosen by the user, a multiple of the
+     *                 tick
+     */
+    public GranulatedBook(FixedPoint.Unit tickUnit, FixedPoint.Unit pipsUnit) {
+        this(tickUnit, pipsUnit, LadderAllocator.HEAP);
+    }
+
+    /**
+     * @param allocator storage of the ladders, given back by {@link #close}
+     */
+    public GranulatedBook(FixedPoint.Unit tickUnit, FixedPoint.Unit pipsUnit, LadderAllocator allocator) {
+        this.tickUnit = tickUnit;
+        this.pipsUnit = pipsUnit;
+        this.allocator = allocator;
+        bidTicks = new PriceLadder(true, allocator);
+        askTicks = new PriceLadder(false, allocator);
+        bids = new PriceLadder(true, allocator);
+        asks = new PriceLadder(false, allocator);
+        // a level a full tick ladder drops leaves its price level like an
+        // evicted one
+        bidTicks.setDropListener(evictBid);
+        askTicks.setDropListener(evictAsk);
+    }
+
+    /**
+     * @param price fixed point price of the exchange level
+     * @param size  new size of the exchange level
+     */
+    public void update(boolean isBid, long price, long size) {
+        long tick = tickUnit.round(price);
+        PriceLadder ticks = isBid ? bidTicks : askTicks;
+        if (size != 0 && window != null && isOutsideWindow(ticks, tick, isBid)) {
+            suppressed.increment();
+            return;
+        }
+        if (size != 0 && window != null) {
+            extendLimit(tick, isBid);
+        }
+        long previous = ticks.get(tick);
+        if (previous != size) {
+            // the price level first, a tick the ladder drops is taken off it
+            addToLevel(isBid, toPips(price, isBid), size - previous);
+            ticks.set(tick, size);
+        }
+    }
+
+    /**
+     * Bounds the book from the next {@link #applyWindow} on.
+     *
+     * @param window the window, {@code null} keeps every level
+     */
+    public void setWindow(DepthWindow window) {
+        this.window = window;
+        bidLimit = PriceLadder.NONE;
+        askLimit = PriceLadder.NONE;
+    }
+
+    public DepthWindow getWindow() {
+        return window;
+    }
+
+    /**
+     * Evicts the levels the window moved away from since it was last applied,
+     * called once a message has been applied.
+     */
+    public void applyWindow() {
+        if (window != null) {
+            bidLimit = trim(bidTicks, bidLimit, true);
+            askLimit = trim(askTicks, askLimit, false);
+        }
+    }
+
+    /**
+     * Reports the price levels of a side whose size changed since the last
+     * flush, each once and with its new size.
+     */
+    public void flush(boolean isBid, PriceLadder.LevelConsumer consumer) {
+        PriceLadder levels = isBid ? bids : asks;
+        Changes changes = isBid ? bidChanges : askChanges;
+        for (int i = 0; i < changes.count; i++) {
+            long price = changes.prices[i];
+            long size = levels.get(price);
+            if (size != changes.sizesBefore[i]) {
+                consumer.accept(price, size);
+            }
+        }
+        changes.clear();
+    }
+
+    /**
+     * Publishes the best levels after a message has been applied, they are
+     * current even while the changes wait for a conflated flush.
+     */
+    public void updateTopOfBook() {
+        topOfBook.update(bidTicks, askTicks);
+    }
+
+    /**
+     * @return best levels in exchange ticks as of the last
+     *         {@link #updateTopOfBook}, safe to read from any thread
+     */
+    public TopOfBook getTopOfBook() {
+        return topOfBook;
+    }
+
+    /**
+     * @return price levels of a side, in pips
+     */
+    public PriceLadder getSide(boolean isBid) {
+        return isBid ? bids : asks;
+    }
+
+    /**
+     * @return exchange levels of a side that are kept, in ticks
+     */
+    PriceLadder getTicks(boolean isBid) {
+        return isBid ? bidTicks : askTicks;
+    }
+
+    public void clear() {
+        bidLimit = PriceLadder.NONE;
+        askLimit = PriceLadder.NONE;
+        bidTicks.clear();
+        askTicks.clear();
+        bids.clear();
+        asks.clear();
+        bidChanges.clear();
+        askChanges.clear();
+        topOfBook.clear();
+    }
+
+    /**
+     * Gives the storage of the book back to its allocator. The book must not
+     * be used afterwards, callers holding on to it check {@link #isClosed}
+     * under the same lock the book is updated with.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        topOfBook.clear();
+        bidTicks.release(allocator);
+        askTicks.release(allocator);
+        bids.release(allocator);
+        asks.release(allocator);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Replaces the book by the snapshot that is applied next. Instead of
+     * reporting every current level as removed, each is remembered with the
+     * size last reported for it, so the next flush reports only the levels the
+     * snapshot removed, changed or added.
+     */
+    public void beginSnapshot() {
+        bids.forEach(bidChanges::record);
+        asks.forEach(askChanges::record);
+        bidLimit = PriceLadder.NONE;
+        askLimit = PriceLadder.NONE;
+        bidTicks.clear();
+        askTicks.clear();
+        bids.clear();
+        asks.clear();
+    }
+
+    private void addToLevel(boolean isBid, long price, long delta) {
+        long total = (isBid ? bids : asks).add(price, delta);
+        (isBid ? bidChanges : askChanges).record(price, total - delta);
+    }
+
+    private long toPips(long price, boolean isBid) {
+        return FixedPoint.saturatedInt(isBid ? pipsUnit.floor(price) : pipsUnit.ceil(price));
+    }
+
+    private boolean isOutsideWindow(PriceLadder ticks, long tick, boolean isBid) {
+        long best = ticks.getBest();
+        if (best == PriceLadder.NONE || ticks.get(tick) != 0) {
+            // a level that is kept stays up to date until it is evicted
+            return false;
+        }
+        if (window.getMode() == DepthWindow.Mode.TICKS) {
+            return (isBid ? best - tick : tick - best) > window.getSize();
+        }
+        long limit = isBid ? bidLimit : askLimit;
+        return limit != PriceLadder.NONE && (isBid ? tick < limit : tick > limit)
+                && ticks.size() >= window.getSize();
+    }
+
+    /**
+     * Moves the limit of a side out to a level taken beyond it, e.g. while the
+     * best price had dropped back within a message, so that it stays the
+     * furthest tick kept.
+     */
+    private void extendLimit(long tick, boolean isBid) {
+        if (isBid) {
+            if (bidLimit != PriceLadder.NONE && tick < bidLimit) {
+                bidLimit = tick;
+            }
+        } else if (askLimit != PriceLadder.NONE && tick > askLimit) {
+            askLimit = tick;
+        }
+    }
+
+    /**
+     * @return the new limit of the side
+     */
+    private long trim(PriceLadder ticks, long limit, boolean isBid) {
+        long newLimit;
+        if (window.getMode() == DepthWindow.Mode.TICKS) {
+            long best = ticks.getBest();
+            if (best == PriceLadder.NONE) {
+                return PriceLadder.NONE;
+            }
+            newLimit = isBid ? best - window.getSize() : best + window.getSize();
+            boolean isInward = limit == PriceLadder.NONE || (isBid ? newLimit > limit : newLimit < limit);
+            if (!isInward) {
+                // nothing can be beyond a limit that did not move inwards
+                return newLimit;
+            }
+        } else {
+            int levels = ticks.size();
+            if (levels < window.getSize()) {
+                return PriceLadder.NONE;
+            }
+            if (levels == window.getSize() && limit != PriceLadder.NONE) {
+                // full and nothing to evict, the rank scan is skipped
+                return limit;
+            }
+            newLimit = ticks.priceAt(window.getSize() - 1);
+            if (levels == window.getSize()) {
+                return newLimit;
+            }
+        }
+        ticks.removeBeyond(newLimit, isBid ? evictBid : evictAsk);
+        return newLimit;
+    }
+
+    private void evict(boolean isBid, long tick, long size) {
+        evicted.increment();
+        addToLevel(isBid, toPips(tickUnit.value(tick), isBid), -size);
+    }
+
+    /**
+     * Price levels touched since the last flush with their size before the
+     * first change, indexed by an open addressing table so that recording a
+     * level again is a constant time lookup.
+     */
+    private static final class Changes {
+        private long[] prices = new long[64];
+        private long[] sizesBefore = new long[64];
+        private int count;
+        /** Index + 1 into {@link #prices}, {@code 0} for a free slot. */
+        private int[] slots = new int[128];
+
+        void record(long price, long sizeBefore) {
+            int mask = slots.length - 1;
+            int slot = hash(price) & mask;
+            for (int index; (index = slots[slot]) != 0; slot = (slot + 1) & mask) {
+                if (prices[index - 1] == price) {
+                    return;
+                }
+            }
+            if (count == prices.length) {
+                prices = Arrays.copyOf(prices, count * 2);
+                sizesBefore = Arrays.copyOf(sizesBefore, count * 2);
+            }
+            prices[count] = price;
+            sizesBefore[count] = sizeBefore;
+            count++;
+            slots[slot] = count;
+            if (count * 2 > slots.length) {
+                rehash(slots.length * 2);
+            }
+        }
+
+        void clear() {
+            // in reverse order of insertion, so the probe sequence of every
+            // level is still intact when it is looked up
+            int mask = slots.length - 1;
+            for (int i = count - 1; i >= 0; i--) {
+                int slot = hash(prices[i]) & mask;
+                while (slots[slot] != i + 1) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = 0;
+            }
+            count = 0;
+        }
+
+        private void rehash(int length) {
+            slots = new int[length];
+            int mask = length - 1;
+            for (int i = 0; i < count; i++) {
+                int slot = hash(prices[i]) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = i + 1;
+            }
+        }
+
+        private static int hash(long price) {
+            long hash = price * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.stableapps.bookmapadapter.book;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+
+import com.stableapps.bookmapadapter.metrics.Counter;
+import com.stableapps.bookmapadapter.metrics.Metrics;
+
+/**
+ * Source of the arrays behind {@link PriceLadder price ladders} and
+ * {@link DepthBook depth books}. A book takes them when it is created and gives
+ * them back when it is closed.
+ */
+public interface LadderAllocator {
+
+    /**
+     * Keeps the ladders on the heap, released ladders are left to the garbage
+     * collector.
+     */
+    LadderAllocator HEAP = new LadderAllocator() {
+        @Override
+        public LongBuffer allocate() {
+            return LongBuffer.allocate(PriceLadder.DEFAULT_CAPACITY);
+        }
+
+        @Override
+        public void release(LongBuffer buffer) {
+        }
+    };
+
+    /**
+     * @return a zeroed buffer of {@link PriceLadder#DEFAULT_CAPACITY} sizes
+     */
+    LongBuffer allocate();
+
+    /**
+     * Takes back a buffer returned by {@link #allocate}, it must not be used
+     * afterwards.
+     */
+    void release(LongBuffer buffer);
+
+    /**
+     * Keeps the ladders off heap, in direct memory allocated in chunks of
+     * several ladders. Released ladders are zeroed and pooled for the next
+     * book. The chunks themselves are never freed, so closing a book on
+     * unsubscribe makes its memory reusable but does not return it to the
+     * operating system: the pool stays as large as the most books that were
+     * open at once, until the allocator is unreachable and its chunks are
+     * collected.
+     */
+    final class Direct implements LadderAllocator {
+
+        private static final int LADDER_BYTES = PriceLadder.DEFAULT_CAPACITY * Long.BYTES;
+        private static final Counter chunks = Metrics.counter("book.offheap.chunks");
+
+        private final int laddersPerChunk;
+        private final ArrayDeque<LongBuffer> free = new ArrayDeque<>();
+
+        public Direct() {
+            // a subscribed book uses four ladders of three buffers and its
+            // checksum book six buffers, a chunk holds 8 aliases
+            this(144);
+        }
+
+        public Direct(int laddersPerChunk) {
+            if (laddersPerChunk <= 0) {
+                throw new IllegalArgumentException("Ladders per chunk " + laddersPerChunk);
+            }
+            this.laddersPerChunk = laddersPerChunk;
+        }
+
+        @Override
+        public synchronized LongBuffer allocate() {
+            if (free.isEmpty()) {
+                allocateChunk();
+            }
+            return free.pop();
+        }
+
+        @Override
+        public void release(LongBuffer buffer) {
+            for (int i = 0; i < buffer.capacity(); i++) {
+                buffer.put(i, 0);
+            }
+            synchronized (this) {
+                free.push(buffer);
+            }
+        }
+
+        /**
+         * @return number of ladders ready to be allocated without allocating
+         *         direct memory
+         */
+        public synchronized int getFreeCount() {
+            return free.size();
+        }
+
+        private void allocateChunk() {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(LADDER_BYTES * laddersPerChunk)
+                    .order(ByteOrder.nativeOrder());
+            for (int i = 0; i < laddersPerChunk; i++) {
+                chunk.limit((i + 1) * LADDER_BYTES).position(i * LADDER_BYTES);
+                free.push(chunk.slice().order(ByteOrder.nativeOrder()).asLongBuffer());
+            }
+            chunks.increment();
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package com.stableapps.bookmapadapter.book;
+
+import java.nio.LongBuffer;
+
+/**
+ * One side of an aggregated book, with the size of each price level stored in
+ * an array indexed by the price offset from a base price. The array is a window
+ * placed around the best price. Levels outside of it are kept in an overflow
+ * of price and size pairs sorted worst first and are moved into the array when
+ * the window is re-centred because the best price left it. Setting and reading
+ * a level inside the window is a plain array access and the best price is
+ * maintained on every update.
+ * <p>
+ * The window and the overflow are {@link LongBuffer buffers} of the same
+ * capacity, so they may live on or off heap, see {@link LadderAllocator}. A
+ * full overflow drops its worst level, or the new level if that is worse
+ * still, and reports it to the {@link #setDropListener drop listener}. As OKEx
+ * sends at most 400 levels per side this only happens to a window of a few
+ * hundred prices.
+ */
+public class PriceLadder {
+
+    /**
+     * Returned as price when the ladder has no levels.
+     */
+    public static final long NONE = Long.MIN_VALUE;
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final boolean isBid;
+    private final LongBuffer sizes;
+    private final int capacity;
+    /**
+     * Price of the first element of {@link #sizes}.
+     */
+    private long base;
+    private int windowCount;
+    /**
+     * Levels behind the window, the worst at index {@code 0}, so the levels
+     * leaving or entering the window at its worse end are at the end.
+     */
+    private final LongBuffer overflowPrices;
+    private final LongBuffer overflowSizes;
+    private int overflowCount;
+    private long best = NONE;
+    private LevelConsumer dropListener = (price, size) -> { };
+
+    public interface LevelConsumer {
+        void accept(long price, long size);
+    }
+
+    public PriceLadder(boolean isBid) {
+        this(isBid, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of consecutive prices kept in the array
+     */
+    public PriceLadder(boolean isBid, int capacity) {
+        this(isBid, LongBuffer.allocate(capacity), LongBuffer.allocate(capacity), LongBuffer.allocate(capacity));
+    }
+
+    /**
+     * @param allocator storage of the window and the overflow, given back by
+     *                  {@link #release}
+     */
+    public PriceLadder(boolean isBid, LadderAllocator allocator) {
+        this(isBid, allocator.allocate(), allocator.allocate(), allocator.allocate());
+    }
+
+    private PriceLadder(boolean isBid, LongBuffer sizes, LongBuffer overflowPrices, LongBuffer overflowSizes) {
+        if (sizes.capacity() < 4) {
+            throw new IllegalArgumentException("Capacity " + sizes.capacity());
+        }
+        this.isBid = isBid;
+        this.sizes = sizes;
+        this.capacity = sizes.capacity();
+        this.overflowPrices = overflowPrices;
+        this.overflowSizes = overflowSizes;
+    }
+
+    /**
+     * Gives the storage back to the allocator it was taken from, the ladder
+     * must not be used afterwards.
+     */
+    public void release(LadderAllocator allocator) {
+        windowCount = 0;
+        overflowCount = 0;
+        best = NONE;
+        allocator.release(sizes);
+        allocator.release(overflowPrices);
+        allocator.release(overflowSizes);
+    }
+
+    public boolean isBid() {
+        return isBid;
+    }
+
+    /**
+     * @param dropListener called with each level a full overflow drops, the
+     *                     level is gone from the ladder already
+     */
+    public void setDropListener(LevelConsumer dropListener) {
+        this.dropListener = dropListener;
+    }
+
+    public long get(long price) {
+        long index = price - base;
+        if (index >= 0 && index < capacity) {
+            return sizes.get((int) index);
+        }
+        int i = findOverflow(price);
+        return i >= 0 ? overflowSizes.get(i) : 0;
+    }
+
+    /**
+     * Sets the size of a level, {@code 0} removes it. The level itself or
+     * another one may be dropped right away if the overflow is full, see
+     * {@link #setDropListener}.
+     *
+     * @return the previous size of the level
+     */
+    public long set(long price, long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size " + size + " at " + price);
+        }
+        if (size != 0 && (best == NONE || isBetter(price, best))) {
+            best = price;
+            if (!isInWindow(price)) {
+                recentre(price);
+            }
+        }
+
+        long previous;
+        long index = price - base;
+        if (index >= 0 && index < capacity) {
+            int i = (int) index;
+            previous = sizes.get(i);
+            sizes.put(i, size);
+            if (previous == 0 && size != 0) {
+                windowCount++;
+            } else if (previous != 0 && size == 0) {
+                windowCount--;
+            }
+        } else {
+            previous = setOverflow(price, size);
+        }
+
+        if (size == 0 && previous != 0 && price == best) {
+            best = findBest();
+        }
+        return previous;
+    }
+
+    /**
+     * Adds to the size of a level.
+     *
+     * @return the new size of the level
+     */
+    public long add(long price, long delta) {
+        long size = get(price) + delta;
+        set(price, size);
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return best == NONE;
+    }
+
+    /**
+     * @return number of levels with a size
+     */
+    public int size() {
+        return windowCount + overflowCount;
+    }
+
+    /**
+     * @return the best price, or {@link #NONE}
+     */
+    public long getBest() {
+        return best;
+    }
+
+    public long getBestSize() {
+        return best == NONE ? 0 : get(best);
+    }
+
+    /**
+     * The level furthest from the best price. It is found by a scan, callers
+     * are expected to ask for it rarely, e.g. to price a market order.
+     *
+     * @return the worst price, or {@link #NONE}
+     */
+    public long getWorst() {
+        if (overflowCount > 0) {
+            return overflowPrices.get(0);
+        }
+        if (windowCount == 0) {
+            return NONE;
+        }
+        if (isBid) {
+            for (int i = 0; i < capacity; i++) {
+                if (sizes.get(i) != 0) {
+                    return base + i;
+                }
+            }
+        } else {
+            for (int i = capacity - 1; i >= 0; i--) {
+                if (sizes.get(i) != 0) {
+                    return base + i;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @param rank {@code 0} for the best level
+     * @return price of the level at the rank, or {@link #NONE} if there are
+     *         not that many levels
+     */
+    public long priceAt(int rank) {
+        if (rank >= size()) {
+            return NONE;
+        }
+        int seen = 0;
+        if (windowCount > 0) {
+            int from = (int) (best - base);
+            int step = isBid ? -1 : 1;
+            for (int i = from; i >= 0 && i < capacity; i += step) {
+                if (sizes.get(i) != 0 && seen++ == rank) {
+                    return base + i;
+                }
+            }
+        }
+        // levels in the overflow are all behind the window
+        int i = overflowCount - 1 - (rank - seen);
+        return i >= 0 ? overflowPrices.get(i) : NONE;
+    }
+
+    /**
+     * Removes every level further from the best price than the given price.
+     *
+     * @param removed called with each removed level and its size
+     */
+    public void removeBeyond(long price, LevelConsumer removed) {
+        if (windowCount > 0) {
+            long limit = price - base;
+            if (isBid) {
+                for (int i = (int) Math.max(Math.min(limit - 1, capacity - 1), -1); i >= 0; i--) {
+                    removeAt(i, removed);
+                }
+            } else {
+                for (int i = (int) Math.min(Math.max(limit + 1, 0), capacity); i < capacity; i++) {
+                    removeAt(i, removed);
+                }
+            }
+        }
+        if (overflowCount > 0) {
+            int beyond = countWorse(price);
+            for (int i = 0; i < beyond; i++) {
+                removed.accept(overflowPrices.get(i), overflowSizes.get(i));
+            }
+            removeOverflow(0, beyond);
+        }
+        if (best != NONE && isBetter(price, best)) {
+            // the best level itself was beyond the price
+            best = NONE;
+        }
+    }
+
+    private void removeAt(int index, LevelConsumer removed) {
+        long size = sizes.get(index);
+        if (size != 0) {
+            sizes.put(index, 0);
+            windowCount--;
+            removed.accept(base + index, size);
+        }
+    }
+
+    /**
+     * Visits every level with a size, in no particular order.
+     */
+    public void forEach(LevelConsumer consumer) {
+        if (windowCount > 0) {
+            for (int i = 0; i < capacity; i++) {
+                if (sizes.get(i) != 0) {
+                    consumer.accept(base + i, sizes.get(i));
+                }
+            }
+        }
+        for (int i = 0; i < overflowCount; i++) {
+            consumer.accept(overflowPrices.get(i), overflowSizes.get(i));
+        }
+    }
+
+    public void clear() {
+        if (windowCount > 0) {
+            fill(0, capacity);
+            windowCount = 0;
+        }
+        overflowCount = 0;
+        best = NONE;
+    }
+
+    private void fill(int from, int to) {
+        for (int i = from; i < to; i++) {
+            sizes.put(i, 0);
+        }
+    }
+
+    private boolean isBetter(long price, long than) {
+        return isBid ? price > than : price < than;
+    }
+
+    private boolean isInWindow(long price) {
+        long index = price - base;
+        return index >= 0 && index < capacity;
+    }
+
+    /**
+     * Levels better than the best price are always empty, so the next best
+     * level is the first one further away in the window, or the closest one of
+     * the overflow when the window has none left.
+     */
+    private long findBest() {
+        if (windowCount > 0) {
+            int from = (int) (best - base);
+            if (isBid) {
+                for (int i = from - 1; i >= 0; i--) {
+                    if (sizes.get(i) != 0) {
+                        return base + i;
+                    }
+                }
+            } else {
+                for (int i = from + 1; i < capacity; i++) {
+                    if (sizes.get(i) != 0) {
+                        return base + i;
+                    }
+                }
+            }
+        }
+        if (overflowCount == 0) {
+            return NONE;
+        }
+        long next = overflowPrices.get(overflowCount - 1);
+        recentre(next);
+        return next;
+    }
+
+    /**
+     * Moves the window so that the best price is a quarter of its length from
+     * the better end, leaving the rest for the levels behind it.
+     */
+    private void recentre(long bestPrice) {
+        int length = capacity;
+        long newBase = isBid ? bestPrice - (length - length / 4) : bestPrice - length / 4;
+        long shift = newBase - base;
+
+        if (windowCount > 0) {
+            // worst first, so each level is appended to the overflow
+            for (int n = 0; n < length; n++) {
+                int i = isBid ? n : length - 1 - n;
+                long target = i - shift;
+                if (sizes.get(i) != 0 && (target < 0 || target >= length)) {
+                    setOverflow(base + i, sizes.get(i));
+                    sizes.put(i, 0);
+                    windowCount--;
+                }
+            }
+            if (windowCount > 0) {
+                int distance = (int) Math.abs(shift);
+                if (shift > 0) {
+                    for (int i = 0; i < length - distance; i++) {
+                        sizes.put(i, sizes.get(i + distance));
+                    }
+                    fill(length - distance, length);
+                } else {
+                    for (int i = length - 1; i >= distance; i--) {
+                        sizes.put(i, sizes.get(i - distance));
+                    }
+                    fill(0, distance);
+                }
+            }
+        }
+        base = newBase;
+
+        if (overflowCount > 0) {
+            // the prices of the new window, from its worse end
+            int from = countWorse(isBid ? newBase : newBase + length - 1);
+            int to = countWorse(isBid ? newBase + length : newBase - 1);
+            for (int i = from; i < to; i++) {
+                sizes.put((int) (overflowPrices.get(i) - newBase), overflowSizes.get(i));
+                windowCount++;
+            }
+            removeOverflow(from, to);
+        }
+    }
+
+    /**
+     * Sets the size of a level behind the window, {@code 0} removes it.
+     *
+     * @return the previous size of the level
+     */
+    private long setOverflow(long price, long size) {
+        int index = findOverflow(price);
+        if (index >= 0) {
+            long previous = overflowSizes.get(index);
+            if (size == 0) {
+                removeOverflow(index, index + 1);
+            } else {
+                overflowSizes.put(index, size);
+            }
+            return previous;
+        }
+        if (size == 0) {
+            return 0;
+        }
+        index = -index - 1;
+        if (overflowCount == capacity) {
+            if (index == 0) {
+                // worse than all of a full overflow
+                dropListener.accept(price, size);
+                return 0;
+            }
+            long droppedPrice = overflowPrices.get(0);
+            long droppedSize = overflowSizes.get(0);
+            removeOverflow(0, 1);
+            index--;
+            dropListener.accept(droppedPrice, droppedSize);
+        }
+        for (int i = overflowCount; i > index; i--) {
+            overflowPrices.put(i, overflowPrices.get(i - 1));
+            overflowSizes.put(i, overflowSizes.get(i - 1));
+        }
+        overflowPrices.put(index, price);
+        overflowSizes.put(index, size);
+        overflowCount++;
+        return 0;
+    }
+
+    /**
+     * Removes the overflow levels from {@code from} inclusive to {@code to}
+     * exclusive.
+     */
+    private void removeOverflow(int from, int to) {
+        int removed = to - from;
+        if (removed <= 0) {
+            return;
+        }
+        for (int i = to; i < overflowCount; i++) {
+            overflowPrices.put(i - removed, overflowPrices.get(i));
+            overflowSizes.put(i - removed, overflowSizes.get(i));
+        }
+        overflowCount -= removed;
+    }
+
+    /**
+     * Binary search over the overflow levels sorted worst first.
+     *
+     * @return index of the price, or {@code -(insertion point) - 1}
+     */
+    private int findOverflow(long price) {
+        int low = 0;
+        int high = overflowCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = overflowPrices.get(middle);
+            if (value == price) {
+                return middle;
+            } else if (isBetter(price, value)) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return -low - 1;
+    }
+
+    /**
+     * @return number of overflow levels worse than the price
+     */
+    private int countWorse(long price) {
+        int index = findOverflow(price);
+        return index >= 0 ? index : -index - 1;
+    }
+}
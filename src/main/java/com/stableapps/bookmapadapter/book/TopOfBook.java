@@ -0,0 +1,76 @@
+package com.stableapps.bookmapadapter.book;
+
+/**
+ * Best bid and ask of a book, written by the market data thread and readable
+ * from any thread without locking. Price and size of a side are packed into a
+ * single volatile {@code long}, so a reader never sees the price of one level
+ * with the size of another.
+ */
+public class TopOfBook {
+
+    /**
+     * Value of a side without levels.
+     */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private volatile long bid = NONE;
+    private volatile long ask = NONE;
+
+    /**
+     * @return best bid, see {@link #priceOf} and {@link #sizeOf}, or
+     *         {@link #NONE}
+     */
+    public long getBid() {
+        return bid;
+    }
+
+    /**
+     * @return best ask, see {@link #priceOf} and {@link #sizeOf}, or
+     *         {@link #NONE}
+     */
+    public long getAsk() {
+        return ask;
+    }
+
+    public long get(boolean isBid) {
+        return isBid ? bid : ask;
+    }
+
+    /**
+     * @return price of a packed level, in the units of the book
+     */
+    public static int priceOf(long level) {
+        return (int) (level >> 32);
+    }
+
+    public static int sizeOf(long level) {
+        return (int) level;
+    }
+
+    void update(PriceLadder bids, PriceLadder asks) {
+        long bid = pack(bids);
+        if (bid != this.bid) {
+            this.bid = bid;
+        }
+        long ask = pack(asks);
+        if (ask != this.ask) {
+            this.ask = ask;
+        }
+    }
+
+    void clear() {
+        bid = NONE;
+        ask = NONE;
+    }
+
+    private static long pack(PriceLadder side) {
+        long price = side.getBest();
+        if (price == PriceLadder.NONE) {
+            return NONE;
+        }
+        // prices in ticks or pips are far below 2^31, OKEx ticks are small
+        // relative to the price but not that small
+        long size = Math.min(side.getBestSize(), Integer.MAX_VALUE);
+        return (long) (int) price << 32 | size;
+    }
+}
@@ -0,0 +1,52 @@
+package com.stableapps.bookmapadapter.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays of the reconnect attempts of a connection, doubling from
+ * {@code minSeconds} up to {@code maxSeconds}. Every delay is drawn at random
+ * from the upper half of its range, so connections that dropped together do
+ * not reconnect in lockstep. Tyrus schedules reconnects in whole seconds, the
+ * first delay may be {@code 0} to retry at once.
+ */
+public class Backoff {
+
+    private final long minSeconds;
+    private final long maxSeconds;
+    private int attempts;
+
+    public Backoff(long minSeconds, long maxSeconds) {
+        if (minSeconds < 0 || maxSeconds < Math.max(1, minSeconds)) {
+            throw new IllegalArgumentException("Backoff " + minSeconds + ".." + maxSeconds + "s");
+        }
+        this.minSeconds = minSeconds;
+        this.maxSeconds = maxSeconds;
+    }
+
+    /**
+     * @return seconds to wait before the next attempt
+     */
+    public synchronized long nextDelaySeconds() {
+        long cap = maxSeconds;
+        if (attempts < Long.SIZE - 2) {
+            cap = Math.min(maxSeconds, Math.max(1, minSeconds) << attempts);
+        }
+        attempts++;
+        long floor = Math.max(minSeconds, cap / 2);
+        return floor + ThreadLocalRandom.current().nextLong(cap - floor + 1);
+    }
+
+    /**
+     * @return attempts since the last {@link #reset}
+     */
+    public synchronized int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Starts over with the shortest delay, once a connection is open again.
+     */
+    public synchronized void reset() {
+        attempts = 0;
+    }
+}
@@ -0,0 +1,232 @@
+package com.stableapps.bookmapadapter.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import com.stableapps.bookmapadapter.metrics.Counter;
+import com.stableapps.bookmapadapter.metrics.Metrics;
+import com.stableapps.bookmapadapter.model.InstrumentHandle;
+
+import velox.api.layer1.common.Log;
+
+/**
+ * Spreads the market data subscriptions of the aliases over several
+ * connections, each with its own socket and read thread. Connection {@code 0}
+ * is the primary connector, which also carries logins and trading channels,
+ * the others are created on first use and carry market data only.
+ * <p>
+ * An alias is assigned by the hash of its instrument when it is first
+ * subscribed. The messages of every alias are counted, and {@link #rebalance}
+ * proposes to move an alias off a connection that carries clearly more than
+ * its share. The caller performs the move and confirms it with
+ * {@link #assign}.
+ */
+public class ConnectionPool {
+
+    /**
+     * A connection is hot when it carries this much more than the average.
+     */
+    public static final double HOT_RATIO = 1.5;
+
+    private static final Counter rebalances = Metrics.counter("pool.rebalances");
+
+    private final Supplier<Connector> primary;
+    private final IntFunction<Connector> factory;
+    private final Connector[] connectors;
+    private final Counter[] messageCounters;
+    private final Map<InstrumentHandle, Assignment> assignments = new ConcurrentHashMap<>();
+
+    private static final class Assignment {
+        volatile int connection;
+        final LongAdder messages = new LongAdder();
+        /** Messages counted up to the last rebalance, read by it alone. */
+        long counted;
+        long recent;
+
+        Assignment(int connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * A proposed move of an alias to another connection.
+     */
+    public static final class Move {
+        public final InstrumentHandle instrument;
+        public final int from;
+        public final int to;
+
+        Move(InstrumentHandle instrument, int from, int to) {
+            this.instrument = instrument;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String toString() {
+            return instrument + " from connection " + from + " to " + to;
+        }
+    }
+
+    /**
+     * @param size    number of connections, at least {@code 1}
+     * @param primary the primary connector, it may be replaced over time
+     * @param factory creates the market data connector of an index above
+     *                {@code 0}
+     */
+    public ConnectionPool(int size, Supplier<Connector> primary, IntFunction<Connector> factory) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Connection count " + size);
+        }
+        this.primary = primary;
+        this.factory = factory;
+        connectors = new Connector[size];
+        messageCounters = new Counter[size];
+        for (int i = 0; i < size; i++) {
+            messageCounters[i] = Metrics.counter("pool.connection" + i + ".messages");
+        }
+    }
+
+    public int size() {
+        return connectors.length;
+    }
+
+    /**
+     * @return connection the alias is assigned to, assigning it by hash if it
+     *         is not yet
+     */
+    public int indexOf(InstrumentHandle instrument) {
+        return assignments.computeIfAbsent(instrument,
+                handle -> new Assignment(Math.floorMod(handle.hashCode(), connectors.length))).connection;
+    }
+
+    public Connector connectorOf(InstrumentHandle instrument) {
+        return get(indexOf(instrument));
+    }
+
+    /**
+     * @return the connector of an index, created on first use
+     */
+    public Connector get(int index) {
+        if (index == 0) {
+            return primary.get();
+        }
+        synchronized (connectors) {
+            if (connectors[index] == null) {
+                connectors[index] = factory.apply(index);
+            }
+            return connectors[index];
+        }
+    }
+
+    /**
+     * @return the market data connectors created so far, without the primary
+     */
+    public List<Connector> getCreated() {
+        List<Connector> created = new ArrayList<>();
+        synchronized (connectors) {
+            for (int i = 1; i < connectors.length; i++) {
+                if (connectors[i] != null) {
+                    created.add(connectors[i]);
+                }
+            }
+        }
+        return created;
+    }
+
+    /**
+     * @return aliases assigned to a connection
+     */
+    public List<InstrumentHandle> aliasesOf(int index) {
+        List<InstrumentHandle> aliases = new ArrayList<>();
+        assignments.forEach((handle, assignment) -> {
+            if (assignment.connection == index) {
+                aliases.add(handle);
+            }
+        });
+        return aliases;
+    }
+
+    public void assign(InstrumentHandle instrument, int index) {
+        indexOf(instrument);
+        assignments.get(instrument).connection = index;
+    }
+
+    public void remove(InstrumentHandle instrument) {
+        assignments.remove(instrument);
+    }
+
+    /**
+     * Counts a market data message of an alias, called for every message.
+     */
+    public void onMessage(InstrumentHandle instrument) {
+        Assignment assignment = assignments.get(instrument);
+        if (assignment != null) {
+            assignment.messages.increment();
+        }
+    }
+
+    /**
+     * Compares the messages each connection received since the last call, run
+     * periodically from a single thread.
+     *
+     * @return the alias to move off the hottest connection, or {@code null}
+     *         if the connections are balanced enough
+     */
+    public Move rebalance() {
+        int size = connectors.length;
+        long[] loads = new long[size];
+        long total = 0;
+        for (Assignment assignment : assignments.values()) {
+            long count = assignment.messages.sum();
+            assignment.recent = count - assignment.counted;
+            assignment.counted = count;
+            loads[assignment.connection] += assignment.recent;
+            total += assignment.recent;
+        }
+        int hottest = 0;
+        int coolest = 0;
+        for (int i = 0; i < size; i++) {
+            messageCounters[i].add(loads[i]);
+            if (loads[i] > loads[hottest]) {
+                hottest = i;
+            }
+            if (loads[i] < loads[coolest]) {
+                coolest = i;
+            }
+        }
+        if (size == 1 || loads[hottest] <= HOT_RATIO * total / size) {
+            return null;
+        }
+
+        // the alias that brings both connections closest to each other, one
+        // carrying the whole gap or more would only make the other one hot
+        long gap = loads[hottest] - loads[coolest];
+        InstrumentHandle best = null;
+        long bestDistance = Long.MAX_VALUE;
+        for (Map.Entry<InstrumentHandle, Assignment> entry : assignments.entrySet()) {
+            Assignment assignment = entry.getValue();
+            if (assignment.connection != hottest || assignment.recent <= 0 || assignment.recent >= gap) {
+                continue;
+            }
+            long distance = Math.abs(gap - 2 * assignment.recent);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = entry.getKey();
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        rebalances.increment();
+        Move move = new Move(best, hottest, coolest);
+        Log.info("Connection " + hottest + " is hot with " + loads[hottest] + " of " + total
+                + " messages, moving " + move);
+        return move;
+    }
+}
@@ -18,20 +18,26 @@ import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -42,7 +48,6 @@ import javax.websocket.DeploymentException;
 import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
 import javax.websocket.MessageHandler;
-import javax.websocket.RemoteEndpoint.Basic;
 import javax.websocket.Session;
 
 import org.glassfish.tyrus.client.ClientManager;
@@ -50,33 +55,20 @@ import org.glassfish.tyrus.client.ClientProperties;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.stableapps.bookmapadapter.decoder.ErrorWsDecoder;
-import com.stableapps.bookmapadapter.decoder.LoginResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.PongDecoder;
-import com.stableapps.bookmapadapter.decoder.StringMessageDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeContractMarketDepthIncrementalInitialResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeContractMarketDepthIncrementalResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeContractTradeRecordInitialResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeContractTradeRecordResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeFuturesAccountInitialResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeFuturesAccountResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeOrderFuturesDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeOrderInitialResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeOrderSpotDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribePositionFuturesDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribePositionFuturesInitialResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeSpotAccountInitialResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeSpotAccountResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.SubscribeSpotMarginAccountInitialResponseDecoder;
-import com.stableapps.bookmapadapter.decoder.UnsubscribeResponseDecoder;
-import com.stableapps.bookmapadapter.model.ErrorWs;
+import com.stableapps.bookmapadapter.decoder.MessageDecoder;
+import com.stableapps.bookmapadapter.metrics.Counter;
+import com.stableapps.bookmapadapter.metrics.FeedLatency;
+import com.stableapps.bookmapadapter.metrics.Histogram;
+import com.stableapps.bookmapadapter.metrics.Metrics;
 import com.stableapps.bookmapadapter.model.Event;
 import com.stableapps.bookmapadapter.model.Expiration;
 import com.stableapps.bookmapadapter.model.ForecastPrice;
+import com.stableapps.bookmapadapter.model.InstrumentHandle;
 import com.stableapps.bookmapadapter.model.LoginResponse;
 import com.stableapps.bookmapadapter.model.MarketDepths;
 import com.stableapps.bookmapadapter.model.MarketPrice;
 import com.stableapps.bookmapadapter.model.Message;
+import com.stableapps.bookmapadapter.model.MessageType;
 import com.stableapps.bookmapadapter.model.OrderData;
 import com.stableapps.bookmapadapter.model.OrderDataFutures;
 import com.stableapps.bookmapadapter.model.OrderDataSpot;
@@ -112,6 +104,37 @@ import velox.api.layer1.data.DisconnectionReason;
 public class Connector extends Endpoint implements AutoCloseable {
 
 	private static final int HEART_BEAT_INTERVAL = 5_000;//5 seconds
+	/**
+	 * A session without a pong this long after its ping is considered dead
+	 * and closed, so that it reconnects.
+	 */
+	private static final long PONG_TIMEOUT_MILLIS = 3_000;
+	private static final long HEART_BEAT_TICK_MILLIS = 500;
+	private static final long MIN_RECONNECT_DELAY_SECONDS = 0;
+	private static final long MAX_RECONNECT_DELAY_SECONDS = 30;
+
+	private static final Counter reconnectAttempts = Metrics.counter("connection.reconnectAttempts");
+	private static final Counter pongTimeouts = Metrics.counter("connection.pongTimeouts");
+	/** From the loss of a connection until it is open again. */
+	private static final Histogram downNanos = Metrics.histogram("connection.downNanos");
+	private static final Histogram heartbeatRttNanos = Metrics.histogram("connection.heartbeatRttNanos");
+
+	/**
+	 * Sends the pings and checks the pongs of all connectors.
+	 */
+	private static final ScheduledThreadPoolExecutor heartbeats = new ScheduledThreadPoolExecutor(1, runnable -> {
+		Thread thread = new Thread(runnable, "okex-heartbeat");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		heartbeats.setRemoveOnCancelPolicy(true);
+	}
+	/**
+	 * OKEx rejects a request whose channels are longer than this in total.
+	 */
+	private static final int MAX_ARGS_LENGTH = 4096;
 	private static final long SIGNATURE_LIFE = 25;
 
 	public static String getServerResponse(String address) {
@@ -245,48 +268,28 @@ public class Connector extends Endpoint implements AutoCloseable {
     }
 
 	public Session session;
-	private Timer timer;
-	private final ReentrantReadWriteLock.WriteLock wLock;
-	private final Condition newPong;
-	private Pong pong;
+	private volatile Pong pong;
+	private final AtomicReference<ConnectionState> state = new AtomicReference<>(ConnectionState.CONNECTING);
+	private final Backoff backoff = new Backoff(MIN_RECONNECT_DELAY_SECONDS, MAX_RECONNECT_DELAY_SECONDS);
+	private ScheduledFuture<?> heartbeat;
+	/** When the unanswered ping was sent, {@code 0} if there is none. */
+	private volatile long pingSentNanos;
+	private volatile long lastPingNanos;
+	private volatile long connectionLostNanos;
     private final ObjectMapper objectMapper;
-    private final Condition newSubscribeContractMarketDepthInitialResponse;
-    private final Condition newSubscribeContractTradeRecordInitialResponse;
-    private final Condition newSubscribeOrderInitialResponse;
-    private final Condition newSubscribeOrderSpot;
-    private final Condition newSubscribeOrderFutures;
-    private final Condition newSubscribeFuturesAccountInitialResponse;
-    private final Condition newSubscribeFuturesAccountResponse;
-    private final Condition newSubscribeSpotAccountInitialResponse;
-    private final Condition newSubscribeSpotAccountResponse;
-    private final Condition newSubscribeSpotMarginAccountInitialResponse;
-    private final Condition newSubscribeFuturesPositionResponse;
-    private final Condition newSubscribeFuturesPositionInitialResponse;
-    private final Condition newLoginResponse;
-    private final Condition newUnsubscribeResponse;
-    
-    private SubscribeContractMarketDepthInitialResponse subscribeContractMarketDepthInitialResponse;
-    private SubscribeOrderInitialResponse subscribeOrderInitialResponse;
-    private SubscribeOrderSpot subscribeOrderSpot;
-    private SubscribeOrderFutures subscribeOrderFutures;
-    private SubscribeContractTradeRecordInitialResponse subscribeContractTradeRecordInitialResponse;
-    private SubscribeFuturesAccountInitialResponse subscribeFuturesAccountInitialResponse;
-    private SubscribeFuturesAccountResponse subscribeFuturesAccountResponse;
-    private SubscribeSpotAccountInitialResponse subscribeSpotAccountInitialResponse;
-    private SubscribeSpotAccountResponse subscribeSpotAccountResponse;
-    private SubscribeSpotMarginAccountInitialResponse subscribeSpotMarginAccountInitialResponse;
-    private SubscribeFuturesPositionResponse subscribeFuturesPositionResponse;
-    private SubscribeFuturesPositionInitialResponse subscribeFuturesPositionInitialResponse;
-    private LoginResponse loginResponse;
-    private UnsubscribeResponse unsubscribeResponse;
+    private final PendingRequests pendingRequests = new PendingRequests();
+    private volatile LoginResponse loginResponse;
+    private final Map<MessageType, Consumer<Message>> handlers = new EnumMap<>(MessageType.class);
     public final AbstractClient client;
-    public boolean isReconnecting;
     public final String apiKey;
     public final String secretKey;
     public final String passPhraze;
 	
 	public final RestClient restClient;
 	private final ExecutorService singleThreadExecutor;
+	private volatile MarketDataLanes lanes;
+	private volatile FeedArbiter feedArbiter;
+	private volatile boolean isStandby;
 	private CopyOnWriteArrayList<Layer1ApiAdminListener> adminListeners;
 	private String wsLink;
 	private String exchange;
@@ -295,33 +298,43 @@ public class Connector extends Endpoint implements AutoCloseable {
         this.adminListeners = adminListeners;
     }
 
+    /**
+     * Moves handling of depth and trade messages from the socket read thread
+     * to lanes sharded by instrument, see {@link MarketDataLanes}. The lanes
+     * are owned by the caller and shared with the other connections.
+     *
+     * @param lanes the lanes, {@code null} handles messages on the read
+     *              thread
+     */
+    public void setMarketDataLanes(MarketDataLanes lanes) {
+        this.lanes = lanes;
+    }
+
+    /**
+     * Passes depth and trade messages through an arbiter shared with another
+     * session subscribed to the same channels, only the first copy of each
+     * message is handled.
+     *
+     * @param feedArbiter the arbiter, {@code null} handles every message
+     * @param isStandby   whether this is the standby session, for the
+     *                    statistics of which session was faster
+     */
+    public void setFeedArbiter(FeedArbiter feedArbiter, boolean isStandby) {
+        this.isStandby = isStandby;
+        this.feedArbiter = feedArbiter;
+    }
+
     public Connector(String apiKey, String secretKey, String passPhraze, AbstractClient client, String wsLink, String exchange) {
 		this.apiKey = apiKey;
 		this.secretKey = secretKey;
 		this.passPhraze = passPhraze;
 		this.exchange = exchange;
-		ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
-		wLock = rwLock.writeLock();
-		newPong = wLock.newCondition();
-		newSubscribeContractMarketDepthInitialResponse = wLock.newCondition();
-		newSubscribeContractTradeRecordInitialResponse = wLock.newCondition();
-		newSubscribeOrderInitialResponse = wLock.newCondition();
-		newSubscribeOrderSpot = wLock.newCondition();
-		newSubscribeOrderFutures = wLock.newCondition();
-		newSubscribeFuturesAccountInitialResponse = wLock.newCondition();
-		newSubscribeFuturesAccountResponse = wLock.newCondition();
-		newSubscribeSpotAccountInitialResponse = wLock.newCondition();
-		newSubscribeSpotAccountResponse = wLock.newCondition();
-        newSubscribeSpotMarginAccountInitialResponse = wLock.newCondition();
-        newSubscribeFuturesPositionResponse = wLock.newCondition();
-        newSubscribeFuturesPositionInitialResponse = wLock.newCondition();
-		newLoginResponse = wLock.newCondition();
-		newUnsubscribeResponse = wLock.newCondition();
 		objectMapper = new ObjectMapper();
 		this.client = client;
 		this.restClient = new RestClient(apiKey, secretKey, exchange);
 		singleThreadExecutor = Executors.newSingleThreadExecutor();
 		this.wsLink = wsLink;
+		registerHandlers();
 	}
 
 	/*
@@ -329,302 +342,163 @@ public class Connector extends Endpoint implements AutoCloseable {
 	** This will received the latest OKEX Contract Data. 
 	 */
 	
-	public boolean subscribeTrade(String symbol, Market market) {
-	    String type = market.toString().toLowerCase();
-	    try {
-            LinkedHashMap<String, Object> params = new LinkedHashMap<>();
-            params.put("op", "subscribe");
-            List <String> args = new LinkedList<String>();
-            args.add(type + "/trade:" + symbol);
-            params.put("args", args);
-            String json = objectMapper.writeValueAsString(params);
-            Log.info(json);
-            getSession().getBasicRemote().sendText(json);
-            SubscribeContractTradeRecordInitialResponse response
-            = waitFor(SubscribeContractTradeRecordInitialResponse.class);
-            
-            if (!response.getData().isResult()) {
-                return false;
-            }
-            return true;
-        } catch (JsonProcessingException ex) {
-            Log.error("Error converting to JSON", ex);
-            return false;
-        } catch (IOException ex) {
-            Log.error("Error sending request to " + exchange, ex);
-            return false;
-        }
+	public static String depthChannel(Market market, String symbol) {
+	    return market.toString().toLowerCase() + "/depth:" + symbol;
 	}
-	
-	public boolean subscribeOrder(String symbol, Market market) {
-	    String type = market.toString().toLowerCase();
-	    try {
-	        LinkedHashMap<String, Object> params = new LinkedHashMap<>();
-	        params.put("op", "subscribe");
-	        List <String> args = new LinkedList<String>();
-	        List<String> parameters = new LinkedList<>();
-            parameters.add(apiKey);
-            parameters.add(passPhraze);
-            String timestamp = ((Long)Instant.now().plusSeconds(25).getEpochSecond()).toString();
-            parameters.add(timestamp);
-            String method = "GET";
-            String requestPath = "/" + type + "/order:" + symbol;
-            String body = "";
-            
-            /*
-             * The body is the request body string or omitted if there is no request body
-             * (typically for GET requests). For
-             * example:{"product_id":"BTC-USD-0309","order_id":"377454671037440"}
-             */
-            String messageBody = createMessageBody(timestamp, method, requestPath, body);
-            String newSign = generateSignature(secretKey, messageBody);
-            parameters.add(newSign);
-	        args.add(type + "/order:" + symbol);
-	        params.put("args", args);
-	        String json = objectMapper.writeValueAsString(params);
-	        getSession().getBasicRemote().sendText(json);
-	        SubscribeOrderInitialResponse response
-	        = waitFor(SubscribeOrderInitialResponse.class);
-	        
-	        if (!response.event.equals("subscribe")) {
-	            return false;
-	        }
-	        return true;
-	    } catch (JsonProcessingException ex) {
-	        Log.error("Error converting to JSON", ex);
-	        return false;
-	    } catch (IOException ex) {
-	        Log.error("Error sending request to " + exchange, ex);
-	        return false;
-	    }
+
+	public static String tradeChannel(Market market, String symbol) {
+	    return market.toString().toLowerCase() + "/trade:" + symbol;
 	}
-	
-	public void subscribeAccount(String symbol, Market market) {
-        String type = market.toString().toLowerCase();
-	    try {
-	        LinkedHashMap<String, Object> params = new LinkedHashMap<>();
-	        params.put("op", "subscribe");
-	        List <String> args = new LinkedList<String>();
-	        List<String> parameters = new LinkedList<>();
-	        parameters.add(apiKey);
-	        parameters.add(passPhraze);
-	        String timestamp = ((Long)Instant.now().plusSeconds(25).getEpochSecond()).toString();
-	        parameters.add(timestamp);
-	        String method = "GET";
-	        String requestPath = "/" + type + "/account:" + "BTC";
-	        String body = "";
-	        
-	        /*
-	         * The body is the request body string or omitted if there is no request body
-	         * (typically for GET requests). For
-	         * example:{"product_id":"BTC-USD-0309","order_id":"377454671037440"}
-	         */
-	        String messageBody = createMessageBody(timestamp, method, requestPath, body);
-	        String newSign = generateSignature(secretKey, messageBody);
-	        parameters.add(newSign);
-	        args.add(type + "/account:" + "BTC");
-	        params.put("args", args);
-	        String json = objectMapper.writeValueAsString(params);
-	        Log.info(json);
-	        getSession().getBasicRemote().sendText(json);
-	    } catch (JsonProcessingException ex) {
-	        Log.error("Error converting to JSON", ex);
-	    } catch (IOException ex) {
-	        Log.error("Error sending request to " + exchange, ex);
-	    }
+
+	public static String orderChannel(Market market, String symbol) {
+	    return market.toString().toLowerCase() + "/order:" + symbol;
 	}
-	
-	public void subscribePositionFutures(String symbol, Market market) {
-	    String type = market.toString().toLowerCase();
-	    try {
-	        LinkedHashMap<String, Object> params = new LinkedHashMap<>();
-	        params.put("op", "subscribe");
-	        List <String> args = new LinkedList<String>();
-	        List<String> parameters = new LinkedList<>();
-	        parameters.add(apiKey);
-	        parameters.add(passPhraze);
-	        String timestamp = getTimestamp();
-	        parameters.add(timestamp);
-	        String method = "GET";
-	        String requestPath = "/" + type + "/position:" + symbol;
-	        String body = "";
-	        
-	        String messageBody = createMessageBody(timestamp, method, requestPath, body);
-	        Log.info("messageBody\t" + messageBody);
-	        String newSign = generateSignature(secretKey, messageBody);
-	        parameters.add(newSign);
-	        args.add(type + "/position:" + symbol);
-	        params.put("args", args);
-	        String json = objectMapper.writeValueAsString(params);
-	        Log.info(json);
-	        getSession().getBasicRemote().sendText(json);
-	    } catch (JsonProcessingException ex) {
-	        Log.error("Error converting to JSON", ex);
-	    } catch (IOException ex) {
-	        Log.error("Error sending request to " + exchange, ex);
-	    }
+
+	public static String positionChannel(Market market, String symbol) {
+	    return market.toString().toLowerCase() + "/position:" + symbol;
+	}
+
+	/**
+	 * @param currency e.g. {@code BTC}, or the underlying index of a futures
+	 *                 contract
+	 */
+	public static String accountChannel(Market market, String currency) {
+	    return market.toString().toLowerCase() + "/account:" + currency;
+	}
+
+	public boolean subscribeTrade(String symbol, Market market) {
+	    return await(subscribeAsync(tradeChannel(market, symbol)));
 	}
 	
-	public boolean TEMPsubscribeAccount(String symbol, Market market, String baseCurrency) {
-	    String type = market.toString().toLowerCase();
-	    try {
-	        LinkedHashMap<String, Object> params = new LinkedHashMap<>();
-	        params.put("op", "subscribe");
-	        List <String> args = new LinkedList<String>();
-	        List<String> parameters = new LinkedList<>();
-	        parameters.add(apiKey);
-	        parameters.add(passPhraze);
-	        String timestamp = ((Long)Instant.now().plusSeconds(25).getEpochSecond()).toString();
-	        parameters.add(timestamp);
-	        String method = "GET";
-	        String subLink = "/account:";
-	        String requestPath = "/" + type + subLink + baseCurrency;
-	        String body = "";
-	        
-	        /*
-	         * The body is the request body string or omitted if there is no request body
-	         * (typically for GET requests). For
-	         * example:{"product_id":"BTC-USD-0309","order_id":"377454671037440"}
-	         */
-	        String messageBody = createMessageBody(timestamp, method, requestPath, body);
-	        Log.info("messageBody\t" + messageBody);
-	        String newSign = generateSignature(secretKey, messageBody);
-	        parameters.add(newSign);
-	        args.add(type + subLink + baseCurrency);
-	        params.put("args", args);
-	        String json = objectMapper.writeValueAsString(params);
-	        getSession().getBasicRemote().sendText(json);
-	        return true;
-	    } catch (JsonProcessingException ex) {
-	        Log.error("Error converting to JSON", ex);
-	        return false;
-	    } catch (IOException ex) {
-	        Log.error("Error sending request to " + exchange, ex);
-	        return false;
-	    }
+	public boolean subscribeOrder(String symbol, Market market) {
+	    return await(subscribeAsync(orderChannel(market, symbol)));
 	}
 	
 	public boolean TEMPunsubscribeOrder(String symbol, Market market) {
-	    String type = market.toString().toLowerCase();
-	    try {
-	        LinkedHashMap<String, Object> params = new LinkedHashMap<>();
-	        params.put("op", "unsubscribe");
-	        List <String> args = new LinkedList<String>();
-	        List<String> parameters = new LinkedList<>();
-	        parameters.add(apiKey);
-	        parameters.add(passPhraze);
-	        String timestamp = getTimestamp();
-	        parameters.add(timestamp);
-	        String method = "GET";
-	        String requestPath = "/" + type + "/order:" + symbol;
-	        String body = "";
-	        /*
-	         * The body is the request body string or omitted if there is no request body
-	         * (typically for GET requests). For
-	         * example:{"product_id":"BTC-USD-0309","order_id":"377454671037440"}
-	         */
-	        String messageBody = createMessageBody(timestamp, method, requestPath, body);
-	        Log.info("messageBody\t" + messageBody);
-	        String newSign = generateSignature(secretKey, messageBody);
-	        parameters.add(newSign);
-	        args.add(type + "/order:" + symbol);
-	        params.put("args", args);
-	        String json = objectMapper.writeValueAsString(params);
-	        getSession().getBasicRemote().sendText(json);
-	        UnsubscribeResponse response
-	        = waitFor(UnsubscribeResponse.class);
-	        
-	        if (!response.getEvent().contains("unsubscribe")) {
-	            return false;
-	        }
-	        return true;
-	    } catch (JsonProcessingException ex) {
-	        Log.error("Error converting to JSON", ex);
-	        return false;
-	    } catch (IOException ex) {
-	        Log.error("Error sending request to " + exchange, ex);
-	        return false;
-	    }
+	    return await(unsubscribeAsync(orderChannel(market, symbol)));
 	}
 
 	public boolean subscribeContractMarketDepthIncremental(String symbol, Market market) {
-	    String type = market.toString().toLowerCase();
-        try {
-            LinkedHashMap<String, Object> params = new LinkedHashMap<>();
-            params.put("op", "subscribe");
-            List <String> args = new LinkedList<String>();
-            args.add(type + "/depth:" + symbol);
-            params.put("args", args);
-            String json = objectMapper.writeValueAsString(params);
-            Log.info(json);
-            getSession().getBasicRemote().sendText(json);
-            SubscribeContractMarketDepthInitialResponse response
-            = waitFor(SubscribeContractMarketDepthInitialResponse.class);
-            
-            if (!response.getData().isResult()) {
-                return false;
-            }
-            return true;
-        } catch (JsonProcessingException ex) {
-            Log.error("Error converting to JSON", ex);
-            return false;
-        } catch (IOException ex) {
-            Log.error("Error sending request to " + exchange, ex);
-            return false;
-        }
-    }
+	    return await(subscribeAsync(depthChannel(market, symbol)));
+	}
 
 	public boolean unsubscribeContractMarketDepthFull(String symbol, Market market) {
-        String type = market.toString().toLowerCase();
-		try {
-		    LinkedHashMap<String, Object> params = new LinkedHashMap<>();
-            params.put("op", "unsubscribe");
-            List <String> args = new LinkedList<String>();
-            args.add(type + "/depth:" + symbol);
-            params.put("args", args);
-            String json = objectMapper.writeValueAsString(params);
-			getSession().getBasicRemote().sendText(json);
-			UnsubscribeResponse response
-					= waitFor(UnsubscribeResponse.class);
-
-		    if (!response.getEvent().contains("unsubscribe")) {
-				return false;
-			}
-			return true;
-		} catch (JsonProcessingException ex) {
-			Log.error("Error converting to JSON", ex);
-			return false;
-		} catch (IOException ex) {
-			Log.error("Error sending request to " + exchange, ex);
-			return false;
-		}
+	    return await(unsubscribeAsync(depthChannel(market, symbol)));
 	}
 	
 	public boolean unsubscribeTrade(String symbol, Market market) {
-        String type = market.toString().toLowerCase();
-	    try {
-	        LinkedHashMap<String, Object> params = new LinkedHashMap<>();
-	        params.put("op", "unsubscribe");
-	        List <String> args = new LinkedList<String>();
-	        args.add(type + "/trade:" + symbol);
-	        params.put("args", args);
-	        String json = objectMapper.writeValueAsString(params);
-	        getSession().getBasicRemote().sendText(json);
-	        UnsubscribeResponse response
-	        = waitFor(UnsubscribeResponse.class);
-	        
-	        if (!response.getEvent().contains("unsubscribe")) {
-	            return false;
+	    return await(unsubscribeAsync(tradeChannel(market, symbol)));
+	}
+
+	/**
+	 * Subscribes many channels in as few frames as possible and waits until
+	 * every one of them is acknowledged.
+	 *
+	 * @return {@code false} if any of the channels failed, the others stay
+	 *         subscribed
+	 */
+	public boolean subscribe(List<String> channels) {
+	    return await(allOf(subscribeAsync(channels)));
+	}
+
+	/**
+	 * @see #subscribe(List)
+	 */
+	public boolean unsubscribe(List<String> channels) {
+	    return await(allOf(unsubscribeAsync(channels)));
+	}
+
+	/**
+	 * Sends a subscription without waiting for its acknowledgement, so many
+	 * can be in flight at once.
+	 *
+	 * @param channel e.g. {@code spot/depth:BTC-USDT}
+	 * @return completes once OKEx acknowledged the subscription, exceptionally
+	 *         on an error for the channel, a timeout or a lost connection
+	 */
+	public CompletableFuture<Message> subscribeAsync(String channel) {
+	    return subscribeAsync(Collections.singletonList(channel)).get(channel);
+	}
+
+	/**
+	 * @see #subscribeAsync
+	 */
+	public CompletableFuture<Message> unsubscribeAsync(String channel) {
+	    return unsubscribeAsync(Collections.singletonList(channel)).get(channel);
+	}
+
+	/**
+	 * Sends the subscriptions of many channels, of any aliases and kinds, in
+	 * as few frames as OKEx accepts without waiting for their
+	 * acknowledgements.
+	 *
+	 * @return the acknowledgement of every channel, completed in whatever
+	 *         order OKEx answers
+	 */
+	public Map<String, CompletableFuture<Message>> subscribeAsync(List<String> channels) {
+	    return pendingRequests.send("subscribe", channels, unsent -> sendFrames("subscribe", unsent));
+	}
+
+	/**
+	 * @see #subscribeAsync(List)
+	 */
+	public Map<String, CompletableFuture<Message>> unsubscribeAsync(List<String> channels) {
+	    return pendingRequests.send("unsubscribe", channels, unsent -> sendFrames("unsubscribe", unsent));
+	}
+
+	/**
+	 * Packs the channels into frames whose {@code args} stay within
+	 * {@link #MAX_ARGS_LENGTH}.
+	 */
+	private void sendFrames(String op, List<String> channels) throws IOException {
+	    List<String> args = new ArrayList<>();
+	    int length = 0;
+	    for (String channel : channels) {
+	        // quotes and separating comma
+	        int channelLength = channel.length() + 3;
+	        if (!args.isEmpty() && length + channelLength > MAX_ARGS_LENGTH) {
+	            sendFrame(op, args);
+	            args = new ArrayList<>();
+	            length = 0;
 	        }
+	        args.add(channel);
+	        length += channelLength;
+	    }
+	    if (!args.isEmpty()) {
+	        sendFrame(op, args);
+	    }
+	}
+
+	private void sendFrame(String op, List<String> args) throws IOException {
+	    LinkedHashMap<String, Object> params = new LinkedHashMap<>();
+	    params.put("op", op);
+	    params.put("args", args);
+	    String json = objectMapper.writeValueAsString(params);
+	    Log.info(json);
+	    getSession().getBasicRemote().sendText(json);
+	}
+
+	private static CompletableFuture<Void> allOf(Map<String, CompletableFuture<Message>> requests) {
+	    return CompletableFuture.allOf(requests.values().toArray(new CompletableFuture<?>[0]));
+	}
+
+	/**
+	 * @return {@code false} if the request failed, the cause is logged
+	 */
+	private boolean await(CompletableFuture<?> request) {
+	    try {
+	        request.get();
 	        return true;
-	    } catch (JsonProcessingException ex) {
-	        Log.error("Error converting to JSON", ex);
+	    } catch (ExecutionException ex) {
+	        Log.error("Request to " + exchange + " failed", ex.getCause());
 	        return false;
-	    } catch (IOException ex) {
-	        Log.error("Error sending request to " + exchange, ex);
+	    } catch (InterruptedException ex) {
+	        Thread.currentThread().interrupt();
+	        Log.error("Interrupted while waiting for " + exchange, ex);
 	        return false;
 	    }
 	}
+
 //	public boolean unsubscribeContractMarketDepthFull(String symbol, Expiration expiration, int amount) {
 //	    try {
 //	        HashMap<String, String> params = new HashMap<>();
@@ -652,52 +526,25 @@ public class Connector extends Endpoint implements AutoCloseable {
 
 	// subscribe to existing trades
     public boolean subscribeContractTradeRecord(String symbol, Expiration expiration) {
-		try {
-			HashMap<String, String> params = new HashMap<>();
-			params.put("event", Event.addChannel.name());
-			final String channel = "ok_sub_futureusd_X_trade_Y".replace("X", symbol)
-					.replace("Y", expiration.name());
-			params.put("channel", channel);
-			String json = objectMapper.writeValueAsString(params);
-			getSession().getBasicRemote().sendText(json);
-			SubscribeContractTradeRecordInitialResponse response
-					= waitFor(SubscribeContractTradeRecordInitialResponse.class);
-
-			if (!response.getData().isResult()) {
-				return false;
-			}
-			return true;
-		} catch (JsonProcessingException ex) {
-			Log.error("Error converting to JSON", ex);
-			return false;
-		} catch (IOException ex) {
-			Log.error("Error sending request to " + exchange, ex);
-			return false;
-		}
+		final String channel = "ok_sub_futureusd_X_trade_Y".replace("X", symbol)
+				.replace("Y", expiration.name());
+		return await(requestChannel(Event.addChannel, channel));
 	}
 
 	public boolean unsubscribeContractTradeRecord(String symbol, Expiration expiration) {
-		try {
+		final String channel = "ok_sub_futureusd_X_trade_Y".replace("X", symbol)
+				.replace("Y", expiration.name());
+		return await(requestChannel(Event.removeChannel, channel));
+	}
+
+	private CompletableFuture<Message> requestChannel(Event event, String channel) {
+		return pendingRequests.send(PendingRequests.key(event.name(), channel), () -> {
 			HashMap<String, String> params = new HashMap<>();
-			params.put("event", Event.removeChannel.name());
-			final String channel = "ok_sub_futureusd_X_trade_Y".replace("X", symbol)
-					.replace("Y", expiration.name());
+			params.put("event", event.name());
 			params.put("channel", channel);
 			String json = objectMapper.writeValueAsString(params);
 			getSession().getBasicRemote().sendText(json);
-			UnsubscribeResponse response = waitFor(UnsubscribeResponse.class);
-
-			if (!response.getData().isResult()) {
-				return false;
-			}
-			return true;
-		} catch (JsonProcessingException ex) {
-			Log.error("Error converting to JSON", ex);
-			return false;
-		} catch (IOException ex) {
-			Log.error("Error sending request to " + exchange, ex);
-			return false;
-		}
+		});
 	}
 
 	public boolean wslogin() {
@@ -727,15 +574,18 @@ public class Connector extends Endpoint implements AutoCloseable {
 			params.put("op", Event.login.name());
 			params.put("args", parameters);
 			String json = objectMapper.writeValueAsString(params);
-			Basic endPoint = getSession().getBasicRemote();
-			endPoint.sendText(json);
-			LoginResponse response = waitFor(LoginResponse.class);
+			LoginResponse response = (LoginResponse) pendingRequests
+					.send(Event.login.name(), () -> getSession().getBasicRemote().sendText(json)).get();
 			return response.getData().isResult();
 		} catch (JsonProcessingException ex) {
 			Log.error("Error converting to JSON", ex);
 			return false;
-		} catch (IOException ex) {
-			Log.error("Error sending request to " + exchange, ex);
+		} catch (ExecutionException ex) {
+			Log.error("Login to " + exchange + " failed", ex.getCause());
+			return false;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			Log.error("Interrupted while logging in to " + exchange, ex);
 			return false;
 		}
 	}
@@ -747,30 +597,12 @@ public class Connector extends Endpoint implements AutoCloseable {
 	public void connect() {
 		try {
 			final ClientEndpointConfig cec = ClientEndpointConfig.Builder.create()
-					.decoders(Arrays.asList(PongDecoder.class,
-							SubscribeContractMarketDepthIncrementalInitialResponseDecoder.class,
-							SubscribeContractMarketDepthIncrementalResponseDecoder.class,
-							SubscribeContractTradeRecordInitialResponseDecoder.class,
-							SubscribeContractTradeRecordResponseDecoder.class,
-							SubscribeOrderInitialResponseDecoder.class,
-							SubscribeOrderSpotDecoder.class,
-							SubscribeOrderFuturesDecoder.class,
-							LoginResponseDecoder.class,
-							ErrorWsDecoder.class,
-							SubscribeFuturesAccountInitialResponseDecoder.class,
-							SubscribeFuturesAccountResponseDecoder.class,
-							SubscribeSpotAccountInitialResponseDecoder.class,
-							SubscribeSpotAccountResponseDecoder.class,
-                            SubscribeSpotMarginAccountInitialResponseDecoder.class,
-                            SubscribePositionFuturesInitialResponseDecoder.class,
-                            SubscribePositionFuturesDecoder.class,
-							UnsubscribeResponseDecoder.class,
-							StringMessageDecoder.class))
+					.decoders(Arrays.asList(MessageDecoder.class))
 					.build();
 
 			ClientManager client = ClientManager.createClient();
 			client.getProperties().put(ClientProperties.RECONNECT_HANDLER,
-					new ReconnectHandlerImpl(5));
+					new ReconnectHandlerImpl());
 			Log.info("Connector: connect() (Connecting to server)");
 			client.connectToServer(this, cec,
 					new URI(wsLink));
@@ -779,27 +611,126 @@ public class Connector extends Endpoint implements AutoCloseable {
 		}
 	}
 
-	private void cancelTimer() {
-		if (timer != null) {
-			timer.cancel();
-			timer = null;
+	public ConnectionState getState() {
+		return state.get();
+	}
+
+	private ConnectionState setState(ConnectionState next) {
+		ConnectionState previous = state.getAndSet(next);
+		if (previous != next) {
+			Log.info("Connector " + this.hashCode() + ": " + previous + " -> " + next);
 		}
+		return previous;
+	}
+
+	/**
+	 * Enters a state unless the connector is closed, which it never leaves.
+	 *
+	 * @return the previous state, {@link ConnectionState#CLOSED} if it was not
+	 *         changed
+	 */
+	private ConnectionState moveTo(ConnectionState next) {
+		ConnectionState previous;
+		do {
+			previous = state.get();
+			if (previous == ConnectionState.CLOSED) {
+				return previous;
+			}
+		} while (!state.compareAndSet(previous, next));
+		if (previous != next) {
+			Log.info("Connector " + this.hashCode() + ": " + previous + " -> " + next);
+		}
+		return previous;
+	}
+
+	/**
+	 * Marks the connection lost, the downtime counts from the first loss
+	 * since it was open.
+	 */
+	private void onLost() {
+		ConnectionState previous = moveTo(ConnectionState.RECONNECTING);
+		if (previous == ConnectionState.CONNECTED || previous == ConnectionState.CONNECTING) {
+			connectionLostNanos = System.nanoTime();
+		}
+	}
+
+	private synchronized void startHeartbeat(Session session) {
+		stopHeartbeat();
+		pingSentNanos = 0;
+		lastPingNanos = System.nanoTime();
+		heartbeat = heartbeats.scheduleWithFixedDelay(() -> beat(session), HEART_BEAT_TICK_MILLIS,
+				HEART_BEAT_TICK_MILLIS, TimeUnit.MILLISECONDS);
 	}
 
-	private Timer getTimer() {
-		if (timer == null) {
-			timer = new Timer();
+	private synchronized void stopHeartbeat() {
+		if (heartbeat != null) {
+			heartbeat.cancel(false);
+			heartbeat = null;
+		}
+	}
+
+	/**
+	 * Pings an open session every {@link #HEART_BEAT_INTERVAL} and closes it
+	 * once a pong is overdue, runs on the shared heartbeat thread and must not
+	 * block it.
+	 */
+	private void beat(Session session) {
+		if (session != this.session || state.get() != ConnectionState.CONNECTED) {
+			return;
+		}
+		long now = System.nanoTime();
+		long pingSent = pingSentNanos;
+		if (pingSent != 0) {
+			if (now - pingSent > TimeUnit.MILLISECONDS.toNanos(PONG_TIMEOUT_MILLIS)) {
+				pingSentNanos = 0;
+				pongTimeouts.increment();
+				Log.info("Connector " + this.hashCode() + ": no pong within " + PONG_TIMEOUT_MILLIS
+						+ " ms, closing session " + session.hashCode());
+				stopHeartbeat();
+				singleThreadExecutor.submit(() -> closeDead(session));
+			}
+			return;
+		}
+		if (now - lastPingNanos < TimeUnit.MILLISECONDS.toNanos(HEART_BEAT_INTERVAL)) {
+			return;
+		}
+		lastPingNanos = now;
+		pingSentNanos = now;
+		try {
+			session.getAsyncRemote().sendText("ping");
+		} catch (RuntimeException e) {
+			// the pong deadline closes the session if it is gone
+			Log.info("Could not send ping: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Closes a session whose peer stopped answering, with a code that makes
+	 * it reconnect.
+	 */
+	private void closeDead(Session session) {
+		try {
+			session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "no pong"));
+		} catch (IOException | RuntimeException e) {
+			Log.info("Closing dead session " + session.hashCode() + " failed: " + e.getMessage());
 		}
-		return timer;
 	}
 
 	@Override
 	public void close() throws Exception {
 		if (session != null) {
 			Log.info("Closing Client");
-			timer.cancel();
+			Log.info("Frames decoded: " + MessageDecoder.getFrameCount()
+					+ ", inflations per frame: " + MessageDecoder.getInflationsPerFrame());
+			Log.info("Metrics:\n" + Metrics.report());
+		}
+		setState(ConnectionState.CLOSED);
+		stopHeartbeat();
+		if (session != null) {
 			session.close();
 		}
+		pendingRequests.failAll(new IOException("Connector closed"));
+		setMarketDataLanes(null);
 		restClient.close();
 	}
 
@@ -809,15 +740,19 @@ public class Connector extends Endpoint implements AutoCloseable {
 
 	@Override
 	public void onOpen(Session session, EndpointConfig config) {
-		Log.info("Connector " + this.hashCode() +  ": onOpen() session " + session.hashCode() + " isReconnecting " + isReconnecting);
+		Log.info("Connector " + this.hashCode() +  ": onOpen() session " + session.hashCode() + " state " + state.get());
 		this.session = session;
 		session.addMessageHandler((MessageHandler.Whole<Message>) (Message t) -> handleMessage(t));
 
-		cancelTimer();
-		getTimer().schedule(new PingTask(), 1000, HEART_BEAT_INTERVAL);
+		ConnectionState previous = moveTo(ConnectionState.CONNECTED);
+		if (previous == ConnectionState.CLOSED) {
+			return;
+		}
+		backoff.reset();
+		startHeartbeat(session);
 
-		if (isReconnecting) {
-			isReconnecting = false;
+		if (previous == ConnectionState.RECONNECTING) {
+			downNanos.recordSince(connectionLostNanos);
 			singleThreadExecutor.submit(() -> client.onConnectionRestored());
 		}
 	}
@@ -847,80 +782,79 @@ public class Connector extends Endpoint implements AutoCloseable {
         }
 	}
 
-	private void handleMessage(Message t) {
-		if (t instanceof Pong) {
-			setPong((Pong) t);
-	    } else if (t instanceof StringMessage && ((StringMessage)t).getMessage().equals("pong")) {
-	            Pong pong = new Pong();
-	            pong.setEvent(Event.pong);
-	            setPong(pong);
-		} else if (t instanceof SubscribeContractMarketDepthInitialResponse) {
-			setSubscribeContractMarketDepthInitialResponse(
-					(SubscribeContractMarketDepthInitialResponse) t);
-		} else if (t instanceof SubscribeContractMarketDepthResponse) {
-		    SubscribeContractMarketDepthResponse response = ((SubscribeContractMarketDepthResponse)t);
-		    int i = response.table.indexOf('/');
-		    String type = response.table.substring(0, i);
-		    response.alias = type.toUpperCase() + "@" + response.data.instrument_id;
-			setSubscribeContractMarketDepthResponse(response);
-		} else if (t instanceof SubscribeContractTradeRecordInitialResponse) {
-			setSubscribeContractTradeRecordInitialResponse(
-					(SubscribeContractTradeRecordInitialResponse) t);
-		} else if (t instanceof SubscribeContractTradeRecordResponse) {
-		    SubscribeContractTradeRecordResponse response = (SubscribeContractTradeRecordResponse)t;
-		    int i = response.table.indexOf('/');
-            String type = response.table.substring(0, i);
-            response.alias = type.toUpperCase() + "@" + response.getData().get(0).instrument_id;
-			setSubscribeContractTradeRecordResponse(response);
-		} else if (t instanceof SubscribeOrderInitialResponse) {
-		    setSubscribeOrderInitialResponse(
-		            (SubscribeOrderInitialResponse) t);
-		} else if (t instanceof SubscribeOrderSpot) {
-		    setSubscribeOrderSpotInitialResponse(
-		            (SubscribeOrderSpot) t);
-		} else if (t instanceof ErrorWs) {
-		    onErrorWs(
-		            (ErrorWs) t);
-		} else if (t instanceof SubscribeOrderFutures) {
-		    setSubscribeOrderFutures(
-		            (SubscribeOrderFutures) t);
-		} else if (t instanceof SubscribeFuturesAccountInitialResponse) {
-		    setSubscribeFuturesAccountInitialResponse(
-		            (SubscribeFuturesAccountInitialResponse) t);
-		} else if (t instanceof SubscribeFuturesAccountResponse) {
-		    setSubscribeFuturesAccountResponse(
-		            (SubscribeFuturesAccountResponse) t);
-		} else if (t instanceof SubscribeSpotAccountInitialResponse) {
-		    setSubscribeSpotAccountInitialResponse(
-		            (SubscribeSpotAccountInitialResponse) t);
-		} else if (t instanceof SubscribeSpotAccountResponse) {
-            setSubscribeSpotAccountResponse(
-                    (SubscribeSpotAccountResponse) t);    
-        } else if (t instanceof SubscribeSpotMarginAccountInitialResponse) {
-            setSubscribeSpotMarginAccountInitialResponse(
-                    (SubscribeSpotMarginAccountInitialResponse) t);
-        } else if (t instanceof SubscribeFuturesPositionInitialResponse) {
-            setSubscribeFuturesPositionInitialResponse(
-                    (SubscribeFuturesPositionInitialResponse) t);
-        } else if (t instanceof SubscribeFuturesPositionResponse) {
-            setSubscribeFuturesPositionResponse(
-                    (SubscribeFuturesPositionResponse) t);
-		} else if (t instanceof LoginResponse) {
-			setLoginResponse((LoginResponse) t);
-		} else if (t instanceof UnsubscribeResponse) {
-			setUnsubscribeResponse((UnsubscribeResponse) t);
+	/**
+	 * Dispatches a decoded message to its handler, called for every message of
+	 * the session.
+	 */
+	public void handleMessage(Message t) {
+		if (t == null) {
+			return;
+		}
+		Consumer<Message> handler = handlers.get(t.getType());
+		if (handler != null) {
+			handler.accept(t);
 		} else {
 			// fall back decoder. Print no decoder available + message 
 			Log.info("No decoder available. Response is : \n" + t);
 		}
 	}
 
+	private <T extends Message> void on(MessageType type, Class<T> msgClass, Consumer<T> handler) {
+		handlers.put(type, message -> handler.accept(msgClass.cast(message)));
+	}
+
+	private void registerHandlers() {
+		on(MessageType.PONG, Pong.class, this::setPong);
+		on(MessageType.STRING, StringMessage.class, this::onStringMessage);
+		on(MessageType.DEPTH_SUBSCRIBED, SubscribeContractMarketDepthInitialResponse.class,
+				this::setSubscribeContractMarketDepthInitialResponse);
+		on(MessageType.DEPTH, SubscribeContractMarketDepthResponse.class,
+				this::setSubscribeContractMarketDepthResponse);
+		on(MessageType.TRADE_SUBSCRIBED, SubscribeContractTradeRecordInitialResponse.class,
+				this::setSubscribeContractTradeRecordInitialResponse);
+		on(MessageType.TRADE, SubscribeContractTradeRecordResponse.class,
+				this::setSubscribeContractTradeRecordResponse);
+		on(MessageType.ORDER_SUBSCRIBED, SubscribeOrderInitialResponse.class, this::setSubscribeOrderInitialResponse);
+		on(MessageType.SPOT_ORDER, SubscribeOrderSpot.class, this::setSubscribeOrderSpotInitialResponse);
+		on(MessageType.FUTURES_ORDER, SubscribeOrderFutures.class, this::setSubscribeOrderFutures);
+		on(MessageType.FUTURES_ACCOUNT_SUBSCRIBED, SubscribeFuturesAccountInitialResponse.class,
+				this::setSubscribeFuturesAccountInitialResponse);
+		on(MessageType.FUTURES_ACCOUNT, SubscribeFuturesAccountResponse.class,
+				this::setSubscribeFuturesAccountResponse);
+		on(MessageType.SPOT_ACCOUNT_SUBSCRIBED, SubscribeSpotAccountInitialResponse.class,
+				this::setSubscribeSpotAccountInitialResponse);
+		on(MessageType.SPOT_ACCOUNT, SubscribeSpotAccountResponse.class, this::setSubscribeSpotAccountResponse);
+		on(MessageType.SPOT_MARGIN_ACCOUNT_SUBSCRIBED, SubscribeSpotMarginAccountInitialResponse.class,
+				this::setSubscribeSpotMarginAccountInitialResponse);
+		on(MessageType.FUTURES_POSITION_SUBSCRIBED, SubscribeFuturesPositionInitialResponse.class,
+				this::setSubscribeFuturesPositionInitialResponse);
+		on(MessageType.FUTURES_POSITION, SubscribeFuturesPositionResponse.class,
+				this::setSubscribeFuturesPositionResponse);
+		on(MessageType.LOGIN, LoginResponse.class, this::setLoginResponse);
+		on(MessageType.UNSUBSCRIBED, UnsubscribeResponse.class, this::setUnsubscribeResponse);
+	}
+
+	private void onStringMessage(StringMessage message) {
+		if (message.getMessage().equals("pong")) {
+			Pong pong = new Pong();
+			pong.setEvent(Event.pong);
+			setPong(pong);
+		} else if (message.getMessage().contains("\"event\":\"error\"")) {
+			// errors do not echo the request, they name its channel at most
+			if (!pendingRequests.failMatching(message.getMessage())) {
+				Log.info("Error response for no pending request: " + message.getMessage());
+			}
+		} else {
+			Log.info("No decoder available. Response is : \n" + message);
+		}
+	}
+
 	public static interface MarketPriceListener {
 		public void onMarketPrice(String symbol, Expiration expiration, MarketPrice marketPrice);
 	}
 
 	public static interface MarketDepthListener {
-		public void onMarketDepth(String symbol, String action, MarketDepths marketDepths);
+		public void onMarketDepth(InstrumentHandle instrument, String action, MarketDepths marketDepths);
 	}
 	
 	public static interface PositionListener {
@@ -940,7 +874,7 @@ public class Connector extends Endpoint implements AutoCloseable {
 	}
 
 	public static interface TradeRecordListener {
-		public void onTradeRecord(String symbol, Expiration expiration, Trade tradeRecord);
+		public void onTradeRecord(InstrumentHandle instrument, Expiration expiration, Trade tradeRecord);
 	}
 
 	public static interface ForecastPriceListener {
@@ -960,242 +894,152 @@ public class Connector extends Endpoint implements AutoCloseable {
 		public void onConnectionRestored();
 	}
 
-	private class PingTask extends TimerTask {
-
-	    public PingTask() {
-		}
-
-		@Override
-		public void run() {
-			try {
-			    if (!isReconnecting)
-				getSession().getBasicRemote().sendText("ping");
-			} catch (IOException ex) {
-				Log.error("Could not send ping request", ex);
-			} catch (Exception e){
-			    Log.error("The connection has been closed", e);
-			}
-		}
-	}
-
 	/**
-	 * @return the pong
+	 * @param pong the pong to set
 	 */
-	@SuppressWarnings("unchecked")
-    private <T> T waitFor(Class<T> msgClass) {
-		wLock.lock();
-		try {
-			if (msgClass.equals(Pong.class)) {
-				newPong.await();
-				return (T) pong;
-			} else if (msgClass.equals(SubscribeContractMarketDepthInitialResponse.class)) {
-				newSubscribeContractMarketDepthInitialResponse.await();
-				return (T) subscribeContractMarketDepthInitialResponse;
-			} else if (msgClass.equals(SubscribeOrderInitialResponse.class)) {
-			    newSubscribeOrderInitialResponse.await();
-			    return (T) subscribeOrderInitialResponse;
-			} else if (msgClass.equals(SubscribeOrderSpot.class)) {
-			    newSubscribeOrderSpot.await();
-			    return (T) subscribeOrderSpot;
-			} else if (msgClass.equals(SubscribeOrderFutures.class)) {
-			    newSubscribeOrderFutures.await();
-			    return (T) subscribeOrderFutures;
-			} else if (msgClass.equals(SubscribeFuturesAccountInitialResponse.class)) {
-			    newSubscribeFuturesAccountInitialResponse.await();
-			    return (T) subscribeFuturesAccountInitialResponse;
-			} else if (msgClass.equals(SubscribeFuturesAccountResponse.class)) {
-			    newSubscribeFuturesAccountResponse.await();
-			    return (T) subscribeFuturesAccountResponse;
-			} else if (msgClass.equals(SubscribeSpotAccountInitialResponse.class)) {
-			    newSubscribeSpotAccountInitialResponse.await();
-			    return (T) subscribeSpotAccountInitialResponse;
-			} else if (msgClass.equals(SubscribeSpotAccountResponse.class)) {
-			    newSubscribeSpotAccountResponse.await();
-			    return (T) subscribeSpotAccountResponse;
-	         } else if (msgClass.equals(SubscribeSpotMarginAccountInitialResponse.class)) {
-	                newSubscribeSpotMarginAccountInitialResponse.await();
-	                return (T) subscribeSpotMarginAccountInitialResponse;
-	         } else if (msgClass.equals(SubscribeFuturesPositionResponse.class)) {
-	             newSubscribeFuturesPositionResponse.await();
-	             return (T) subscribeFuturesPositionResponse;
-	         } else if (msgClass.equals(SubscribeFuturesPositionInitialResponse.class)) {
-	             newSubscribeFuturesPositionInitialResponse.await();
-	             return (T) subscribeFuturesPositionInitialResponse;
-			} else if (msgClass.equals(SubscribeContractTradeRecordInitialResponse.class)) {
-				newSubscribeContractTradeRecordInitialResponse.await();
-				return (T) subscribeContractTradeRecordInitialResponse;
-			} else if (msgClass.equals(LoginResponse.class)) {
-			    Log.info("msgClass is LoginResponse");
-				newLoginResponse.await();
-				Log.info("return is LoginResponse");
-				return (T) loginResponse;
-			} else if (msgClass.equals(UnsubscribeResponse.class)) {
-				newUnsubscribeResponse.await();
-				return (T) unsubscribeResponse;
-			} else {
-				throw new UnsupportedOperationException(msgClass.getSimpleName() + " is not supported");
-			}
-		} catch (InterruptedException ex) {
-			Log.error("Interrupted while waiting for message: " + msgClass.getSimpleName(), ex);
-			return null;
-		} finally {
-			wLock.unlock();
+	private void setPong(Pong pong) {
+		this.pong = pong;
+		long pingSent = pingSentNanos;
+		if (pingSent != 0) {
+			heartbeatRttNanos.recordSince(pingSent);
+			pingSentNanos = 0;
 		}
 	}
 
 	/**
-	 * @param pong the pong to set
+	 * Completes the subscribe request of a channel, acknowledgements of
+	 * subscriptions that are not waited for are only logged.
 	 */
-	private void setPong(Pong pong) {
-		wLock.lock();
-		try {
-			this.pong = pong;
-			newPong.signal();
-		} finally {
-			wLock.unlock();
-		}
+	private void onSubscribed(String channel, Message response) {
+		pendingRequests.complete(PendingRequests.key("subscribe", channel), response);
 	}
 
 	private void setSubscribeContractMarketDepthInitialResponse(
 			SubscribeContractMarketDepthInitialResponse subscribeContractMarketDepthInitialResponse) {
-		wLock.lock();
-		try {
-			this.subscribeContractMarketDepthInitialResponse
-					= subscribeContractMarketDepthInitialResponse;
-			newSubscribeContractMarketDepthInitialResponse.signal();
-		} finally {
-			wLock.unlock();
-		}
+		onSubscribed(subscribeContractMarketDepthInitialResponse.getChannel(),
+				subscribeContractMarketDepthInitialResponse);
 	}
 
 	private void setSubscribeContractMarketDepthResponse(
 			SubscribeContractMarketDepthResponse subscribeContractMarketDepthResponse) {
 		MarketDepths marketDepths = subscribeContractMarketDepthResponse.getData();
-		String symbol = subscribeContractMarketDepthResponse.alias;
-		client.onMarketDepth(symbol, subscribeContractMarketDepthResponse.action, marketDepths);
+		InstrumentHandle instrument = subscribeContractMarketDepthResponse.instrument;
+		FeedArbiter feedArbiter = this.feedArbiter;
+		if (feedArbiter != null && instrument != null) {
+			FeedArbiter.Feed feed = feedArbiter.feedOf(instrument);
+			// dispatched under the feed, so the other session cannot overtake
+			synchronized (feed) {
+				if (feed.isFirstDepth(subscribeContractMarketDepthResponse.action, marketDepths, isStandby)) {
+					dispatchMarketDepth(subscribeContractMarketDepthResponse, instrument,
+							subscribeContractMarketDepthResponse.action, marketDepths);
+				}
+			}
+		} else {
+			dispatchMarketDepth(subscribeContractMarketDepthResponse, instrument,
+					subscribeContractMarketDepthResponse.action, marketDepths);
+		}
+	}
+
+	private void dispatchMarketDepth(Message frame, InstrumentHandle instrument, String action,
+			MarketDepths marketDepths) {
+		marketDepths.decodedNanos = frame.getDecodedNanos();
+		if (instrument != null && FeedLatency.isEnabled()) {
+			FeedLatency.DEPTH.onDecoded(instrument.getAlias(), marketDepths.timestamp, frame.getReceivedMillis(),
+					frame.getReceivedNanos(), frame.getDecodedNanos());
+		}
+		MarketDataLanes lanes = this.lanes;
+		if (lanes != null && instrument != null) {
+			lanes.onMarketDepth(client, instrument, action, marketDepths);
+		} else {
+			client.onMarketDepth(instrument, action, marketDepths);
+		}
 	}
 
 	// subscribe to trade
 	private void setSubscribeContractTradeRecordInitialResponse(
 			SubscribeContractTradeRecordInitialResponse subscribeContractTradeRecordInitialResponse) {
-		wLock.lock();
-		try {
-			this.subscribeContractTradeRecordInitialResponse
-					= subscribeContractTradeRecordInitialResponse;
-			newSubscribeContractTradeRecordInitialResponse.signal();
-		} finally {
-			wLock.unlock();
-		}
+		onSubscribed(subscribeContractTradeRecordInitialResponse.getChannel(),
+				subscribeContractTradeRecordInitialResponse);
 	}
 	
 	private void setSubscribeSpotAccountInitialResponse(
 	        SubscribeSpotAccountInitialResponse subscribeSpotAccountInitialResponse) {
-	    wLock.lock();
-	    try {
-	        this.subscribeSpotAccountInitialResponse
-	        = subscribeSpotAccountInitialResponse;
-	        newSubscribeSpotAccountInitialResponse.signal();
-	    } finally {
-	        wLock.unlock();
-	    }
+	    onSubscribed(subscribeSpotAccountInitialResponse.getChannel(), subscribeSpotAccountInitialResponse);
 	}
 	
 	private void setSubscribeFuturesAccountInitialResponse(
 	        SubscribeFuturesAccountInitialResponse subscribeFuturesAccountInitialResponse) {
-	    wLock.lock();
-	    try {
-	        this.subscribeFuturesAccountInitialResponse
-	        = subscribeFuturesAccountInitialResponse;
-	        newSubscribeFuturesAccountInitialResponse.signal();
-	    } finally {
-	        wLock.unlock();
-	    }
+	    onSubscribed(subscribeFuturesAccountInitialResponse.getChannel(), subscribeFuturesAccountInitialResponse);
 	}
 	
 	private void setSubscribeSpotMarginAccountInitialResponse(
 	        SubscribeSpotMarginAccountInitialResponse subscribeSpotMarginAccountInitialResponse) {
-	    wLock.lock();
-	    try {
-	        this.subscribeSpotMarginAccountInitialResponse
-	        = subscribeSpotMarginAccountInitialResponse;
-	        newSubscribeSpotMarginAccountInitialResponse.signal();
-	    } finally {
-	        wLock.unlock();
-	    }
+	    onSubscribed(subscribeSpotMarginAccountInitialResponse.getChannel(),
+	            subscribeSpotMarginAccountInitialResponse);
 	}
 	
 	private void setSubscribeFuturesPositionResponse(
 	        SubscribeFuturesPositionResponse subscribeFuturesPositionResponse) {
-	    wLock.lock();
-	    try {
-	        this.subscribeFuturesPositionResponse
-	        = subscribeFuturesPositionResponse;
-	        newSubscribeFuturesPositionResponse.signal();
-	    } finally {
-	        wLock.unlock();
-	    }
-	    
 	    client.onFuturesPosition(subscribeFuturesPositionResponse);
 	}
 	
 	private void setSubscribeFuturesPositionInitialResponse(
 	        SubscribeFuturesPositionInitialResponse subscribeFuturesPositionInitialResponse) {
-	    wLock.lock();
-	    try {
-	        this.subscribeFuturesPositionInitialResponse
-	        = subscribeFuturesPositionInitialResponse;
-	        newSubscribeFuturesPositionInitialResponse.signal();
-	    } finally {
-	        wLock.unlock();
-	    }
+	    onSubscribed(subscribeFuturesPositionInitialResponse.getChannel(), subscribeFuturesPositionInitialResponse);
 	}
 
 	// subscribe to trade
 	private void setSubscribeContractTradeRecordResponse(
 			SubscribeContractTradeRecordResponse subscribeContractTradeRecordResponse) {
-		String symbol = subscribeContractTradeRecordResponse.alias;
-		for (Trade tradeRecord : subscribeContractTradeRecordResponse.getData()) {
-			client.onTradeRecord(symbol, Expiration.quarter, tradeRecord);
+		InstrumentHandle instrument = subscribeContractTradeRecordResponse.instrument;
+		List<Trade> tradeRecords = subscribeContractTradeRecordResponse.getData();
+		FeedArbiter feedArbiter = this.feedArbiter;
+		if (feedArbiter != null && instrument != null) {
+			FeedArbiter.Feed feed = feedArbiter.feedOf(instrument);
+			synchronized (feed) {
+				List<Trade> newTrades = feed.newTrades(tradeRecords, isStandby);
+				if (!newTrades.isEmpty()) {
+					dispatchTradeRecords(subscribeContractTradeRecordResponse, instrument, newTrades);
+				}
+			}
+		} else {
+			dispatchTradeRecords(subscribeContractTradeRecordResponse, instrument, tradeRecords);
+		}
+	}
+
+	private void dispatchTradeRecords(Message frame, InstrumentHandle instrument, List<Trade> tradeRecords) {
+		for (Trade tradeRecord : tradeRecords) {
+			tradeRecord.setDecodedNanos(frame.getDecodedNanos());
+		}
+		if (instrument != null && !tradeRecords.isEmpty() && FeedLatency.isEnabled()) {
+			// the latest trade of the message, the others only waited for it
+			FeedLatency.TRADE.onDecoded(instrument.getAlias(), tradeRecords.get(tradeRecords.size() - 1).getTimestamp(),
+					frame.getReceivedMillis(), frame.getReceivedNanos(), frame.getDecodedNanos());
+		}
+		MarketDataLanes lanes = this.lanes;
+		if (lanes != null && instrument != null) {
+			lanes.onTradeRecords(client, instrument, Expiration.quarter, tradeRecords);
+			return;
+		}
+		for (Trade tradeRecord : tradeRecords) {
+			client.onTradeRecord(instrument, Expiration.quarter, tradeRecord);
 		}
 	}
 
 	
 	private void setSubscribeOrderInitialResponse(
 	        SubscribeOrderInitialResponse subscribeOrderInitialResponse) {
-	    wLock.lock();
-	    try {
-	        this.subscribeOrderInitialResponse
-	        = subscribeOrderInitialResponse;
-	        newSubscribeOrderInitialResponse.signal();
-	    } finally {
-	        wLock.unlock();
-	    }
+	    onSubscribed(subscribeOrderInitialResponse.getChannel(), subscribeOrderInitialResponse);
 	    client.onPosition();
 	}
 	
 	private void setSubscribeFuturesAccountResponse(
 	        SubscribeFuturesAccountResponse subscribeFuturesAccountResponse) {
-	    wLock.lock();
-	    try {
-	        this.subscribeFuturesAccountResponse
-	        = subscribeFuturesAccountResponse;
-	        newSubscribeFuturesAccountResponse.signal();
-	    } finally {
-	        wLock.unlock();
-	    }
 	    client.onFuturesAccount(subscribeFuturesAccountResponse);
 	}
 	
 	private void setSubscribeSpotAccountResponse(
 	        SubscribeSpotAccountResponse subscribeSpotAccountResponse) {
-	    wLock.lock();
-	    try {
-	        this.subscribeSpotAccountResponse
-	        = subscribeSpotAccountResponse;
-	        newSubscribeSpotAccountResponse.signal();
-	    } finally {
-	        wLock.unlock();
-	    }
 	    client.onSpotAccount(subscribeSpotAccountResponse.data);
 	}
 	
@@ -1210,10 +1054,6 @@ public class Connector extends Endpoint implements AutoCloseable {
         }
     }
 	
-	private void onErrorWs (ErrorWs error) {
-	    Log.info("Error");
-	}
-	
     private void setSubscribeOrderFutures(SubscribeOrderFutures subscribeOrderFutures) {
         List<OrderDataFutures> orders = subscribeOrderFutures.getData();
 
@@ -1226,39 +1066,24 @@ public class Connector extends Endpoint implements AutoCloseable {
     }
 
 	private void setLoginResponse(LoginResponse loginResponse) {
-	    Log.info("setLoginResponse preLock");
-		wLock.lock();
-		Log.info("setLoginResponse Lock");
-		try {
-			this.loginResponse = loginResponse;
-			Log.info(loginResponse.toString());
-			if (loginResponse.getData().isResult()) {
-				Log.info("Login Successful...");
-				newLoginResponse.signal();
-			} else {
-				Log.info("Login Unsuccessful...");
-                newLoginResponse.signal();
-			}
-		} finally {
-			wLock.unlock();
-			Log.info("setLoginResponse unLock");
+		this.loginResponse = loginResponse;
+		Log.info(loginResponse.toString());
+		if (loginResponse.getData().isResult()) {
+			Log.info("Login Successful...");
+		} else {
+			Log.info("Login Unsuccessful...");
 		}
-
+		pendingRequests.complete(Event.login.name(), loginResponse);
 	}
 
     private void setUnsubscribeResponse(UnsubscribeResponse unsubscribeResponse) {
-        wLock.lock();
-        try {
-            this.unsubscribeResponse = unsubscribeResponse;
-            Log.debug(unsubscribeResponse.toString());
-            if (this.unsubscribeResponse.getEvent().contains("unsubscribe")) {
-                Log.info("Unsubscribing  Successful...");
-                newUnsubscribeResponse.signal();
-            } else {
-                Log.debug("Unsubscribing is Unsuccessful...");
-            }
-        } finally {
-            wLock.unlock();
+        Log.debug(unsubscribeResponse.toString());
+        if (unsubscribeResponse.getEvent().contains("unsubscribe")) {
+            Log.info("Unsubscribing  Successful...");
+            pendingRequests.complete(PendingRequests.key("unsubscribe", unsubscribeResponse.getChannel()),
+                    unsubscribeResponse);
+        } else {
+            Log.debug("Unsubscribing is Unsuccessful...");
         }
     }
 
@@ -1273,28 +1098,41 @@ public class Connector extends Endpoint implements AutoCloseable {
 		Disconnect, ConnectionFailure;
 	}
 
-	private class ReconnectHandlerImpl extends ClientManager.ReconnectHandler {
-
-		private final long delay;
+	/**
+	 * Lifecycle of the connection. A connector starts {@code CONNECTING},
+	 * is {@code CONNECTED} while a session is open and {@code RECONNECTING}
+	 * from the loss of a session until the next one opens. {@code CLOSED} is
+	 * final, entered when the connector is closed or OKEx ends the session
+	 * for good.
+	 */
+	public enum ConnectionState {
+		CONNECTING, CONNECTED, RECONNECTING, CLOSED;
+	}
 
-		public ReconnectHandlerImpl(long delay) {
-			this.delay = delay;
-		}
+	private class ReconnectHandlerImpl extends ClientManager.ReconnectHandler {
 
 		@Override
 		public boolean onDisconnect(CloseReason closeReason) {
+			stopHeartbeat();
+			pendingRequests.failAll(new IOException("Disconnected: " + closeReason.getReasonPhrase()));
 			client.onConnectionLost(ClosedConnectionType.Disconnect, closeReason.getReasonPhrase());
 			
-            if (closeReason.getCloseCode() == CloseReason.CloseCodes.NORMAL_CLOSURE) {
+            if (state.get() == ConnectionState.CLOSED) {
+                Log.info("OkexConnector.ReconnectHandlerImpl " + this.hashCode() + ": onDisconnect() Connector closed. No need to reconnect.");
+                return false;
+            } else if (closeReason.getCloseCode() == CloseReason.CloseCodes.NORMAL_CLOSURE) {
                 Log.info("OkexConnector.ReconnectHandlerImpl " + this.hashCode() + ": onDisconnect() Disconnect due to normal closure. No need to reconnect.");
+                setState(ConnectionState.CLOSED);
                 return false;
             } else if (closeReason.getCloseCode().getCode() == 4001) {
                 if (closeReason.getReasonPhrase().equals("no data received in 30s")) {
                     adminListeners.forEach(l -> l.onConnectionLost(DisconnectionReason.FATAL, "You have not been suscribed to any instrument for 30 seconds"));
                 }
+                setState(ConnectionState.CLOSED);
                 return false;
 			}
 			Log.info("Connector: onDisconnect() Got Disconnected.  Reconnecting...");
+			onLost();
 		     adminListeners.forEach(l -> l.onConnectionLost(DisconnectionReason.NO_INTERNET, "(onDisconnect)"));
 			return true;
 		    
@@ -1302,17 +1140,26 @@ public class Connector extends Endpoint implements AutoCloseable {
 
 		@Override
 		public boolean onConnectFailure(Exception exception) {
+			pendingRequests.failAll(exception);
 			client.onConnectionLost(ClosedConnectionType.ConnectionFailure, "Network Connection Problem");
 			Log.info("Connector.ReconnectHandlerImpl " + this.hashCode() +  ": onDisconnect (### Reconnecting caused by:  " + exception.getMessage());
-			if (!isReconnecting) {
+			ConnectionState previous = state.get();
+			if (previous == ConnectionState.CLOSED) {
+				return false;
+			}
+			if (previous != ConnectionState.RECONNECTING) {
 		          adminListeners.forEach(l -> l.onConnectionLost(DisconnectionReason.NO_INTERNET, "(onConnectFailure)"));
 			}
-			isReconnecting = true;
+			onLost();
 			return true;
 		}
 
 		@Override
 		public long getDelay() {
+			long delay = backoff.nextDelaySeconds();
+			reconnectAttempts.increment();
+			Log.info("Connector " + Connector.this.hashCode() + ": reconnect attempt " + backoff.getAttempts()
+					+ " in " + delay + "s");
 			return delay;
 		}
 	}
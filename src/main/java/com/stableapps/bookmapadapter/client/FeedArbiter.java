@@ -0,0 +1,189 @@
+package com.stableapps.bookmapadapter.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.stableapps.bookmapadapter.metrics.Counter;
+import com.stableapps.bookmapadapter.metrics.Histogram;
+import com.stableapps.bookmapadapter.metrics.Metrics;
+import com.stableapps.bookmapadapter.model.InstrumentHandle;
+import com.stableapps.bookmapadapter.model.MarketDepths;
+import com.stableapps.bookmapadapter.model.Trade;
+
+/**
+ * Merges the market data of two sessions subscribed to the same channels,
+ * forwarding whichever copy of a message arrives first and dropping the
+ * other. Depth messages are identified by their {@code timestamp} and
+ * {@code checksum}, a {@code partial} snapshot is always forwarded. Trades are filtered one by one by their {@code trade_id},
+ * the sessions may batch them into different messages.
+ * <p>
+ * The sessions are read by two threads, so the caller holds the
+ * {@link Feed} of the instrument while it checks and dispatches a message,
+ * otherwise a message could overtake the one forwarded just before it. This
+ * only keeps the order if both sessions dispatch an instrument to the same
+ * place, the read thread or the {@link MarketDataLanes} shared by all
+ * sessions, where the message is then handled in the order it was enqueued.
+ */
+public class FeedArbiter {
+
+    private static final Counter primaryFirst = Metrics.counter("arbiter.primaryFirst");
+    private static final Counter standbyFirst = Metrics.counter("arbiter.standbyFirst");
+    private static final Counter duplicates = Metrics.counter("arbiter.duplicates");
+    /**
+     * How much later the copy of the latest depth message, or of the latest
+     * trades, arrived.
+     */
+    private static final Histogram leadNanos = Metrics.histogram("arbiter.leadNanos");
+
+    private final Map<InstrumentHandle, Feed> feeds = new ConcurrentHashMap<>();
+
+    /**
+     * Messages of one instrument forwarded so far, guarded by its own
+     * monitor.
+     */
+    public static final class Feed {
+        /**
+         * Depth messages sharing a millisecond that are told apart by their
+         * checksum.
+         */
+        private static final int CHECKSUMS = 8;
+
+        /** ISO-8601 with milliseconds, ordered like the time. */
+        private String depthTimestamp;
+        private final int[] checksums = new int[CHECKSUMS];
+        private int checksumCount;
+        private long depthArrivalNanos;
+        private long tradeId = Long.MIN_VALUE;
+        private long tradeArrivalNanos;
+
+        private Feed() {
+        }
+
+        /**
+         * A {@code partial} snapshot is always forwarded and restarts the
+         * feed from its own timestamp: after a resync it is usually older
+         * than an update the other session forwarded meanwhile, yet the book
+         * can only recover from it.
+         *
+         * @return {@code true} if the message is not known yet and must be
+         *         forwarded
+         */
+        public boolean isFirstDepth(String action, MarketDepths depths, boolean isStandby) {
+            String timestamp = depths.timestamp;
+            if ("partial".equals(action)) {
+                depthTimestamp = timestamp;
+                checksumCount = 0;
+                if (timestamp != null) {
+                    checksums[checksumCount++] = depths.checksum;
+                }
+                depthArrivalNanos = System.nanoTime();
+                return forward(isStandby);
+            }
+            if (timestamp == null) {
+                return forward(isStandby);
+            }
+            int order = depthTimestamp == null ? 1 : timestamp.compareTo(depthTimestamp);
+            if (order < 0) {
+                duplicates.increment();
+                return false;
+            }
+            if (order == 0) {
+                for (int i = 0; i < Math.min(checksumCount, CHECKSUMS); i++) {
+                    if (checksums[i] == depths.checksum) {
+                        duplicates.increment();
+                        leadNanos.recordSince(depthArrivalNanos);
+                        return false;
+                    }
+                }
+            } else {
+                depthTimestamp = timestamp;
+                checksumCount = 0;
+            }
+            checksums[checksumCount++ % CHECKSUMS] = depths.checksum;
+            depthArrivalNanos = System.nanoTime();
+            return forward(isStandby);
+        }
+
+        /**
+         * Forgets the depth messages forwarded so far, e.g. before the depth
+         * channel is resubscribed on both sessions.
+         */
+        public void resetDepth() {
+            depthTimestamp = null;
+            checksumCount = 0;
+        }
+
+        /**
+         * Filters the trades of a message down to those not forwarded yet,
+         * those with a {@code trade_id} above the highest one forwarded. A
+         * trade without a numeric id is always forwarded.
+         *
+         * @return the trades to forward, the given list itself if all of
+         *         them are new and an empty list if none is
+         */
+        public List<Trade> newTrades(List<Trade> trades, boolean isStandby) {
+            long highest = tradeId;
+            int fresh = 0;
+            for (Trade trade : trades) {
+                long id = idOf(trade);
+                if (id == Long.MAX_VALUE || id > tradeId) {
+                    fresh++;
+                    if (id != Long.MAX_VALUE) {
+                        highest = Math.max(highest, id);
+                    }
+                }
+            }
+            if (fresh < trades.size()) {
+                duplicates.add(trades.size() - fresh);
+                if (tradeArrivalNanos != 0) {
+                    leadNanos.recordSince(tradeArrivalNanos);
+                }
+            }
+            if (fresh == 0) {
+                return Collections.emptyList();
+            }
+            List<Trade> forwarded = trades;
+            if (fresh < trades.size()) {
+                forwarded = new ArrayList<>(fresh);
+                for (Trade trade : trades) {
+                    long id = idOf(trade);
+                    if (id == Long.MAX_VALUE || id > tradeId) {
+                        forwarded.add(trade);
+                    }
+                }
+            }
+            tradeId = highest;
+            tradeArrivalNanos = System.nanoTime();
+            forward(isStandby);
+            return forwarded;
+        }
+
+        /**
+         * @return the {@code trade_id}, {@link Long#MAX_VALUE} if it is not a
+         *         number
+         */
+        private static long idOf(Trade trade) {
+            try {
+                return Long.parseLong(trade.getTrade_id());
+            } catch (NumberFormatException e) {
+                return Long.MAX_VALUE;
+            }
+        }
+
+        private static boolean forward(boolean isStandby) {
+            (isStandby ? standbyFirst : primaryFirst).increment();
+            return true;
+        }
+    }
+
+    public Feed feedOf(InstrumentHandle instrument) {
+        return feeds.computeIfAbsent(instrument, handle -> new Feed());
+    }
+
+    public void remove(InstrumentHandle instrument) {
+        feeds.remove(instrument);
+    }
+}
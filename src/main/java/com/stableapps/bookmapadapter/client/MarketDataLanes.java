@@ -0,0 +1,179 @@
+package com.stableapps.bookmapadapter.client;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.stableapps.bookmapadapter.metrics.Counter;
+import com.stableapps.bookmapadapter.metrics.Metrics;
+import com.stableapps.bookmapadapter.model.Expiration;
+import com.stableapps.bookmapadapter.model.InstrumentHandle;
+import com.stableapps.bookmapadapter.model.MarketDepths;
+import com.stableapps.bookmapadapter.model.Trade;
+
+import velox.api.layer1.common.Log;
+
+/**
+ * Fixed pool of single writer lanes that depth and trade messages are handled
+ * on instead of the socket read thread. The lane of a message is chosen by the
+ * hash of its instrument, so the messages of an instrument are handled in
+ * order by one thread, while a burst on one instrument no longer holds up the
+ * instruments of other lanes.
+ * <p>
+ * One pool is shared by all connections of a provider, so the messages of an
+ * instrument stay on its lane whichever session delivered them, e.g. after
+ * the instrument moved to another connection or with a standby session. Every
+ * message is handed to the listener of the session that delivered it.
+ * <p>
+ * The read thread only decodes and enqueues. Depth messages are copied into
+ * buffers pooled per lane because the decoder reuses its response, trade
+ * messages are handed over as they are. A full lane blocks the read thread,
+ * which is what a slow instrument did before.
+ */
+public class MarketDataLanes implements AutoCloseable {
+
+    /**
+     * Messages a lane holds before the read thread waits for it.
+     */
+    public static final int QUEUE_CAPACITY = 1024;
+
+    private static final Counter depths = Metrics.counter("lanes.depths");
+    private static final Counter trades = Metrics.counter("lanes.trades");
+    private static final Counter blocked = Metrics.counter("lanes.blocked");
+
+    /** Ends the loop of a lane once the tasks before it are handled. */
+    private static final Runnable STOP = () -> {
+    };
+
+    private final Lane[] lanes;
+
+    /**
+     * @param count number of lanes and of their threads
+     */
+    public MarketDataLanes(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Lane count " + count);
+        }
+        lanes = new Lane[count];
+        for (int i = 0; i < count; i++) {
+            lanes[i] = new Lane(i);
+        }
+    }
+
+    public int getCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Hands a depth message over to the lane of its instrument, the message
+     * may be reused once this returns.
+     */
+    public void onMarketDepth(Connector.MarketDepthListener listener, InstrumentHandle instrument, String action,
+            MarketDepths marketDepths) {
+        Lane lane = laneOf(instrument);
+        DepthTask task = lane.pool.poll();
+        if (task == null) {
+            task = new DepthTask(lane);
+        }
+        task.listener = listener;
+        task.instrument = instrument;
+        task.action = action;
+        task.depths.copyFrom(marketDepths);
+        depths.increment();
+        lane.enqueue(task);
+    }
+
+    public void onTradeRecords(Connector.TradeRecordListener listener, InstrumentHandle instrument,
+            Expiration expiration, List<Trade> records) {
+        trades.increment();
+        laneOf(instrument).enqueue(() -> {
+            for (Trade record : records) {
+                listener.onTradeRecord(instrument, expiration, record);
+            }
+        });
+    }
+
+    /**
+     * Stops the lanes once they have handled the messages queued so far,
+     * without waiting for them. Messages enqueued after this are not handled.
+     */
+    @Override
+    public void close() {
+        for (Lane lane : lanes) {
+            lane.enqueue(STOP);
+        }
+    }
+
+    private Lane laneOf(InstrumentHandle instrument) {
+        return lanes[Math.floorMod(instrument.hashCode(), lanes.length)];
+    }
+
+    private static final class Lane implements Runnable {
+        final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        /** Depth buffers the lane is done with, refilled by the read thread. */
+        final BlockingQueue<DepthTask> pool = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final Thread thread;
+
+        Lane(int index) {
+            thread = new Thread(this, "okex-lane-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void enqueue(Runnable task) {
+            if (queue.offer(task)) {
+                return;
+            }
+            blocked.increment();
+            try {
+                queue.put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == STOP) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    // the lane must survive a failing message
+                    Log.error("Failed to handle market data on " + thread.getName(), e);
+                }
+            }
+        }
+    }
+
+    private final class DepthTask implements Runnable {
+        final Lane lane;
+        final MarketDepths depths = new MarketDepths();
+        Connector.MarketDepthListener listener;
+        InstrumentHandle instrument;
+        String action;
+
+        DepthTask(Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void run() {
+            try {
+                listener.onMarketDepth(instrument, action, depths);
+            } finally {
+                listener = null;
+                instrument = null;
+                lane.pool.offer(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.stableapps.bookmapadapter.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.stableapps.bookmapadapter.metrics.Counter;
+import com.stableapps.bookmapadapter.metrics.Histogram;
+import com.stableapps.bookmapadapter.metrics.Metrics;
+import com.stableapps.bookmapadapter.model.Message;
+
+import velox.api.layer1.common.Log;
+
+/**
+ * Websocket requests that wait for their acknowledgement, keyed by operation
+ * and channel, e.g. {@code subscribe:spot/depth:BTC-USDT} or {@code login}.
+ * Any number of requests can be in flight, each is completed by the response
+ * that carries its key, in whatever order the responses arrive, or fails when
+ * it times out, OKEx reports an error for its channel or the connection is
+ * lost.
+ * <p>
+ * A request for a key that is already in flight is not sent again, the caller
+ * gets the pending future. Requests of many channels can go out in one frame,
+ * each channel is still acknowledged and tracked on its own.
+ */
+public class PendingRequests {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    private static final Counter sent = Metrics.counter("requests.sent");
+    private static final Counter timeouts = Metrics.counter("requests.timeouts");
+    private static final Counter errors = Metrics.counter("requests.errors");
+    private static final Histogram latencyNanos = Metrics.histogram("requests.latencyNanos");
+
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "okex-request-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Map<String, Request> pending = new ConcurrentHashMap<>();
+    private volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    /**
+     * Sends a request over the socket.
+     */
+    @FunctionalInterface
+    public interface Sender {
+        void send() throws IOException;
+    }
+
+    /**
+     * Sends one request for many channels over the socket.
+     */
+    @FunctionalInterface
+    public interface BulkSender {
+        void send(List<String> channels) throws IOException;
+    }
+
+    private static final class Request {
+        final CompletableFuture<Message> future = new CompletableFuture<>();
+        final long sentNanos = System.nanoTime();
+        volatile ScheduledFuture<?> timeout;
+
+        void cancelTimeout() {
+            ScheduledFuture<?> timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
+
+    public static String key(String op, String channel) {
+        return op + ":" + channel;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Registers a request and sends it, unless a request of the same key is
+     * already in flight.
+     *
+     * @return completed with the response of the key
+     */
+    public CompletableFuture<Message> send(String key, Sender sender) {
+        Request request = new Request();
+        Request registered = register(key, request);
+        if (registered != request) {
+            return registered.future;
+        }
+        try {
+            sender.send();
+            sent.increment();
+        } catch (IOException | RuntimeException e) {
+            fail(key, e);
+        }
+        return request.future;
+    }
+
+    /**
+     * Registers a request of an operation for every channel and sends those
+     * that are not already in flight at once.
+     *
+     * @return the future of every channel, in the given order
+     */
+    public Map<String, CompletableFuture<Message>> send(String op, List<String> channels, BulkSender sender) {
+        Map<String, CompletableFuture<Message>> futures = new LinkedHashMap<>();
+        List<String> unsent = new ArrayList<>();
+        for (String channel : channels) {
+            Request request = new Request();
+            Request registered = register(key(op, channel), request);
+            futures.put(channel, registered.future);
+            if (registered == request) {
+                unsent.add(channel);
+            }
+        }
+        if (unsent.isEmpty()) {
+            return futures;
+        }
+        try {
+            sender.send(unsent);
+            sent.add(unsent.size());
+        } catch (IOException | RuntimeException e) {
+            for (String channel : unsent) {
+                fail(key(op, channel), e);
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * @return the given request with its timeout started, or the request of
+     *         the key already in flight
+     */
+    private Request register(String key, Request request) {
+        Request previous = pending.putIfAbsent(key, request);
+        if (previous != null) {
+            return previous;
+        }
+        request.timeout = timer.schedule(() -> {
+            if (pending.remove(key, request)) {
+                timeouts.increment();
+                request.future.completeExceptionally(
+                        new TimeoutException("No response to " + key + " within " + timeoutMillis + " ms"));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        return request;
+    }
+
+    /**
+     * Completes the request of a key with its response.
+     *
+     * @return {@code false} if no such request was in flight, e.g. it was
+     *         sent without waiting or has timed out
+     */
+    public boolean complete(String key, Message response) {
+        Request request = pending.remove(key);
+        if (request == null) {
+            Log.debug("No pending request for response " + key);
+            return false;
+        }
+        request.cancelTimeout();
+        latencyNanos.recordSince(request.sentNanos);
+        request.future.complete(response);
+        return true;
+    }
+
+    public void fail(String key, Throwable cause) {
+        Request request = pending.remove(key);
+        if (request != null) {
+            errors.increment();
+            request.cancelTimeout();
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Fails the requests whose channel an error message names, OKEx does not
+     * echo the request in its errors, e.g.
+     * {@code "Channel spot/depth:FOO-USDT doesn't exist"}.
+     *
+     * @return {@code false} if the message names no pending channel
+     */
+    public boolean failMatching(String message) {
+        boolean matched = false;
+        for (String key : pending.keySet()) {
+            int colon = key.indexOf(':');
+            if (colon >= 0 && names(message, key.substring(colon + 1))) {
+                fail(key, new IOException(message));
+                matched = true;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * @return whether the channel occurs in the message as a whole, not as
+     *         the prefix of a longer instrument
+     */
+    private static boolean names(String message, String channel) {
+        for (int index = message.indexOf(channel); index >= 0; index = message.indexOf(channel, index + 1)) {
+            int end = index + channel.length();
+            if (end == message.length() || !Character.isLetterOrDigit(message.charAt(end)) && message.charAt(end) != '-') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fails every request in flight, e.g. when the connection is lost and no
+     * response will come.
+     */
+    public void failAll(Throwable cause) {
+        for (String key : pending.keySet()) {
+            fail(key, cause);
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,78 @@
+package com.stableapps.bookmapadapter.client;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.stableapps.bookmapadapter.metrics.Counter;
+import com.stableapps.bookmapadapter.metrics.Histogram;
+import com.stableapps.bookmapadapter.metrics.Metrics;
+
+import velox.api.layer1.common.Log;
+
+/**
+ * Tracks the restore of the aliases of a connection once it is back, from
+ * that moment until every alias is acknowledged and until the depth snapshot
+ * of every alias has been applied, when all books are live again.
+ */
+public class RestoreProgress {
+
+    private static final Histogram subscribedNanos = Metrics.histogram("restore.subscribedNanos");
+    private static final Histogram booksLiveNanos = Metrics.histogram("restore.booksLiveNanos");
+    private static final Counter failures = Metrics.counter("restore.failures");
+
+    private final int connection;
+    private final long startNanos;
+    private final Set<String> unacknowledged = ConcurrentHashMap.newKeySet();
+    private final Set<String> awaitingSnapshot = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger acknowledgementsLeft;
+    private final AtomicInteger snapshotsLeft;
+
+    /**
+     * @param startNanos when the connection was restored
+     */
+    public RestoreProgress(int connection, Collection<String> aliases, long startNanos) {
+        this.connection = connection;
+        this.startNanos = startNanos;
+        unacknowledged.addAll(aliases);
+        awaitingSnapshot.addAll(aliases);
+        acknowledgementsLeft = new AtomicInteger(unacknowledged.size());
+        snapshotsLeft = new AtomicInteger(awaitingSnapshot.size());
+    }
+
+    public void onSubscribed(String alias) {
+        if (unacknowledged.remove(alias) && acknowledgementsLeft.decrementAndGet() == 0) {
+            subscribedNanos.recordSince(startNanos);
+            Log.info("Connection " + connection + " resubscribed after " + millisSinceStart() + " ms");
+        }
+    }
+
+    /**
+     * The subscription of an alias failed, it is still waited for in case a
+     * retry brings its snapshot.
+     */
+    public void onFailed(String alias) {
+        failures.increment();
+        onSubscribed(alias);
+    }
+
+    /**
+     * Called with every applied {@code partial} snapshot.
+     */
+    public void onSnapshot(String alias) {
+        if (awaitingSnapshot.remove(alias) && snapshotsLeft.decrementAndGet() == 0) {
+            booksLiveNanos.recordSince(startNanos);
+            Log.info("All books of connection " + connection + " live after " + millisSinceStart() + " ms");
+        }
+    }
+
+    public boolean isDone() {
+        return snapshotsLeft.get() == 0;
+    }
+
+    private long millisSinceStart() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -5,11 +5,12 @@
  */
 package com.stableapps.bookmapadapter.decoder;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
 
 import javax.websocket.DecodeException;
 import javax.websocket.Decoder;
@@ -20,8 +21,6 @@ import javax.websocket.EndpointConfig;
  * @author aris
  * @param <T> T is the class to convert JSON response to.
  */
-import org.apache.commons.compress.compressors.deflate64.Deflate64CompressorInputStream;
-
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 public abstract class AbstractDecoder<T> implements Decoder.Binary<T> {
@@ -30,21 +29,28 @@ public abstract class AbstractDecoder<T> implements Decoder.Binary<T> {
 	public static final Pattern RESPONSE_PATTERN = Pattern.compile("^.*\"binary\"\\s*:\\s*\\d+\\s*,\"channel\"\\s*:\\s*\"(ok_sub_futureusd_[^\"]+)\".*$");
 	static String string = "";
 
-	private static String uncompress(ByteBuffer buff) {
-		byte[] bytes = buff.array();
-        try (final ByteArrayOutputStream out = new ByteArrayOutputStream();
-             final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-             final Deflate64CompressorInputStream zin = new Deflate64CompressorInputStream(in)) {
-            final byte[] buffer = new byte[1024];
-            int offset;
-            while (-1 != (offset = zin.read(buffer))) {
-                out.write(buffer, 0, offset);
-            }
-            return out.toString();
-        } catch (final IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
+	private static final AtomicLong inflations = new AtomicLong();
+
+	static FrameInflater inflate(ByteBuffer buff) {
+		inflations.incrementAndGet();
+		try {
+			return FrameInflater.get().inflate(buff);
+		} catch (DataFormatException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static String uncompress(ByteBuffer buff) {
+		FrameInflater inflater = inflate(buff);
+		return new String(inflater.bytes(), 0, inflater.length(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the number of frames inflated since startup
+	 */
+	public static long getInflationCount() {
+		return inflations.get();
+	}
 
 	protected ObjectMapper objectMapper;
 	private final Class<T> msgClass;
@@ -55,7 +61,24 @@ public abstract class AbstractDecoder<T> implements Decoder.Binary<T> {
 
 	@Override
 	public T decode(ByteBuffer buffer) throws DecodeException {
-		return decode(uncompress(buffer));
+		FrameInflater inflater = inflate(buffer);
+		return decode(inflater.bytes(), 0, inflater.length());
+	}
+
+	/**
+	 * Parses an inflated frame straight from its UTF-8 bytes.
+	 */
+	public T decode(byte[] bytes, int offset, int length) throws DecodeException {
+		try {
+			if (length > 1 && bytes[offset] == '[') {
+				offset++;
+				length -= 2;
+			}
+			return objectMapper.readValue(bytes, offset, length, msgClass);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			return null;
+		}
 	}
 	
 	public T decode(String arg0) throws DecodeException {
@@ -0,0 +1,86 @@
+package com.stableapps.bookmapadapter.decoder;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates OKEx v3 frames (raw deflate, no zlib header) into a reusable byte
+ * buffer. One instance is kept per thread, so nothing is allocated per frame
+ * once the buffers have grown to the size of the largest frame seen.
+ * <p>
+ * The inflated bytes are only valid until the next call to
+ * {@link #inflate(ByteBuffer)} on the same thread.
+ */
+public final class FrameInflater {
+
+    private static final int INITIAL_INPUT_SIZE = 4 * 1024;
+    private static final int INITIAL_OUTPUT_SIZE = 16 * 1024;
+
+    private static final ThreadLocal<FrameInflater> INFLATERS = ThreadLocal.withInitial(FrameInflater::new);
+
+    private final Inflater inflater = new Inflater(true);
+    private byte[] input = new byte[INITIAL_INPUT_SIZE];
+    private byte[] output = new byte[INITIAL_OUTPUT_SIZE];
+    private int length;
+
+    private FrameInflater() {
+    }
+
+    /**
+     * @return the inflater bound to the calling thread
+     */
+    public static FrameInflater get() {
+        return INFLATERS.get();
+    }
+
+    /**
+     * Inflates the remaining bytes of the buffer. Heap buffers are read in
+     * place, direct buffers are copied into a reusable array first. The
+     * position of the buffer is not changed.
+     */
+    public FrameInflater inflate(ByteBuffer buffer) throws DataFormatException {
+        inflater.reset();
+        int remaining = buffer.remaining();
+
+        if (buffer.hasArray()) {
+            inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), remaining);
+        } else {
+            if (input.length < remaining) {
+                input = new byte[Math.max(remaining, input.length * 2)];
+            }
+            buffer.duplicate().get(input, 0, remaining);
+            inflater.setInput(input, 0, remaining);
+        }
+
+        length = 0;
+        while (!inflater.finished()) {
+            if (length == output.length) {
+                byte[] grown = new byte[output.length * 2];
+                System.arraycopy(output, 0, grown, 0, length);
+                output = grown;
+            }
+            int inflated = inflater.inflate(output, length, output.length - length);
+            if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                break;
+            }
+            length += inflated;
+        }
+        return this;
+    }
+
+    /**
+     * @return the buffer holding the last inflated frame, valid from 0 to
+     *         {@link #length()}
+     */
+    public byte[] bytes() {
+        return output;
+    }
+
+    /**
+     * @return the size of the last inflated frame
+     */
+    public int length() {
+        return length;
+    }
+}
@@ -21,7 +21,7 @@ public class LoginResponseDecoder extends AbstractDecoder<LoginResponse> {
 		super(LoginResponse.class);
 	}
 
-	private int[] authErrorCodes = new int[] {
+	private static final int[] authErrorCodes = new int[] {
 	        30001, //request header "OK_ACCESS_KEY" cannot be blank
 	        30002, //request header "OK_ACCESS_SIGN" cannot be blank
 	        30003, //request header "OK_ACCESS_TIMESTAMP" cannot be blank
@@ -37,6 +37,18 @@ public class LoginResponseDecoder extends AbstractDecoder<LoginResponse> {
 
 	private String[] candidates = initializeCandidates(authErrorCodes, "\"event\":\"login\",");
 
+	/**
+	 * @return true if an error with this code is the response to a login request
+	 */
+	public static boolean isAuthErrorCode(int errorCode) {
+	    for (int authErrorCode : authErrorCodes) {
+	        if (authErrorCode == errorCode) {
+	            return true;
+	        }
+	    }
+	    return false;
+	}
+
 	@Override
 	public boolean willDecode(String arg0) {
 	    return Arrays.stream(candidates).anyMatch(v -> arg0.contains(v));
@@ -0,0 +1,259 @@
+package com.stableapps.bookmapadapter.decoder;
+
+import java.nio.charset.StandardCharsets;
+
+import com.stableapps.bookmapadapter.model.MessageType;
+import com.stableapps.bookmapadapter.model.MessageType.Source;
+
+/**
+ * Determines the {@link MessageType} of an inflated frame in a single pass over
+ * its first bytes. Only the leading {@code table}, {@code event} or {@code op}
+ * field (and the {@code channel} of subscription acknowledgements) is read,
+ * channel names are resolved with a hash lookup built from {@link MessageType},
+ * so the cost does not depend on the number of known channels.
+ */
+public final class MessageClassifier {
+
+    private static final byte[] TABLE = bytes("table");
+    private static final byte[] EVENT = bytes("event");
+    private static final byte[] OP = bytes("op");
+    private static final byte[] CHANNEL = bytes("channel");
+    private static final byte[] ERROR_CODE = bytes("errorCode");
+
+    private static final byte[] SUBSCRIBE = bytes("subscribe");
+    private static final byte[] UNSUBSCRIBE = bytes("unsubscribe");
+    private static final byte[] LOGIN = bytes("login");
+    private static final byte[] PONG = bytes("pong");
+    private static final byte[] ERROR = bytes("error");
+
+    private static final ChannelLookup TABLES = new ChannelLookup(Source.TABLE);
+    private static final ChannelLookup SUBSCRIPTIONS = new ChannelLookup(Source.SUBSCRIBE);
+
+    private MessageClassifier() {
+    }
+
+    public static MessageType classify(byte[] bytes, int offset, int length) {
+        Cursor cursor = new Cursor(bytes, offset, offset + length);
+
+        cursor.skipWhitespace();
+        if (cursor.peek() == '[') {
+            cursor.position++;
+            cursor.skipWhitespace();
+        }
+        if (cursor.peek() != '{' || !cursor.nextKey()) {
+            return MessageType.STRING;
+        }
+
+        if (cursor.keyEquals(TABLE)) {
+            return cursor.nextStringValue() ? TABLES.get(bytes, cursor.valueStart, cursor.valueEnd) : MessageType.STRING;
+        }
+        if (!cursor.keyEquals(EVENT) && !cursor.keyEquals(OP)) {
+            return MessageType.STRING;
+        }
+        if (!cursor.nextStringValue()) {
+            return MessageType.STRING;
+        }
+
+        if (cursor.valueEquals(SUBSCRIBE)) {
+            if (!cursor.findKey(CHANNEL) || !cursor.nextStringValue()) {
+                return MessageType.STRING;
+            }
+            // the instrument follows the colon, e.g. futures/depth:BTC-USD-190628
+            int end = cursor.valueStart;
+            while (end < cursor.valueEnd && bytes[end] != ':') {
+                end++;
+            }
+            return SUBSCRIPTIONS.get(bytes, cursor.valueStart, end);
+        } else if (cursor.valueEquals(UNSUBSCRIBE)) {
+            return MessageType.UNSUBSCRIBED;
+        } else if (cursor.valueEquals(LOGIN)) {
+            return MessageType.LOGIN;
+        } else if (cursor.valueEquals(PONG)) {
+            return MessageType.PONG;
+        } else if (cursor.valueEquals(ERROR)) {
+            // authentication errors are answers to the login request
+            if (cursor.findKey(ERROR_CODE) && LoginResponseDecoder.isAuthErrorCode(cursor.nextIntValue())) {
+                return MessageType.LOGIN;
+            }
+        }
+        return MessageType.STRING;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static boolean rangeEquals(byte[] bytes, int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int hash = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Minimal forward-only reader over the top level object of a frame.
+     */
+    private static final class Cursor {
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+        private int keyStart;
+        private int keyEnd;
+        private int valueStart;
+        private int valueEnd;
+
+        Cursor(byte[] bytes, int position, int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        int peek() {
+            return position < limit ? bytes[position] : -1;
+        }
+
+        void skipWhitespace() {
+            while (position < limit && bytes[position] <= ' ') {
+                position++;
+            }
+        }
+
+        /**
+         * Moves to the next quoted token and then past the following colon.
+         */
+        boolean nextKey() {
+            if (!nextQuoted()) {
+                return false;
+            }
+            keyStart = valueStart;
+            keyEnd = valueEnd;
+            skipWhitespace();
+            if (peek() != ':') {
+                return false;
+            }
+            position++;
+            return true;
+        }
+
+        /**
+         * Scans forward to the given key at any depth and positions after it.
+         */
+        boolean findKey(byte[] key) {
+            while (nextQuoted()) {
+                skipWhitespace();
+                if (peek() == ':' && valueEquals(key)) {
+                    keyStart = valueStart;
+                    keyEnd = valueEnd;
+                    position++;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean nextStringValue() {
+            skipWhitespace();
+            return peek() == '"' && nextQuoted();
+        }
+
+        int nextIntValue() {
+            skipWhitespace();
+            if (peek() == '"') {
+                position++;
+            }
+            int value = 0;
+            while (position < limit && bytes[position] >= '0' && bytes[position] <= '9') {
+                value = value * 10 + bytes[position++] - '0';
+            }
+            return value;
+        }
+
+        boolean keyEquals(byte[] expected) {
+            return rangeEquals(bytes, keyStart, keyEnd, expected);
+        }
+
+        boolean valueEquals(byte[] expected) {
+            return rangeEquals(bytes, valueStart, valueEnd, expected);
+        }
+
+        private boolean nextQuoted() {
+            while (position < limit && bytes[position] != '"') {
+                position++;
+            }
+            if (position >= limit) {
+                return false;
+            }
+            valueStart = ++position;
+            while (position < limit && bytes[position] != '"') {
+                position += bytes[position] == '\\' ? 2 : 1;
+            }
+            if (position >= limit) {
+                return false;
+            }
+            valueEnd = position++;
+            return true;
+        }
+    }
+
+    /**
+     * Open addressing table from channel name bytes to message type, filled
+     * once from the channels declared by {@link MessageType}.
+     */
+    private static final class ChannelLookup {
+        private final byte[][] keys;
+        private final MessageType[] types;
+        private final int mask;
+
+        ChannelLookup(Source source) {
+            int count = 0;
+            for (MessageType type : MessageType.values()) {
+                if (type.getSource() == source) {
+                    count += type.getChannels().length;
+                }
+            }
+            int capacity = Integer.highestOneBit(Math.max(count, 1) * 4);
+            keys = new byte[capacity][];
+            types = new MessageType[capacity];
+            mask = capacity - 1;
+
+            for (MessageType type : MessageType.values()) {
+                if (type.getSource() != source) {
+                    continue;
+                }
+                for (String channel : type.getChannels()) {
+                    byte[] key = bytes(channel);
+                    int slot = hash(key, 0, key.length) & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = key;
+                    types[slot] = type;
+                }
+            }
+        }
+
+        MessageType get(byte[] bytes, int start, int end) {
+            int slot = hash(bytes, start, end) & mask;
+            while (keys[slot] != null) {
+                if (rangeEquals(bytes, start, end, keys[slot])) {
+                    return types[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return MessageType.STRING;
+        }
+    }
+}
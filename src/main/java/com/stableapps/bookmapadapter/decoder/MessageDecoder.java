@@ -0,0 +1,98 @@
+package com.stableapps.bookmapadapter.decoder;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.DecodeException;
+import javax.websocket.Decoder;
+import javax.websocket.EndpointConfig;
+
+import com.stableapps.bookmapadapter.model.Message;
+import com.stableapps.bookmapadapter.model.MessageType;
+
+/**
+ * The only decoder registered on the websocket session. Every frame is
+ * inflated exactly once here, classified once by {@link MessageClassifier} and
+ * parsed by the typed decoder registered for its {@link MessageType}, which is
+ * then set on the message for dispatching. Tyrus does not call
+ * {@link AbstractDecoder#willDecode(ByteBuffer)} (and inflate) on each of
+ * them.
+ */
+public class MessageDecoder implements Decoder.Binary<Message> {
+
+    private static final AtomicLong frames = new AtomicLong();
+
+    private final Map<MessageType, AbstractDecoder<? extends Message>> decoders = new EnumMap<>(MessageType.class);
+
+    {
+        decoders.put(MessageType.PONG, new PongDecoder());
+        decoders.put(MessageType.LOGIN, new LoginResponseDecoder());
+        decoders.put(MessageType.UNSUBSCRIBED, new UnsubscribeResponseDecoder());
+        decoders.put(MessageType.DEPTH, new SubscribeContractMarketDepthIncrementalResponseDecoder());
+        decoders.put(MessageType.TRADE, new SubscribeContractTradeRecordResponseDecoder());
+        decoders.put(MessageType.SPOT_ORDER, new SubscribeOrderSpotDecoder());
+        decoders.put(MessageType.FUTURES_ORDER, new SubscribeOrderFuturesDecoder());
+        decoders.put(MessageType.FUTURES_ACCOUNT, new SubscribeFuturesAccountResponseDecoder());
+        decoders.put(MessageType.SPOT_ACCOUNT, new SubscribeSpotAccountResponseDecoder());
+        decoders.put(MessageType.FUTURES_POSITION, new SubscribePositionFuturesDecoder());
+        decoders.put(MessageType.DEPTH_SUBSCRIBED, new SubscribeContractMarketDepthIncrementalInitialResponseDecoder());
+        decoders.put(MessageType.TRADE_SUBSCRIBED, new SubscribeContractTradeRecordInitialResponseDecoder());
+        decoders.put(MessageType.ORDER_SUBSCRIBED, new SubscribeOrderInitialResponseDecoder());
+        decoders.put(MessageType.FUTURES_ACCOUNT_SUBSCRIBED, new SubscribeFuturesAccountInitialResponseDecoder());
+        decoders.put(MessageType.SPOT_ACCOUNT_SUBSCRIBED, new SubscribeSpotAccountInitialResponseDecoder());
+        decoders.put(MessageType.SPOT_MARGIN_ACCOUNT_SUBSCRIBED, new SubscribeSpotMarginAccountInitialResponseDecoder());
+        decoders.put(MessageType.FUTURES_POSITION_SUBSCRIBED, new SubscribePositionFuturesInitialResponseDecoder());
+        decoders.put(MessageType.STRING, new StringMessageDecoder());
+    }
+
+    /**
+     * @return the number of frames passed through this decoder since startup
+     */
+    public static long getFrameCount() {
+        return frames.get();
+    }
+
+    /**
+     * @return average number of inflations per received frame, expected to be
+     *         1.0
+     */
+    public static double getInflationsPerFrame() {
+        long frameCount = frames.get();
+        return frameCount == 0 ? 0 : (double) AbstractDecoder.getInflationCount() / frameCount;
+    }
+
+    @Override
+    public Message decode(ByteBuffer buffer) throws DecodeException {
+        frames.incrementAndGet();
+        long receivedMillis = System.currentTimeMillis();
+        long receivedNanos = System.nanoTime();
+        FrameInflater inflater = AbstractDecoder.inflate(buffer);
+        byte[] bytes = inflater.bytes();
+        int length = inflater.length();
+
+        MessageType type = MessageClassifier.classify(bytes, 0, length);
+        Message message = decoders.get(type).decode(bytes, 0, length);
+        if (message != null) {
+            message.setType(type);
+            message.setTimes(receivedMillis, receivedNanos, System.nanoTime());
+        }
+        return message;
+    }
+
+    @Override
+    public boolean willDecode(ByteBuffer buffer) {
+        return true;
+    }
+
+    @Override
+    public void init(EndpointConfig ec) {
+        decoders.values().forEach(decoder -> decoder.init(ec));
+    }
+
+    @Override
+    public void destroy() {
+        decoders.values().forEach(AbstractDecoder::destroy);
+    }
+}
@@ -5,6 +5,8 @@
  */
 package com.stableapps.bookmapadapter.decoder;
 
+import java.nio.charset.StandardCharsets;
+
 import javax.websocket.DecodeException;
 
 import com.stableapps.bookmapadapter.model.StringMessage;
@@ -24,6 +26,11 @@ public class StringMessageDecoder extends AbstractDecoder<StringMessage> {
 		return true;
 	}
 
+	@Override
+	public StringMessage decode(byte[] bytes, int offset, int length) throws DecodeException {
+		return decode(new String(bytes, offset, length, StandardCharsets.UTF_8));
+	}
+
 	@Override
 	public StringMessage decode(String arg0) throws DecodeException {
 		StringMessage message = new StringMessage(arg0);
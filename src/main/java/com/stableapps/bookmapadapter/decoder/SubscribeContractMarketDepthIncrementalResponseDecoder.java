@@ -5,17 +5,44 @@
  */
 package com.stableapps.bookmapadapter.decoder;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.websocket.DecodeException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.stableapps.bookmapadapter.model.DepthLevels;
+import com.stableapps.bookmapadapter.model.InstrumentHandle;
+import com.stableapps.bookmapadapter.model.MarketDepths;
 import com.stableapps.bookmapadapter.model.SubscribeContractMarketDepthResponse;
+import com.stableapps.bookmapadapter.util.Constants.Market;
+import com.stableapps.bookmapadapter.util.FixedPoint;
 
 /**
+ * Decodes {@code futures/depth} and {@code spot/depth} frames with a streaming
+ * parser. Levels are written into the primitive buffers of a response that is
+ * reused for every frame, fields the adapter does not use are skipped and
+ * levels are not sorted. The instrument is resolved to its
+ * {@link InstrumentHandle} from the characters of the table and instrument id,
+ * without building strings.
  *
  * @author aris
  */
 public class SubscribeContractMarketDepthIncrementalResponseDecoder
 	extends AbstractDecoder<SubscribeContractMarketDepthResponse> {
 
+	private static final String PARTIAL = "partial";
+	private static final String UPDATE = "update";
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+	private final SubscribeContractMarketDepthResponse response = new SubscribeContractMarketDepthResponse();
+	private Market market;
+
 	public SubscribeContractMarketDepthIncrementalResponseDecoder() {
 		super(SubscribeContractMarketDepthResponse.class);
+		response.data = new MarketDepths();
 	}
 
 	@Override
@@ -25,4 +52,121 @@ public class SubscribeContractMarketDepthIncrementalResponseDecoder
         return contains;
 	}
 
+	@Override
+	public SubscribeContractMarketDepthResponse decode(String arg0) throws DecodeException {
+		byte[] bytes = arg0.getBytes(StandardCharsets.UTF_8);
+		return decode(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public SubscribeContractMarketDepthResponse decode(byte[] bytes, int offset, int length)
+			throws DecodeException {
+		response.action = null;
+		response.instrument = null;
+		response.data.clear();
+		market = null;
+
+		try (JsonParser jp = jsonFactory.createParser(bytes, offset, length)) {
+			if (jp.nextToken() != JsonToken.START_OBJECT) {
+				return null;
+			}
+			while (jp.nextToken() == JsonToken.FIELD_NAME) {
+				String field = jp.getCurrentName();
+				JsonToken token = jp.nextToken();
+
+				if ("table".equals(field)) {
+					market = InstrumentHandle.marketOf(jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength());
+				} else if ("action".equals(field)) {
+					response.action = action(jp);
+				} else if ("data".equals(field) && token == JsonToken.START_ARRAY) {
+					// a depth frame carries a single instrument
+					if (jp.nextToken() == JsonToken.START_OBJECT) {
+						parseMarketDepths(jp, response.data);
+					}
+					while (jp.nextToken() != JsonToken.END_ARRAY) {
+						jp.skipChildren();
+					}
+				} else {
+					jp.skipChildren();
+				}
+			}
+			return response;
+		} catch (IOException | NumberFormatException ex) {
+			ex.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return the shared {@code partial} or {@code update} constant, so the
+	 *         action is not copied for every frame
+	 */
+	private static String action(JsonParser jp) throws IOException {
+		String text = textEquals(jp, PARTIAL) ? PARTIAL : textEquals(jp, UPDATE) ? UPDATE : null;
+		return text != null ? text : jp.getText();
+	}
+
+	private static boolean textEquals(JsonParser jp, String expected) throws IOException {
+		if (jp.getTextLength() != expected.length()) {
+			return false;
+		}
+		char[] chars = jp.getTextCharacters();
+		int offset = jp.getTextOffset();
+		for (int i = 0; i < expected.length(); i++) {
+			if (chars[offset + i] != expected.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void parseMarketDepths(JsonParser jp, MarketDepths depths) throws IOException {
+		while (jp.nextToken() == JsonToken.FIELD_NAME) {
+			String field = jp.getCurrentName();
+			JsonToken token = jp.nextToken();
+
+			if ("asks".equals(field) && token == JsonToken.START_ARRAY) {
+				parseLevels(jp, depths.getAsks());
+			} else if ("bids".equals(field) && token == JsonToken.START_ARRAY) {
+				parseLevels(jp, depths.getBids());
+			} else if ("instrument_id".equals(field)) {
+				// the table precedes data in OKEx frames
+				if (market != null) {
+					response.instrument = InstrumentHandle.of(market, jp.getTextCharacters(), jp.getTextOffset(),
+							jp.getTextLength());
+					depths.instrument_id = response.instrument.getInstrumentId();
+				} else {
+					depths.instrument_id = jp.getText();
+				}
+			} else if ("timestamp".equals(field)) {
+				depths.timestamp = jp.getText();
+			} else if ("checksum".equals(field)) {
+				depths.checksum = jp.getValueAsInt();
+			} else {
+				jp.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Reads {@code [[price, size, liquidated orders, orders], ...]}, only price
+	 * and size are kept. They are parsed from the token characters straight into
+	 * fixed point values, the number of decimals they were sent with is kept for
+	 * the checksum.
+	 */
+	private void parseLevels(JsonParser jp, DepthLevels levels) throws IOException {
+		while (jp.nextToken() == JsonToken.START_ARRAY) {
+			jp.nextToken();
+			long price = FixedPoint.parse(jp);
+			int priceDecimals = FixedPoint.decimals(jp);
+			jp.nextToken();
+			long size = FixedPoint.parse(jp);
+			int sizeDecimals = FixedPoint.decimals(jp);
+			while (jp.nextToken() != JsonToken.END_ARRAY) {
+				jp.skipChildren();
+			}
+			levels.add(price, size, priceDecimals, sizeDecimals);
+		}
+	}
+
 }
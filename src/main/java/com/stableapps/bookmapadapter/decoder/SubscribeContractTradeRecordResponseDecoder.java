@@ -5,6 +5,9 @@
  */
 package com.stableapps.bookmapadapter.decoder;
 
+import javax.websocket.DecodeException;
+
+import com.stableapps.bookmapadapter.model.InstrumentHandle;
 import com.stableapps.bookmapadapter.model.SubscribeContractTradeRecordResponse;
 
 /**
@@ -24,4 +27,13 @@ public class SubscribeContractTradeRecordResponseDecoder
         return contains;
 	}
 
+	@Override
+	public SubscribeContractTradeRecordResponse decode(byte[] bytes, int offset, int length) throws DecodeException {
+		SubscribeContractTradeRecordResponse response = super.decode(bytes, offset, length);
+		if (response != null && response.table != null && !response.getData().isEmpty()) {
+			response.instrument = InstrumentHandle.of(response.table, response.getData().get(0).instrument_id);
+		}
+		return response;
+	}
+
 }
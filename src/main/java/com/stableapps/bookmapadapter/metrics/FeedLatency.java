@@ -0,0 +1,212 @@
+package com.stableapps.bookmapadapter.metrics;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency of the messages of a market data channel, split into the stages a
+ * message passes, per alias and for the whole channel:
+ * <ul>
+ * <li>{@code exchangeToReceivedNanos}: from the exchange {@code timestamp} to
+ * the arrival of the frame, network and clock offset</li>
+ * <li>{@code receivedToDecodedNanos}: inflating and parsing the frame</li>
+ * <li>{@code decodedToAppliedNanos}: queueing on a lane and applying it to
+ * the book</li>
+ * <li>{@code appliedToListenersNanos}: until the Bookmap listeners
+ * returned</li>
+ * </ul>
+ * The histograms are named {@code latency.<channel>[.<alias>].<stage>} in
+ * {@link Metrics}. The exchange stage compares the wall clocks of two hosts,
+ * messages stamped in the future are counted as {@code clockSkew} and
+ * recorded as {@code 0}.
+ */
+public final class FeedLatency {
+
+    public static final FeedLatency DEPTH = new FeedLatency("depth");
+    public static final FeedLatency TRADE = new FeedLatency("trade");
+
+    private static volatile boolean isEnabled = true;
+
+    private final String channel;
+    private final Stages total;
+    private final Counter clockSkew;
+    private final Map<String, Stages> aliases = new ConcurrentHashMap<>();
+
+    /**
+     * The histograms of one alias, or of the whole channel.
+     */
+    public static final class Stages {
+        private final Histogram exchangeToReceived;
+        private final Histogram receivedToDecoded;
+        private final Histogram decodedToApplied;
+        private final Histogram appliedToListeners;
+
+        private Stages(String prefix) {
+            exchangeToReceived = Metrics.histogram(prefix + ".exchangeToReceivedNanos");
+            receivedToDecoded = Metrics.histogram(prefix + ".receivedToDecodedNanos");
+            decodedToApplied = Metrics.histogram(prefix + ".decodedToAppliedNanos");
+            appliedToListeners = Metrics.histogram(prefix + ".appliedToListenersNanos");
+        }
+
+        public Histogram getExchangeToReceived() {
+            return exchangeToReceived;
+        }
+
+        public Histogram getReceivedToDecoded() {
+            return receivedToDecoded;
+        }
+
+        public Histogram getDecodedToApplied() {
+            return decodedToApplied;
+        }
+
+        public Histogram getAppliedToListeners() {
+            return appliedToListeners;
+        }
+    }
+
+    private FeedLatency(String channel) {
+        this.channel = channel;
+        total = new Stages("latency." + channel);
+        clockSkew = Metrics.counter("latency." + channel + ".clockSkew");
+    }
+
+    /**
+     * Turns the measurement off, or on again, for all channels.
+     */
+    public static void setEnabled(boolean enabled) {
+        isEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return isEnabled;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public Stages getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the histograms of an alias, created on first use
+     */
+    public Stages of(String alias) {
+        Stages stages = aliases.get(alias);
+        if (stages == null) {
+            stages = aliases.computeIfAbsent(alias, key -> new Stages("latency." + channel + "." + key));
+        }
+        return stages;
+    }
+
+    /**
+     * Records the stages up to the decoded message.
+     *
+     * @param exchangeTimestamp ISO-8601 time the exchange stamped the message
+     *                          with, {@code null} skips that stage
+     * @param receivedMillis    wall clock when the frame arrived
+     * @param receivedNanos     {@link System#nanoTime()} when the frame
+     *                          arrived
+     * @param decodedNanos      {@link System#nanoTime()} when it was decoded
+     */
+    public void onDecoded(String alias, String exchangeTimestamp, long receivedMillis, long receivedNanos,
+            long decodedNanos) {
+        Stages stages = of(alias);
+        long exchangeMillis = parseMillis(exchangeTimestamp);
+        if (exchangeMillis != Long.MIN_VALUE) {
+            long nanos = (receivedMillis - exchangeMillis) * 1_000_000;
+            if (nanos < 0) {
+                clockSkew.increment();
+            }
+            stages.exchangeToReceived.record(nanos);
+            total.exchangeToReceived.record(nanos);
+        }
+        long decoding = decodedNanos - receivedNanos;
+        stages.receivedToDecoded.record(decoding);
+        total.receivedToDecoded.record(decoding);
+    }
+
+    /**
+     * Records the stage from the decoded message until it was applied.
+     */
+    public void onApplied(String alias, long decodedNanos, long appliedNanos) {
+        long nanos = appliedNanos - decodedNanos;
+        of(alias).decodedToApplied.record(nanos);
+        total.decodedToApplied.record(nanos);
+    }
+
+    /**
+     * Records the stage from the applied message until the listeners
+     * returned.
+     */
+    public void onListeners(String alias, long appliedNanos, long returnedNanos) {
+        long nanos = returnedNanos - appliedNanos;
+        of(alias).appliedToListeners.record(nanos);
+        total.appliedToListeners.record(nanos);
+    }
+
+    /**
+     * Parses the timestamps OKEx sends, {@code 2019-03-11T08:32:11.529Z},
+     * without allocating. Other ISO-8601 forms go through {@link Instant}.
+     *
+     * @return milliseconds since the epoch, {@link Long#MIN_VALUE} if the
+     *         timestamp is missing or malformed
+     */
+    public static long parseMillis(String timestamp) {
+        if (timestamp == null) {
+            return Long.MIN_VALUE;
+        }
+        if (timestamp.length() == 24 && timestamp.charAt(4) == '-' && timestamp.charAt(7) == '-'
+                && timestamp.charAt(10) == 'T' && timestamp.charAt(13) == ':' && timestamp.charAt(16) == ':'
+                && timestamp.charAt(19) == '.' && timestamp.charAt(23) == 'Z') {
+            int year = digits(timestamp, 0, 4);
+            int month = digits(timestamp, 5, 2);
+            int day = digits(timestamp, 8, 2);
+            int hour = digits(timestamp, 11, 2);
+            int minute = digits(timestamp, 14, 2);
+            int second = digits(timestamp, 17, 2);
+            int millis = digits(timestamp, 20, 3);
+            if ((year | month | day | hour | minute | second | millis) >= 0 && month >= 1 && month <= 12) {
+                long seconds = daysFromCivil(year, month, day) * 86_400L + hour * 3_600L + minute * 60L + second;
+                return seconds * 1_000 + millis;
+            }
+        }
+        try {
+            return Instant.parse(timestamp).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * @return the decimal number of the characters, {@code -1} if one is not
+     *         a digit
+     */
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @return days since 1970-01-01 of a proleptic Gregorian date
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+}
@@ -0,0 +1,54 @@
+package com.stableapps.bookmapadapter.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Process wide registry of named counters and histograms. Metrics are created
+ * on first use and kept for the lifetime of the adapter, callers on hot paths
+ * should look them up once and keep the reference.
+ */
+public final class Metrics {
+
+    private static final ConcurrentNavigableMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private static final ConcurrentNavigableMap<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, Histogram::new);
+    }
+
+    /**
+     * @return the counters whose name starts with the prefix, sorted by name
+     */
+    public static List<Counter> counters(String prefix) {
+        return new ArrayList<>(counters.subMap(prefix, prefix + Character.MAX_VALUE).values());
+    }
+
+    /**
+     * @return the histograms whose name starts with the prefix, e.g.
+     *         {@code latency.depth.} for the depth latencies of all aliases,
+     *         sorted by name
+     */
+    public static List<Histogram> histograms(String prefix) {
+        return new ArrayList<>(histograms.subMap(prefix, prefix + Character.MAX_VALUE).values());
+    }
+
+    /**
+     * @return one line per metric, sorted by name
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        counters.values().forEach(counter -> sb.append(counter).append('\n'));
+        histograms.values().forEach(histogram -> sb.append(histogram).append('\n'));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package com.stableapps.bookmapadapter.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.stableapps.bookmapadapter.util.FixedPoint;
+
+/**
+ * Reads a decimal string or number into a {@link FixedPoint} {@code long}.
+ * Empty strings and nulls, which OKEx sends for e.g. the price of market
+ * orders, are read as zero.
+ */
+@SuppressWarnings("serial")
+public class CustomFixedPointDeserializer extends StdDeserializer<Long> {
+    public CustomFixedPointDeserializer() {
+        super(Long.class);
+    }
+
+    @Override
+    public Long deserialize(JsonParser jp, DeserializationContext ctxt)
+      throws IOException, JsonProcessingException {
+        if (jp.getTextLength() == 0) {
+            return 0L;
+        }
+        try {
+            return FixedPoint.parse(jp);
+        } catch (NumberFormatException e) {
+            throw ctxt.weirdStringException(jp.getText(), Long.class, e.getMessage());
+        }
+    }
+
+    @Override
+    public Long getNullValue() {
+        return 0L;
+    }
+}
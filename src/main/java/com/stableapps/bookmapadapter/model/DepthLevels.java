@@ -0,0 +1,87 @@
+package com.stableapps.bookmapadapter.model;
+
+import java.util.Arrays;
+
+import com.stableapps.bookmapadapter.util.FixedPoint;
+
+/**
+ * Reusable buffer of price levels of one side of a depth message. Prices and
+ * sizes are kept in primitive arrays that only grow, so refilling it for every
+ * message does not allocate. Levels are kept in the order they were received,
+ * prices and sizes are {@link FixedPoint} values.
+ */
+public class DepthLevels {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] prices = new long[INITIAL_CAPACITY];
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    private byte[] priceDecimals = new byte[INITIAL_CAPACITY];
+    private byte[] sizeDecimals = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(long price, long amount) {
+        add(price, amount, 0, 0);
+    }
+
+    /**
+     * @param priceDecimals number of decimals the price was sent with
+     * @param sizeDecimals  number of decimals the size was sent with
+     */
+    public void add(long price, long amount, int priceDecimals, int sizeDecimals) {
+        if (size == prices.length) {
+            int capacity = prices.length * 2;
+            prices = Arrays.copyOf(prices, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            this.priceDecimals = Arrays.copyOf(this.priceDecimals, capacity);
+            this.sizeDecimals = Arrays.copyOf(this.sizeDecimals, capacity);
+        }
+        prices[size] = price;
+        sizes[size] = amount;
+        this.priceDecimals[size] = (byte) priceDecimals;
+        this.sizeDecimals[size] = (byte) sizeDecimals;
+        size++;
+    }
+
+    /**
+     * Replaces the levels by those of another buffer, growing only if it holds
+     * more levels than this one ever did.
+     */
+    public void copyFrom(DepthLevels other) {
+        if (prices.length < other.size) {
+            prices = new long[other.prices.length];
+            sizes = new long[other.prices.length];
+            priceDecimals = new byte[other.prices.length];
+            sizeDecimals = new byte[other.prices.length];
+        }
+        System.arraycopy(other.prices, 0, prices, 0, other.size);
+        System.arraycopy(other.sizes, 0, sizes, 0, other.size);
+        System.arraycopy(other.priceDecimals, 0, priceDecimals, 0, other.size);
+        System.arraycopy(other.sizeDecimals, 0, sizeDecimals, 0, other.size);
+        size = other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getPrice(int index) {
+        return prices[index];
+    }
+
+    public long getSize(int index) {
+        return sizes[index];
+    }
+
+    public int getPriceDecimals(int index) {
+        return priceDecimals[index];
+    }
+
+    public int getSizeDecimals(int index) {
+        return sizeDecimals[index];
+    }
+}
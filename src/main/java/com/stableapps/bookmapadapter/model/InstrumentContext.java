@@ -0,0 +1,130 @@
+package com.stableapps.bookmapadapter.model;
+
+import com.stableapps.bookmapadapter.book.GranulatedBook;
+import com.stableapps.bookmapadapter.model.rest.InstrumentFutures;
+import com.stableapps.bookmapadapter.model.rest.InstrumentGeneric;
+import com.stableapps.bookmapadapter.model.rest.InstrumentSpot;
+import com.stableapps.bookmapadapter.util.Constants.Market;
+import com.stableapps.bookmapadapter.util.FixedPoint;
+
+/**
+ * Everything the market data path needs about a subscribed instrument,
+ * resolved once when it is subscribed and published on its
+ * {@link InstrumentHandle}. A context never changes, subscribing again with
+ * other pips publishes a new one.
+ */
+public final class InstrumentContext {
+
+    private final InstrumentHandle handle;
+    private final InstrumentGeneric instrument;
+    private final double tickSize;
+    private final double pips;
+    private final double sizeMultiplier;
+    private final double contractValue;
+    private final GranulatedBook book;
+    private final long depthConflationMillis;
+
+    /** Exchange tick, identifies a price level. */
+    private final FixedPoint.Unit tickUnit;
+    /** Price granularity chosen by the user. */
+    private final FixedPoint.Unit pipsUnit;
+    /** Depth and order size unit, {@code 1 / sizeMultiplier}. */
+    private final FixedPoint.Unit sizeUnit;
+    /** Trade size unit, the min size for spot and one contract for futures. */
+    private final FixedPoint.Unit tradeSizeUnit;
+
+    /**
+     * @param sizeMultiplier        size multiplier the alias is subscribed
+     *                              with, {@code null} counts as {@code 1}
+     * @param depthConflationMillis interval at which depth changes are
+     *                              flushed, {@code 0} flushes after every
+     *                              message
+     */
+    public InstrumentContext(InstrumentHandle handle, InstrumentGeneric instrument, double pips,
+            Double sizeMultiplier, GranulatedBook book, long depthConflationMillis) {
+        this.handle = handle;
+        this.instrument = instrument;
+        this.tickSize = instrument.getTickSize();
+        this.pips = pips;
+        this.sizeMultiplier = sizeMultiplier == null ? 1.0 : sizeMultiplier;
+        this.contractValue = instrument instanceof InstrumentFutures
+                ? ((InstrumentFutures) instrument).getContractVal()
+                : Double.NaN;
+        this.book = book;
+        this.depthConflationMillis = depthConflationMillis;
+
+        tickUnit = FixedPoint.Unit.of(tickSize);
+        pipsUnit = FixedPoint.Unit.of(pips);
+        sizeUnit = FixedPoint.Unit.perOne(this.sizeMultiplier);
+        tradeSizeUnit = instrument instanceof InstrumentSpot
+                ? FixedPoint.Unit.of(((InstrumentSpot) instrument).getMinSize())
+                : FixedPoint.Unit.WHOLE;
+    }
+
+    public InstrumentHandle getHandle() {
+        return handle;
+    }
+
+    public String getAlias() {
+        return handle.getAlias();
+    }
+
+    public Market getMarket() {
+        return handle.getMarket();
+    }
+
+    public InstrumentGeneric getInstrument() {
+        return instrument;
+    }
+
+    public double getTickSize() {
+        return tickSize;
+    }
+
+    public double getPips() {
+        return pips;
+    }
+
+    public double getSizeMultiplier() {
+        return sizeMultiplier;
+    }
+
+    /**
+     * @return value of one contract, {@code NaN} for spot instruments
+     */
+    public double getContractValue() {
+        return contractValue;
+    }
+
+    public GranulatedBook getBook() {
+        return book;
+    }
+
+    public long getDepthConflationMillis() {
+        return depthConflationMillis;
+    }
+
+    /**
+     * @return whether depth changes are collected and flushed by a timer
+     *         instead of after every message
+     */
+    public boolean isDepthConflated() {
+        return depthConflationMillis > 0;
+    }
+
+    public FixedPoint.Unit getTickUnit() {
+        return tickUnit;
+    }
+
+    public FixedPoint.Unit getPipsUnit() {
+        return pipsUnit;
+    }
+
+    public FixedPoint.Unit getSizeUnit() {
+        return sizeUnit;
+    }
+
+    public FixedPoint.Unit getTradeSizeUnit() {
+        return tradeSizeUnit;
+    }
+}
@@ -0,0 +1,224 @@
+package com.stableapps.bookmapadapter.model;
+
+import java.util.Locale;
+
+import com.stableapps.bookmapadapter.util.Constants.Market;
+
+/**
+ * Interned identity of an instrument of a market. There is exactly one handle
+ * per market and instrument id, so handles can be compared by reference and
+ * the alias is built once, when the instrument is first seen. Lookups from the
+ * characters of a parsed token do not allocate once the handle exists.
+ */
+public final class InstrumentHandle {
+
+    private static final String[] MARKET_PREFIXES = new String[Market.values().length];
+    static {
+        for (Market market : Market.values()) {
+            MARKET_PREFIXES[market.ordinal()] = market.name().toLowerCase(Locale.ROOT) + "/";
+        }
+    }
+
+    /**
+     * Open addressing table, replaced as a whole when a handle is added so that
+     * readers never need a lock.
+     */
+    private static volatile InstrumentHandle[] table = new InstrumentHandle[64];
+    private static int count;
+
+    private final Market market;
+    private final String instrumentId;
+    private final String alias;
+    private final int hash;
+    private volatile InstrumentContext context;
+
+    private InstrumentHandle(Market market, String instrumentId, int hash) {
+        this.market = market;
+        this.instrumentId = instrumentId;
+        this.alias = market + "@" + instrumentId;
+        this.hash = hash;
+    }
+
+    public Market getMarket() {
+        return market;
+    }
+
+    public String getInstrumentId() {
+        return instrumentId;
+    }
+
+    /**
+     * @return alias used by Bookmap, e.g. {@code FUTURES@BTC-USD-190628}
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    /**
+     * @return context published when the instrument was subscribed, or
+     *         {@code null} if it is not subscribed
+     */
+    public InstrumentContext getContext() {
+        return context;
+    }
+
+    public void setContext(InstrumentContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Handles are interned and equal by identity, the hash of the market and
+     * instrument id is stable across runs unlike the identity hash.
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return alias;
+    }
+
+    public static InstrumentHandle of(Market market, char[] chars, int offset, int length) {
+        int hash = hash(market, chars, offset, length);
+        InstrumentHandle[] handles = table;
+        int mask = handles.length - 1;
+        for (int slot = hash & mask; handles[slot] != null; slot = (slot + 1) & mask) {
+            InstrumentHandle handle = handles[slot];
+            if (handle.hash == hash && handle.matches(market, chars, offset, length)) {
+                return handle;
+            }
+        }
+        return register(market, new String(chars, offset, length));
+    }
+
+    public static InstrumentHandle of(Market market, String instrumentId) {
+        int hash = hash(market, instrumentId);
+        InstrumentHandle[] handles = table;
+        int mask = handles.length - 1;
+        for (int slot = hash & mask; handles[slot] != null; slot = (slot + 1) & mask) {
+            InstrumentHandle handle = handles[slot];
+            if (handle.hash == hash && handle.market == market && handle.instrumentId.equals(instrumentId)) {
+                return handle;
+            }
+        }
+        return register(market, instrumentId);
+    }
+
+    /**
+     * @param alias alias used by Bookmap, e.g. {@code SPOT@BTC-USDT}
+     */
+    public static InstrumentHandle forAlias(String alias) {
+        int at = alias.indexOf('@');
+        return of(Market.valueOf(alias.substring(0, at)), alias.substring(at + 1));
+    }
+
+    /**
+     * @param channel channel or table name, e.g. {@code futures/depth}
+     */
+    public static InstrumentHandle of(String channel, String instrumentId) {
+        Market market = marketOf(channel);
+        return market == null ? null : of(market, instrumentId);
+    }
+
+    public static Market marketOf(String channel) {
+        for (Market market : Market.values()) {
+            if (channel.startsWith(MARKET_PREFIXES[market.ordinal()])) {
+                return market;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return market of a channel name such as {@code spot/trade}, or
+     *         {@code null} if it has no known market prefix
+     */
+    public static Market marketOf(char[] chars, int offset, int length) {
+        for (Market market : Market.values()) {
+            String prefix = MARKET_PREFIXES[market.ordinal()];
+            if (length >= prefix.length() && regionMatches(chars, offset, prefix)) {
+                return market;
+            }
+        }
+        return null;
+    }
+
+    private static synchronized InstrumentHandle register(Market market, String instrumentId) {
+        int hash = hash(market, instrumentId);
+        InstrumentHandle[] handles = table;
+        int mask = handles.length - 1;
+        int slot = hash & mask;
+        for (; handles[slot] != null; slot = (slot + 1) & mask) {
+            InstrumentHandle handle = handles[slot];
+            if (handle.hash == hash && handle.market == market && handle.instrumentId.equals(instrumentId)) {
+                return handle;
+            }
+        }
+
+        InstrumentHandle created = new InstrumentHandle(market, instrumentId, hash);
+        InstrumentHandle[] copy;
+        if ((count + 1) * 2 > handles.length) {
+            copy = new InstrumentHandle[handles.length * 2];
+            for (InstrumentHandle handle : handles) {
+                if (handle != null) {
+                    insert(copy, handle);
+                }
+            }
+            insert(copy, created);
+        } else {
+            copy = handles.clone();
+            copy[slot] = created;
+        }
+        count++;
+        table = copy;
+        return created;
+    }
+
+    private static void insert(InstrumentHandle[] handles, InstrumentHandle handle) {
+        int mask = handles.length - 1;
+        int slot = handle.hash & mask;
+        while (handles[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        handles[slot] = handle;
+    }
+
+    private boolean matches(Market market, char[] chars, int offset, int length) {
+        if (this.market != market || instrumentId.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (instrumentId.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(char[] chars, int offset, String expected) {
+        for (int i = 0; i < expected.length(); i++) {
+            if (chars[offset + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(Market market, char[] chars, int offset, int length) {
+        int hash = market.ordinal();
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(Market market, String instrumentId) {
+        int hash = market.ordinal();
+        for (int i = 0; i < instrumentId.length(); i++) {
+            hash = 31 * hash + instrumentId.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
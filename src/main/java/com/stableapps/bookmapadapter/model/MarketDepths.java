@@ -5,63 +5,49 @@
  */
 package com.stableapps.bookmapadapter.model;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
-
 import lombok.Data;
 
 /**
+ * Data of a depth message. It is filled by the streaming depth decoder and
+ * reused for the next message, so it must not be kept after the message has
+ * been handled.
  *
  * @author aris
  */
 @Data
-@JsonDeserialize(using = CustomMarketDepthsDeserializer.class)
-@JsonIgnoreProperties(ignoreUnknown = true)
 public class MarketDepths {
 
     public String instrument_id;
     public String timestamp;
     public int checksum;
-    
-	public List<List<Double>> asks = null;
-	public List<List<Double>> bids = null;
-
-	List<MarketDepth> askDatas = new ArrayList<>();;
-	List<MarketDepth> bidDatas = new ArrayList<>();;
-
-	public void setAsks(List<List<Double>> asks) {
-		this.asks = asks;
-		
-		MarketDepth askData;
-		for (List<Double> ask : asks) {
-			askData = MarketDepth.builder()
-			  .price(ask.get(0))
-			  .contractAmount(ask.get(1))
-			  .coinAmount(ask.get(2))
-			  .coinCumulant(ask.get(3))
-			  .contractCumulant(ask.get(4))
-			  .build();
-			askDatas.add(askData);
-		}
-
-	}
-
-	public void setBids(List<List<Double>> bids) {
-		this.bids = bids;
-		
-		MarketDepth bidData;
-		for (List<Double> bid : bids) {
-			bidData = MarketDepth.builder()
-			  .price(bid.get(0))
-			  .contractAmount(bid.get(1))
-			  .coinAmount(bid.get(2))
-			  .coinCumulant(bid.get(3))
-			  .contractCumulant(bid.get(4))
-			  .build();
-			bidDatas.add(bidData);
-		}
-	}
+    /**
+     * {@link System#nanoTime()} when the message was decoded, {@code 0} if
+     * unknown.
+     */
+    public long decodedNanos;
+
+    final DepthLevels asks = new DepthLevels();
+    final DepthLevels bids = new DepthLevels();
+
+    public void clear() {
+        instrument_id = null;
+        timestamp = null;
+        checksum = 0;
+        decodedNanos = 0;
+        asks.clear();
+        bids.clear();
+    }
+
+    /**
+     * Replaces the content by a copy of another message, e.g. to keep it
+     * beyond the handling of the message the decoder reuses.
+     */
+    public void copyFrom(MarketDepths other) {
+        instrument_id = other.instrument_id;
+        timestamp = other.timestamp;
+        checksum = other.checksum;
+        decodedNanos = other.decodedNanos;
+        asks.copyFrom(other.asks);
+        bids.copyFrom(other.bids);
+    }
 }
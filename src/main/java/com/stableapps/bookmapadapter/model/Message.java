@@ -5,9 +5,61 @@
  */
 package com.stableapps.bookmapadapter.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  *
  * @author aris
  */
 public abstract class Message {
+
+    /**
+     * Set by the decoder from the classified frame, used to dispatch the
+     * message without type checks.
+     */
+    @JsonIgnore
+    private MessageType type;
+
+    /**
+     * Wall clock and {@link System#nanoTime()} when the frame arrived, and
+     * when it was decoded, set by the decoder to measure latencies.
+     */
+    @JsonIgnore
+    private long receivedMillis;
+    @JsonIgnore
+    private long receivedNanos;
+    @JsonIgnore
+    private long decodedNanos;
+
+    @JsonIgnore
+    public MessageType getType() {
+        return type;
+    }
+
+    @JsonIgnore
+    public void setType(MessageType type) {
+        this.type = type;
+    }
+
+    @JsonIgnore
+    public long getReceivedMillis() {
+        return receivedMillis;
+    }
+
+    @JsonIgnore
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    @JsonIgnore
+    public long getDecodedNanos() {
+        return decodedNanos;
+    }
+
+    @JsonIgnore
+    public void setTimes(long receivedMillis, long receivedNanos, long decodedNanos) {
+        this.receivedMillis = receivedMillis;
+        this.receivedNanos = receivedNanos;
+        this.decodedNanos = decodedNanos;
+    }
 }
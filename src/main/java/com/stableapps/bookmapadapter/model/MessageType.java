@@ -0,0 +1,70 @@
+package com.stableapps.bookmapadapter.model;
+
+/**
+ * Kind of a websocket message, determined from the {@code table} of data
+ * pushes or from the {@code event} and {@code channel} of responses.
+ */
+public enum MessageType {
+
+    PONG,
+    LOGIN,
+    UNSUBSCRIBED,
+
+    DEPTH(Source.TABLE, "futures/depth", "spot/depth"),
+    TRADE(Source.TABLE, "futures/trade", "spot/trade"),
+    SPOT_ORDER(Source.TABLE, "spot/order"),
+    FUTURES_ORDER(Source.TABLE, "futures/order"),
+    FUTURES_ACCOUNT(Source.TABLE, "futures/account"),
+    SPOT_ACCOUNT(Source.TABLE, "spot/account"),
+    FUTURES_POSITION(Source.TABLE, "futures/position"),
+
+    DEPTH_SUBSCRIBED(Source.SUBSCRIBE, "futures/depth", "spot/depth"),
+    TRADE_SUBSCRIBED(Source.SUBSCRIBE, "futures/trade", "spot/trade"),
+    ORDER_SUBSCRIBED(Source.SUBSCRIBE, "futures/order", "spot/order"),
+    FUTURES_ACCOUNT_SUBSCRIBED(Source.SUBSCRIBE, "futures/account"),
+    SPOT_ACCOUNT_SUBSCRIBED(Source.SUBSCRIBE, "spot/account"),
+    SPOT_MARGIN_ACCOUNT_SUBSCRIBED(Source.SUBSCRIBE, "spot/margin_account"),
+    FUTURES_POSITION_SUBSCRIBED(Source.SUBSCRIBE, "futures/position"),
+
+    /**
+     * Anything that is not recognized, it is kept as a plain string.
+     */
+    STRING;
+
+    public enum Source {
+        /**
+         * Data push, {@code {"table":"<channel>", ...}}
+         */
+        TABLE,
+        /**
+         * Subscription acknowledgement,
+         * {@code {"event":"subscribe","channel":"<channel>:<instrument>"}}
+         */
+        SUBSCRIBE,
+        NONE
+    }
+
+    private final Source source;
+    private final String[] channels;
+
+    private MessageType() {
+        this(Source.NONE);
+    }
+
+    private MessageType(Source source, String... channels) {
+        this.source = source;
+        this.channels = channels;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * @return channel names without the instrument part, e.g.
+     *         {@code futures/depth}
+     */
+    public String[] getChannels() {
+        return channels.clone();
+    }
+}
@@ -3,9 +3,14 @@ package com.stableapps.bookmapadapter.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.stableapps.bookmapadapter.util.FixedPoint;
 
 import lombok.Data;
 
+/**
+ * Order push or REST order, prices and sizes are {@link FixedPoint} values.
+ */
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class OrderData {
@@ -16,8 +21,10 @@ public class OrderData {
     @JsonProperty("client_oid")
     String clientOid;
     
-    double price;
-    double size;
+    @JsonDeserialize(using = CustomFixedPointDeserializer.class)
+    long price;
+    @JsonDeserialize(using = CustomFixedPointDeserializer.class)
+    long size;
     
     @JsonProperty("instrument_id")
     String instrumentId;
@@ -29,10 +36,12 @@ public class OrderData {
     int orderType;
     
     @JsonProperty("last_fill_px")
-    double lastFillPx;
+    @JsonDeserialize(using = CustomFixedPointDeserializer.class)
+    long lastFillPx;
 
     @JsonProperty("last_fill_qty")
-    double lastFilledQty;
+    @JsonDeserialize(using = CustomFixedPointDeserializer.class)
+    long lastFilledQty;
     
     @JsonProperty("last_fill_time")
     String lastFillTime;
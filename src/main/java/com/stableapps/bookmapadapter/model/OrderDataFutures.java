@@ -2,6 +2,7 @@ package com.stableapps.bookmapadapter.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -12,7 +13,8 @@ import lombok.EqualsAndHashCode;
 public class OrderDataFutures extends OrderData {
 
     @JsonProperty("filled_qty")
-    double filledQty;
+    @JsonDeserialize(using = CustomFixedPointDeserializer.class)
+    long filledQty;
 
     double fee;
     
@@ -2,6 +2,7 @@ package com.stableapps.bookmapadapter.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -15,7 +16,8 @@ public class OrderDataSpot extends OrderData {
     String side;
     
     @JsonProperty("filled_size")
-    double filledSize;
+    @JsonDeserialize(using = CustomFixedPointDeserializer.class)
+    long filledSize;
 
     @JsonProperty("filled_notional")
     double filledNotional;
@@ -5,6 +5,7 @@
  */
 package com.stableapps.bookmapadapter.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Data;
@@ -21,7 +22,11 @@ public class SubscribeContractMarketDepthResponse extends Message {
 
 	public int binary;
 	public String channel;
-	public String alias;
+	/**
+	 * Instrument of the data, resolved by the decoder.
+	 */
+	@JsonIgnore
+	public InstrumentHandle instrument;
 	
 	public String table;
 	public String action;
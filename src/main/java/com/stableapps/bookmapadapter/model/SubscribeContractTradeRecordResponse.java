@@ -7,6 +7,7 @@ package com.stableapps.bookmapadapter.model;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Data;
@@ -23,7 +24,11 @@ public class SubscribeContractTradeRecordResponse extends Message {
 
 	public int binary;
 	public String channel;
-	public String alias;
+	/**
+	 * Instrument of the data, resolved by the decoder.
+	 */
+	@JsonIgnore
+	public InstrumentHandle instrument;
 	public String table;
 	List<Trade> data;
 }
@@ -5,8 +5,11 @@
  */
 package com.stableapps.bookmapadapter.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.stableapps.bookmapadapter.util.FixedPoint;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -14,6 +17,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 /**
+ * Trade push, price and quantity are {@link FixedPoint} values.
  *
  * @author aris
  */
@@ -26,18 +30,27 @@ public class Trade {
 
     String side;
     String trade_id;
-	double price;
+	@JsonDeserialize(using = CustomFixedPointDeserializer.class)
+	long price;
 	public String instrument_id;
-	double qty;
+	long qty;
 	String timestamp;
+	/**
+	 * {@link System#nanoTime()} when the message was decoded, {@code 0} if
+	 * unknown.
+	 */
+	@JsonIgnore
+	transient long decodedNanos;
 	
 	@JsonSetter("qty")
-	public void setQtyFromQty (double qty){
+	@JsonDeserialize(using = CustomFixedPointDeserializer.class)
+	public void setQtyFromQty (long qty){
 	    this.qty = qty;
 	}
 	
 	@JsonSetter("size")
-	public void setQtyFromSize (double size){
+	@JsonDeserialize(using = CustomFixedPointDeserializer.class)
+	public void setQtyFromSize (long size){
 	    this.qty = size;
 	}
 	
@@ -1,9 +1,8 @@
 package com.stableapps.bookmapadapter.provider;
 
-import java.lang.reflect.Field;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -11,6 +10,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
@@ -18,7 +18,9 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.function.Function;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.ObjectUtils;
@@ -27,12 +29,26 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stableapps.bookmapadapter.book.BookWatchdog;
+import com.stableapps.bookmapadapter.book.DepthChecksumValidator;
+import com.stableapps.bookmapadapter.book.DepthWindow;
+import com.stableapps.bookmapadapter.book.GranulatedBook;
+import com.stableapps.bookmapadapter.book.LadderAllocator;
+import com.stableapps.bookmapadapter.book.TopOfBook;
 import com.stableapps.bookmapadapter.client.AbstractClient;
+import com.stableapps.bookmapadapter.client.ConnectionPool;
 import com.stableapps.bookmapadapter.client.Connector;
+import com.stableapps.bookmapadapter.client.FeedArbiter;
+import com.stableapps.bookmapadapter.client.MarketDataLanes;
+import com.stableapps.bookmapadapter.client.RestoreProgress;
+import com.stableapps.bookmapadapter.metrics.FeedLatency;
 import com.stableapps.bookmapadapter.model.Expiration;
-import com.stableapps.bookmapadapter.model.MarketDepth;
+import com.stableapps.bookmapadapter.model.InstrumentContext;
+import com.stableapps.bookmapadapter.model.InstrumentHandle;
+import com.stableapps.bookmapadapter.model.DepthLevels;
 import com.stableapps.bookmapadapter.model.MarketDepths;
 import com.stableapps.bookmapadapter.model.MarketPrice;
+import com.stableapps.bookmapadapter.model.Message;
 import com.stableapps.bookmapadapter.model.OrderData;
 import com.stableapps.bookmapadapter.model.SpotAccount;
 import com.stableapps.bookmapadapter.model.SubscribeFuturesAccountResponse;
@@ -41,7 +57,10 @@ import com.stableapps.bookmapadapter.model.Trade;
 import com.stableapps.bookmapadapter.model.rest.InstrumentFutures;
 import com.stableapps.bookmapadapter.model.rest.InstrumentGeneric;
 import com.stableapps.bookmapadapter.model.rest.InstrumentSpot;
+import com.stableapps.bookmapadapter.util.Constants;
 import com.stableapps.bookmapadapter.util.Constants.Market;
+import com.stableapps.bookmapadapter.util.FixedPoint;
+import com.stableapps.bookmapadapter.util.Utils;
 
 import lombok.Data;
 import velox.api.layer0.live.ExternalLiveBaseProvider;
@@ -58,9 +77,9 @@ import velox.api.layer1.data.OrderUpdateParameters;
 import velox.api.layer1.data.StatusInfo;
 import velox.api.layer1.data.SubscribeInfo;
 import velox.api.layer1.data.SubscribeInfoCrypto;
+import velox.api.layer1.data.SystemTextMessageType;
 import velox.api.layer1.data.TradeInfo;
 import velox.api.layer1.layers.utils.OrderBook;
-import velox.api.layer1.layers.utils.OrderByOrderBook;
 
 /**
  * This provides real time data from OKEX.
@@ -72,6 +91,43 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
 	
 	public static final int DEFAULT_MARKET_DEPTH_AMOUNT = 20;
 	public static final double FUTURES_GENERIC_MIN_SIZE = 0.001; 
+	/**
+	 * Depth checksums are verified on every message by default.
+	 */
+	public static final int DEFAULT_DEPTH_CHECKSUM_INTERVAL = 1;
+	/**
+	 * Depth changes are flushed to Bookmap after every message by default.
+	 */
+	public static final long DEFAULT_DEPTH_CONFLATION_MILLIS = 0;
+	/**
+	 * A depth channel silent for a minute is resubscribed, as long as other
+	 * aliases of its connection received messages meanwhile. A quiet
+	 * instrument next to busy ones costs a new snapshot a minute.
+	 */
+	public static final long DEFAULT_STALE_DEPTH_MILLIS = 60_000;
+	/**
+	 * Trade channels are not checked for staleness by default, an instrument
+	 * may legitimately not trade for a long time.
+	 */
+	public static final long DEFAULT_STALE_TRADE_MILLIS = 0;
+	/**
+	 * Spot market orders are sent as limit orders this far, relative to the
+	 * best opposite price, into the book.
+	 */
+	public static final double MARKET_ORDER_PRICE_BAND = 0.05;
+	/**
+	 * Market data is handled on the socket read thread by default, so Bookmap
+	 * listeners are called from a single thread.
+	 */
+	public static final int DEFAULT_MARKET_DATA_LANES = 0;
+	/**
+	 * All subscriptions share the primary connection by default.
+	 */
+	public static final int DEFAULT_MARKET_DATA_CONNECTIONS = 1;
+	/**
+	 * Interval at which the load of the market data connections is compared.
+	 */
+	public static final long CONNECTION_REBALANCE_SECONDS = 30;
 
 	public Connector connector;
 	protected final HashMap<String, Instrument> aliasInstruments;
@@ -88,7 +144,35 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
     protected Map<String, InstrumentGeneric> genericInstruments = new HashMap<>();
     protected Map<String, Double> futuresMinSizeCalculated = new HashMap<>();
     protected Map<String, Pair<Double, Double>> pipsSizeMultipliers = new HashMap<>();
-    protected Map<String, BalanceInCurrency> balanceMap = new HashMap<>();
+    protected final DepthChecksumValidator depthChecksumValidator = new DepthChecksumValidator(
+            DEFAULT_DEPTH_CHECKSUM_INTERVAL, this::resyncDepth);
+    protected final BookWatchdog bookWatchdog = new BookWatchdog(DEFAULT_STALE_DEPTH_MILLIS,
+            DEFAULT_STALE_TRADE_MILLIS, this::resyncDepth, this::resyncTrade);
+    protected ScheduledFuture<?> bookWatchdogTask;
+    protected volatile long depthConflationMillis = DEFAULT_DEPTH_CONFLATION_MILLIS;
+    /** Shared by all connectors, {@code null} handles messages on the read threads. */
+    protected volatile MarketDataLanes marketDataLanes = DEFAULT_MARKET_DATA_LANES > 0
+            ? new MarketDataLanes(DEFAULT_MARKET_DATA_LANES)
+            : null;
+    protected volatile int marketDataConnections = DEFAULT_MARKET_DATA_CONNECTIONS;
+    protected volatile ConnectionPool connectionPool;
+    protected ScheduledFuture<?> connectionRebalanceTask;
+    protected volatile boolean isMarketDataRedundant;
+    protected final FeedArbiter feedArbiter = new FeedArbiter();
+    /** Standby session of each market data connection, by pool index. */
+    protected final Map<Integer, Connector> standbyConnectors = new ConcurrentHashMap<>();
+    /**
+     * Contexts this provider published, by alias. Handles are interned for
+     * the whole process, so a context found on a handle may be left over from
+     * another provider.
+     */
+    protected final Map<String, InstrumentContext> publishedContexts = new ConcurrentHashMap<>();
+    protected Map<String, Long> aliasDepthConflationMillis = new ConcurrentHashMap<>();
+    protected Map<String, ScheduledFuture<?>> depthConflationTasks = new ConcurrentHashMap<>();
+    protected Map<Market, DepthWindow> depthWindows = new ConcurrentHashMap<>();
+    protected final LadderAllocator offHeapLadders = new LadderAllocator.Direct();
+    protected volatile LadderAllocator ladderAllocator = LadderAllocator.HEAP;
+    protected Map<String, BalanceInCurrency> balanceMap = new ConcurrentHashMap<>();
     protected Map <String, Pair<Integer, Integer>> positionPairsBySymbol = new HashMap<String, Pair<Integer, Integer>>();
     protected Map<String, StatusInfoLocal> aliasedStatusInfos = new ConcurrentHashMap<>();
     public final String exchange;
@@ -132,7 +216,488 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
             int workingSells; 
     }
 
-    
+
+    /**
+     * @return context the alias is subscribed with, or {@code null}
+     */
+    protected InstrumentContext getContext(String alias) {
+        return publishedContexts.get(alias);
+    }
+
+    /**
+     * Reads the top of book maintained by the depth updates, without locking.
+     *
+     * @return best price of a side, or {@code NaN} if the side is empty or the
+     *         alias is not subscribed
+     */
+    public double getTopPrice(String alias, boolean isBid) {
+        InstrumentContext context = getContext(alias);
+        long best = context == null ? TopOfBook.NONE : context.getBook().getTopOfBook().get(isBid);
+        return best == TopOfBook.NONE ? Double.NaN : TopOfBook.priceOf(best) * context.getTickSize();
+    }
+
+    /**
+     * Builds the context of an alias from its instrument and the pips and size
+     * multiplier it is being subscribed with, and publishes it on the handle of
+     * the alias. The book of a subscription this provider already published
+     * is kept unless the pips changed, its levels would be in other units
+     * otherwise. Any other book holds what was shown to another instrument, a
+     * snapshot diffed against it would leave out the unchanged levels, so a new
+     * book is built. The caller closes the book it replaced, see
+     * {@link #closeBook}.
+     */
+    protected InstrumentContext publishContext(String alias) {
+        InstrumentHandle handle = InstrumentHandle.forAlias(alias);
+        Pair<Double, Double> multipliers = pipsSizeMultipliers.get(alias);
+        InstrumentContext previous = publishedContexts.get(alias);
+        InstrumentGeneric generic = genericInstruments.get(alias);
+        GranulatedBook book;
+        if (previous != null && previous == handle.getContext() && aliasInstruments.containsKey(alias)
+                && previous.getPips() == multipliers.getLeft()) {
+            book = previous.getBook();
+        } else {
+            book = new GranulatedBook(FixedPoint.Unit.of(generic.getTickSize()),
+                    FixedPoint.Unit.of(multipliers.getLeft()), ladderAllocator);
+        }
+        synchronized (book) {
+            book.setWindow(depthWindows.get(handle.getMarket()));
+        }
+        long conflationMillis = aliasDepthConflationMillis.getOrDefault(alias, depthConflationMillis);
+        InstrumentContext context = new InstrumentContext(handle, generic,
+                multipliers.getLeft(), multipliers.getRight(), book, conflationMillis);
+        handle.setContext(context);
+        publishedContexts.put(alias, context);
+        scheduleDepthConflation(context);
+        return context;
+    }
+
+    /**
+     * Takes the context of an alias off its handle, unless another provider
+     * published its own meanwhile.
+     *
+     * @return the context this provider published, or {@code null}
+     */
+    protected InstrumentContext unpublishContext(String alias) {
+        InstrumentContext context = publishedContexts.remove(alias);
+        InstrumentHandle handle = InstrumentHandle.forAlias(alias);
+        if (context != null && handle.getContext() == context) {
+            handle.setContext(null);
+        }
+        cancelDepthConflation(alias);
+        return context;
+    }
+
+    /**
+     * Gives the storage of a book that is no longer published back to its
+     * allocator. Takes the book lock, so a message or a conflation flush that
+     * still holds the book either finishes first or finds it closed.
+     */
+    protected void closeBook(GranulatedBook book) {
+        synchronized (book) {
+            book.close();
+        }
+    }
+
+    /**
+     * Keeps the price ladders of books created from now on in direct memory
+     * instead of on the heap, e.g. for a workspace with hundreds of aliases.
+     * The memory of a book is reused by the next book once its alias is
+     * unsubscribed. Applies to the books the depth checksum is validated
+     * against as well.
+     */
+    public void setOffHeapBooks(boolean isOffHeap) {
+        ladderAllocator = isOffHeap ? offHeapLadders : LadderAllocator.HEAP;
+        depthChecksumValidator.setAllocator(ladderAllocator);
+    }
+
+    /**
+     * Bounds the books of a market, e.g. to keep memory and callbacks of a
+     * workspace with many spot pairs predictable. Levels outside the window
+     * are not kept, levels the window moves away from are reported as removed
+     * and come back with their next update. Applies to subscribed aliases from
+     * their next message on.
+     *
+     * @param window the window, {@code null} keeps every level
+     */
+    public void setDepthWindow(Market market, DepthWindow window) {
+        if (window == null) {
+            depthWindows.remove(market);
+        } else {
+            depthWindows.put(market, window);
+        }
+        synchronized (aliasInstruments) {
+            for (String alias : aliasInstruments.keySet()) {
+                InstrumentContext context = getContext(alias);
+                if (context != null && context.getMarket() == market) {
+                    synchronized (context.getBook()) {
+                        context.getBook().setWindow(window);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the interval at which depth changes of aliases without an own
+     * interval are flushed to Bookmap. Conflating trades latency for fewer
+     * callbacks when Bookmap can not keep up, e.g. during volatile periods;
+     * trades are never delayed. Applies to aliases subscribed from now on.
+     *
+     * @param millis interval, {@code 0} flushes after every message
+     */
+    public void setDepthConflationMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Conflation interval " + millis);
+        }
+        depthConflationMillis = millis;
+    }
+
+    /**
+     * Sets the depth conflation interval of a single alias, applied at once
+     * if it is subscribed.
+     *
+     * @param millis interval, {@code 0} flushes after every message
+     */
+    public void setDepthConflationMillis(String alias, long millis) {
+        aliasDepthConflationMillis.put(alias, millis);
+        synchronized (aliasInstruments) {
+            InstrumentHandle handle = InstrumentHandle.forAlias(alias);
+            InstrumentContext context = publishedContexts.get(alias);
+            if (context != null && context.getDepthConflationMillis() != millis) {
+                // changes pending for the old timer are flushed by the next message
+                InstrumentContext updated = new InstrumentContext(handle, context.getInstrument(),
+                        context.getPips(), context.getSizeMultiplier(), context.getBook(), millis);
+                handle.setContext(updated);
+                publishedContexts.put(alias, updated);
+                scheduleDepthConflation(updated);
+            }
+        }
+    }
+
+    private void scheduleDepthConflation(InstrumentContext context) {
+        String alias = context.getAlias();
+        cancelDepthConflation(alias);
+        if (context.isDepthConflated()) {
+            long millis = context.getDepthConflationMillis();
+            depthConflationTasks.put(alias, singleThreadScheduledExecutor.scheduleAtFixedRate(
+                    () -> flushConflatedDepth(context), millis, millis, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void cancelDepthConflation(String alias) {
+        ScheduledFuture<?> task = depthConflationTasks.remove(alias);
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    private void flushConflatedDepth(InstrumentContext context) {
+        try {
+            synchronized (context.getBook()) {
+                if (!context.getBook().isClosed()) {
+                    flushDepth(context);
+                }
+            }
+        } catch (Exception e) {
+            // an exception would cancel the periodic task
+            Log.error("Failed to flush depth of " + context.getAlias(), e);
+        }
+    }
+
+    /**
+     * Reports the price levels changed since the last flush to Bookmap.
+     */
+    protected void flushDepth(InstrumentContext context) {
+        String alias = context.getAlias();
+        GranulatedBook book = context.getBook();
+        // a pips bucket sums many levels, its size may exceed an int
+        book.flush(false, (price, size) -> dataListeners
+                .forEach(l -> l.onDepth(alias, false, (int) price, FixedPoint.saturatedInt(size))));
+        book.flush(true, (price, size) -> dataListeners
+                .forEach(l -> l.onDepth(alias, true, (int) price, FixedPoint.saturatedInt(size))));
+    }
+
+    /**
+     * Handles depth and trade messages on lanes sharded by instrument, so
+     * that a burst on one instrument does not delay the others and many
+     * active instruments are spread over several cores. Messages of one
+     * instrument stay in order; Bookmap listeners are then called from the
+     * lane threads. The lanes are shared by all connections.
+     * <p>
+     * Replacing lanes while messages are queued lets an alias be handled on
+     * the old and the new lane at once until the old lanes are drained, so
+     * the depth of every subscribed alias is resynced then.
+     *
+     * @param count number of lanes, {@code 0} handles messages on the socket
+     *              read thread
+     */
+    public synchronized void setMarketDataLanes(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Lane count " + count);
+        }
+        MarketDataLanes previous = marketDataLanes;
+        if ((previous == null ? 0 : previous.getCount()) == count) {
+            return;
+        }
+        MarketDataLanes lanes = count > 0 ? new MarketDataLanes(count) : null;
+        marketDataLanes = lanes;
+        if (connector != null) {
+            connector.setMarketDataLanes(lanes);
+        }
+        ConnectionPool pool = connectionPool;
+        if (pool != null) {
+            pool.getCreated().forEach(marketDataConnector -> marketDataConnector.setMarketDataLanes(lanes));
+        }
+        standbyConnectors.values().forEach(standby -> standby.setMarketDataLanes(lanes));
+        if (previous != null) {
+            previous.close();
+            synchronized (aliasInstruments) {
+                for (String alias : aliasInstruments.keySet()) {
+                    bookWatchdog.resync(alias, "market data lanes replaced");
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the market data settings entered in the login panel, before
+     * {@link #login}. A missing or blank setting keeps the default, an invalid
+     * one is logged and ignored.
+     *
+     * @param settings value of each login panel field by its name, see
+     *                 {@link Constants}
+     */
+    public void configure(Map<String, String> settings) {
+        applySetting(settings, Constants.MARKET_DATA_CONNECTIONS_FIELD_NAME,
+                value -> setMarketDataConnections(Integer.parseInt(value)));
+        applySetting(settings, Constants.MARKET_DATA_LANES_FIELD_NAME,
+                value -> setMarketDataLanes(Integer.parseInt(value)));
+        applySetting(settings, Constants.REDUNDANT_MARKET_DATA_CHECKBOX_NAME,
+                value -> setRedundantMarketData(Boolean.parseBoolean(value)));
+        applySetting(settings, Constants.OFF_HEAP_BOOKS_CHECKBOX_NAME,
+                value -> setOffHeapBooks(Boolean.parseBoolean(value)));
+        applySetting(settings, Constants.DEPTH_CONFLATION_FIELD_NAME,
+                value -> setDepthConflationMillis(Long.parseLong(value)));
+        applySetting(settings, Constants.DEPTH_CHECKSUM_INTERVAL_FIELD_NAME,
+                value -> depthChecksumValidator.setInterval(Integer.parseInt(value)));
+        applySetting(settings, Constants.DEPTH_WINDOW_FIELD_NAME,
+                value -> {
+                    DepthWindow window = DepthWindow.parse(value);
+                    for (Market market : Market.values()) {
+                        setDepthWindow(market, window);
+                    }
+                });
+    }
+
+    private static void applySetting(Map<String, String> settings, String name, Consumer<String> setter) {
+        String value = settings.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        try {
+            setter.accept(value.trim());
+            Log.info("Setting " + name + " to " + value.trim());
+        } catch (IllegalArgumentException e) {
+            Log.info("Ignoring setting " + name + " " + value + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Spreads the depth and trade subscriptions over several connections,
+     * each with its own socket and read thread. Each connection reconnects and
+     * resubscribes its aliases on its own, aliases move off a connection that
+     * carries clearly more than its share. Takes effect if set before the
+     * first subscription.
+     *
+     * @param count number of connections, {@code 1} uses the primary
+     *              connection only
+     */
+    public void setMarketDataConnections(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Connection count " + count);
+        }
+        marketDataConnections = count;
+    }
+
+    /**
+     * Subscribes the depth and trade channels of every alias on a second,
+     * standby session of its connection as well. The first copy of each
+     * message is handled and the other dropped, so an outage or a slow path
+     * on one session does not show. Takes effect if set before the first
+     * subscription.
+     */
+    public void setRedundantMarketData(boolean isRedundant) {
+        isMarketDataRedundant = isRedundant;
+        FeedArbiter arbiter = isRedundant ? feedArbiter : null;
+        if (connector != null) {
+            connector.setFeedArbiter(arbiter, false);
+        }
+        ConnectionPool pool = connectionPool;
+        if (pool != null) {
+            pool.getCreated().forEach(marketDataConnector -> marketDataConnector.setFeedArbiter(arbiter, false));
+        }
+    }
+
+    /**
+     * @return the standby session of a connection, created on first use, or
+     *         {@code null} unless market data is redundant
+     */
+    protected Connector getStandbyConnector(int index) {
+        if (!isMarketDataRedundant) {
+            return null;
+        }
+        return standbyConnectors.computeIfAbsent(index, this::newStandbyConnector);
+    }
+
+    private Connector newStandbyConnector(int index) {
+        Log.info("Opening standby session of market data connection " + index);
+        Connector standby = new Connector(apiKey, secretKey, passPhraze, new OkexClient(index, true), wsLink,
+                exchange);
+        standby.setAdminListeners(new CopyOnWriteArrayList<>());
+        standby.setMarketDataLanes(marketDataLanes);
+        standby.setFeedArbiter(feedArbiter, true);
+        standby.connect();
+        return standby;
+    }
+
+    /**
+     * Subscribes channels on the standby session of a connection without
+     * waiting, a failure leaves the aliases on the primary session alone.
+     */
+    private void subscribeStandby(int index, List<String> channels) {
+        Connector standby = getStandbyConnector(index);
+        if (standby == null) {
+            return;
+        }
+        standby.subscribeAsync(channels).forEach((channel, request) -> request.whenComplete((response, e) -> {
+            if (e != null) {
+                Log.info("Failed to subscribe " + channel + " on standby session " + index + ": " + e.getMessage());
+            }
+        }));
+    }
+
+    private void unsubscribeStandby(int index, List<String> channels) {
+        Connector standby = getStandbyConnector(index);
+        if (standby != null) {
+            standby.unsubscribeAsync(channels);
+        }
+    }
+
+    /**
+     * Unsubscribes and subscribes channels on the standby session of a
+     * connection, both frames go out on the same socket in this order.
+     */
+    private void resubscribeStandby(int index, List<String> channels) {
+        unsubscribeStandby(index, channels);
+        subscribeStandby(index, channels);
+    }
+
+    protected synchronized ConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            connectionPool = new ConnectionPool(marketDataConnections, this::getConnector,
+                    this::newMarketDataConnector);
+        }
+        return connectionPool;
+    }
+
+    /**
+     * @return connector carrying the market data of an instrument
+     */
+    protected Connector getMarketDataConnector(InstrumentHandle instrument) {
+        return getConnectionPool().connectorOf(instrument);
+    }
+
+    private Connector newMarketDataConnector(int index) {
+        Log.info("Opening market data connection " + index);
+        Connector marketDataConnector = new Connector(apiKey, secretKey, passPhraze, new OkexClient(index), wsLink,
+                exchange);
+        // an outage of a market data connection is handled by itself alone
+        marketDataConnector.setAdminListeners(new CopyOnWriteArrayList<>());
+        marketDataConnector.setMarketDataLanes(marketDataLanes);
+        marketDataConnector.setFeedArbiter(isMarketDataRedundant ? feedArbiter : null, false);
+        marketDataConnector.connect();
+        return marketDataConnector;
+    }
+
+    private void rebalanceConnections() {
+        try {
+            ConnectionPool pool = connectionPool;
+            if (pool == null || pool.size() == 1) {
+                return;
+            }
+            ConnectionPool.Move move = pool.rebalance();
+            if (move != null) {
+                singleThreadExecutor.submit(() -> moveAlias(move));
+            }
+        } catch (Exception e) {
+            // an exception would cancel the periodic task
+            Log.error("Failed to rebalance connections", e);
+        }
+    }
+
+    /**
+     * Moves the subscriptions of an alias to another connection. The depth
+     * channel answers with a new snapshot there, which the book is diffed
+     * against.
+     */
+    protected void moveAlias(ConnectionPool.Move move) {
+        String alias = move.instrument.getAlias();
+        String symbol = move.instrument.getInstrumentId();
+        Market market = move.instrument.getMarket();
+        synchronized (aliasInstruments) {
+            ConnectionPool pool = getConnectionPool();
+            if (!aliasInstruments.containsKey(alias) || pool.indexOf(move.instrument) != move.from) {
+                return;
+            }
+            Connector from = pool.get(move.from);
+            Connector to = pool.get(move.to);
+            List<String> channels = depthAndTradeChannels(symbol, market);
+            from.unsubscribe(channels);
+            unsubscribeStandby(move.from, channels);
+            pool.assign(move.instrument, move.to);
+            if (to.subscribe(channels)) {
+                subscribeStandby(move.to, channels);
+            } else {
+                Log.info("Failed to move " + alias + " to connection " + move.to + ", moving it back");
+                to.unsubscribe(channels);
+                pool.assign(move.instrument, move.from);
+                if (!subscribeDepthAndTrade(symbol, market)) {
+                    Log.info("Failed to resubscribe " + alias + " on connection " + move.from);
+                }
+            }
+            bookWatchdog.watch(alias, pool.indexOf(move.instrument));
+        }
+    }
+
+    /**
+     * Sets how long a depth channel may stay silent before the watchdog
+     * resubscribes it.
+     *
+     * @param millis the interval, {@code 0} disables the check
+     */
+    public void setStaleDepthMillis(long millis) {
+        bookWatchdog.setStaleDepthMillis(millis);
+    }
+
+    /**
+     * Sets how long a trade channel may stay without trades before the
+     * watchdog resubscribes it.
+     *
+     * @param millis the interval, {@code 0} disables the check
+     */
+    public void setStaleTradeMillis(long millis) {
+        bookWatchdog.setStaleTradeMillis(millis);
+    }
+
+    private void checkBooks() {
+        try {
+            bookWatchdog.check();
+        } catch (Exception e) {
+            // an exception would cancel the periodic task
+            Log.error("Failed to check books", e);
+        }
+    }
+
     public double getSizeMultiplier(String alias) {
         return pipsSizeMultipliers.get(alias).getRight();
     }
@@ -149,6 +714,9 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
         this.exchange = exchange;
         this.wsPortNumber = wsPortNumber;
         this.wsLink = wsLink;
+        bookWatchdogTask = singleThreadScheduledExecutor.scheduleAtFixedRate(this::checkBooks, 1, 1, TimeUnit.SECONDS);
+        connectionRebalanceTask = singleThreadScheduledExecutor.scheduleAtFixedRate(this::rebalanceConnections,
+                CONNECTION_REBALANCE_SECONDS, CONNECTION_REBALANCE_SECONDS, TimeUnit.SECONDS);
         getInstruments();
         Log.info("new RealTimeProvider has been created");
     }
@@ -160,12 +728,37 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
     }
 
 	protected boolean subscribeDepthAndTrade(String symbol, Market market) {
-	    String type = market.toString();
-        ((OkexClient)getConnector().client).askOrderBooksGranulated.computeIfAbsent(type + "@" + symbol, v ->  new OrderByOrderBook());
-        ((OkexClient)getConnector().client).bidOrderBooksGranulated.computeIfAbsent(type + "@" + symbol, v ->  new OrderByOrderBook());
-	    return 
-	            getConnector().subscribeContractMarketDepthIncremental(symbol, market)
-	            && getConnector().subscribeTrade(symbol, market);
+	    InstrumentHandle handle = InstrumentHandle.of(market, symbol);
+	    List<String> channels = depthAndTradeChannels(symbol, market);
+	    if (!getMarketDataConnector(handle).subscribe(channels)) {
+	        return false;
+	    }
+	    subscribeStandby(getConnectionPool().indexOf(handle), channels);
+	    return true;
+	}
+
+	/**
+	 * Subscribes an alias whose restore failed on its own, it is watched
+	 * either way so that the watchdog keeps resubscribing a silent book.
+	 */
+	private void retryRestore(String alias) {
+	    synchronized (aliasInstruments) {
+	        if (!aliasInstruments.containsKey(alias)) {
+	            return;
+	        }
+	        InstrumentHandle handle = InstrumentHandle.forAlias(alias);
+	        if (!subscribeDepthAndTrade(handle.getInstrumentId(), handle.getMarket())) {
+	            Log.info("Failed to restore " + alias);
+	        }
+	        bookWatchdog.watch(alias, getConnectionPool().indexOf(handle));
+	    }
+	}
+
+	/**
+	 * Both market data channels of an alias, sent in one frame.
+	 */
+	private static List<String> depthAndTradeChannels(String symbol, Market market) {
+	    return Arrays.asList(Connector.depthChannel(market, symbol), Connector.tradeChannel(market, symbol));
 	}
 
 	public void reportFuturesUnrealizedPnl(String alias) {
@@ -178,10 +771,20 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
             int at = alias.indexOf('@');
             String symbol = alias.substring(at + 1);
             Market market = Market.valueOf(alias.substring(0, at));
-			getConnector().unsubscribeContractMarketDepthFull(symbol, market);
-			getConnector().unsubscribeTrade(symbol, market);
+			InstrumentHandle handle = InstrumentHandle.of(market, symbol);
+			List<String> channels = depthAndTradeChannels(symbol, market);
+			getMarketDataConnector(handle).unsubscribe(channels);
+			unsubscribeStandby(getConnectionPool().indexOf(handle), channels);
+			getConnectionPool().remove(handle);
+			feedArbiter.remove(handle);
 
 			aliasedStatusInfos.remove(alias);
+			depthChecksumValidator.remove(alias);
+			bookWatchdog.remove(alias);
+			InstrumentContext context = unpublishContext(alias);
+			if (context != null) {
+			    closeBook(context.getBook());
+			}
 
 			if (aliasInstruments.remove(alias) != null) {
 				instrumentListeners.forEach(l -> l.onInstrumentRemoved(alias));
@@ -189,6 +792,54 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
 		}
 	}
 
+	/**
+	 * Resubscribes the depth channel of a single alias after its book failed
+	 * the checksum or the watchdog, OKEx answers with a new {@code partial}
+	 * snapshot. With redundant sessions the standby is resubscribed as well,
+	 * otherwise it keeps streaming the old subscription.
+	 */
+	protected void resyncDepth(String alias) {
+	    Market market = Market.valueOf(Utils.getTypeFromALias(alias));
+	    String symbol = Utils.getInstrumentIdFromALias(alias);
+	    singleThreadExecutor.submit(() -> {
+	        Log.info("Resyncing depth of " + alias);
+	        InstrumentHandle handle = InstrumentHandle.of(market, symbol);
+	        if (isMarketDataRedundant) {
+	            FeedArbiter.Feed feed = feedArbiter.feedOf(handle);
+	            synchronized (feed) {
+	                feed.resetDepth();
+	            }
+	        }
+	        Connector marketDataConnector = getMarketDataConnector(handle);
+	        marketDataConnector.unsubscribeContractMarketDepthFull(symbol, market);
+	        if (!marketDataConnector.subscribeContractMarketDepthIncremental(symbol, market)) {
+	            Log.info("Failed to resubscribe depth of " + alias);
+	        }
+	        resubscribeStandby(getConnectionPool().indexOf(handle),
+	                Collections.singletonList(Connector.depthChannel(market, symbol)));
+	    });
+	}
+
+	/**
+	 * Resubscribes the trade channel of a single alias the watchdog found
+	 * stale, on the standby session as well.
+	 */
+	protected void resyncTrade(String alias) {
+	    Market market = Market.valueOf(Utils.getTypeFromALias(alias));
+	    String symbol = Utils.getInstrumentIdFromALias(alias);
+	    singleThreadExecutor.submit(() -> {
+	        Log.info("Resyncing trades of " + alias);
+	        InstrumentHandle handle = InstrumentHandle.of(market, symbol);
+	        Connector marketDataConnector = getMarketDataConnector(handle);
+	        marketDataConnector.unsubscribeTrade(symbol, market);
+	        if (!marketDataConnector.subscribeTrade(symbol, market)) {
+	            Log.info("Failed to resubscribe trades of " + alias);
+	        }
+	        resubscribeStandby(getConnectionPool().indexOf(handle),
+	                Collections.singletonList(Connector.tradeChannel(market, symbol)));
+	    });
+	}
+
 	@Override
 	public String formatPrice(String alias, double price) {
 		// Use default Bookmap price formatting logic for simplicity.
@@ -241,14 +892,44 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
 
 	@Override
 	public void close() {
+		depthConflationTasks.keySet().forEach(this::cancelDepthConflation);
+		// the handles outlive this provider, a later one must not find its books
+		List<InstrumentContext> contexts = new ArrayList<>();
+		for (String alias : publishedContexts.keySet()) {
+			InstrumentContext context = unpublishContext(alias);
+			if (context != null) {
+				contexts.add(context);
+			}
+		}
+		bookWatchdogTask.cancel(false);
+		connectionRebalanceTask.cancel(false);
 		try {
 			Log.info("Closing connector");
             if (connector != null) {
                 connector.close();
+            }
+            ConnectionPool pool = connectionPool;
+            if (pool != null) {
+                for (Connector marketDataConnector : pool.getCreated()) {
+                    marketDataConnector.close();
+                }
+            }
+            for (Connector standby : standbyConnectors.values()) {
+                standby.close();
+            }
+            MarketDataLanes lanes = marketDataLanes;
+            if (lanes != null) {
+                lanes.close();
             }
 		} catch (Exception ex) {
 			Log.error("Unable to close connector", ex);
 		}
+		// off heap ladders go back to the allocator, the books of a late
+		// message find themselves closed
+		for (InstrumentContext context : contexts) {
+			closeBook(context.getBook());
+			depthChecksumValidator.remove(context.getAlias());
+		}
 	}
 
 	public String createAlias(String symbol, Expiration expiration) {
@@ -262,107 +943,136 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
 	}
 
 	class OkexClient extends AbstractClient {
-	    public Map<String, OrderByOrderBook> askOrderBooksGranulated = new ConcurrentHashMap<>();
-	    public Map<String, OrderByOrderBook> bidOrderBooksGranulated = new ConcurrentHashMap<>();
-	    
+
+        /**
+         * Index of the connection in the {@link ConnectionPool}, {@code 0}
+         * for the primary connection.
+         */
+        final int connection;
+
+        /**
+         * Whether the client belongs to the standby session of its
+         * connection, which carries copies of the market data only.
+         */
+        final boolean isStandby;
+
+        /**
+         * Restore in progress since the connection came back, until the
+         * snapshots of all its aliases arrived.
+         */
+        private volatile RestoreProgress restore;
+
+        OkexClient() {
+            this(0);
+        }
+
+        OkexClient(int connection) {
+            this(connection, false);
+        }
+
+        OkexClient(int connection, boolean isStandby) {
+            this.connection = connection;
+            this.isStandby = isStandby;
+        }
 
         @Override
-        public void onMarketDepth(String symbol, String action, MarketDepths marketDepths) {
-            String alias = symbol;
+        public void onMarketDepth(InstrumentHandle instrument, String action, MarketDepths marketDepths) {
+            InstrumentContext context = instrument.getContext();
+            if (context == null) {
+                // a late message of an unsubscribed alias
+                return;
+            }
+            String alias = instrument.getAlias();
+            countMessage(instrument);
 
-            if (action.equals("partial")) {
-                resetOrderBooksOnReconnect(alias, true);
-                resetOrderBooksOnReconnect(alias, false);
+            if (!bookWatchdog.onDepth(alias, action, marketDepths)
+                    || !depthChecksumValidator.onDepth(alias, action, marketDepths)) {
+                return;
             }
 
-            marketDepths.getAskDatas().forEach(data -> updateOrderBookGranulated(alias, data, false));
-            marketDepths.getBidDatas().forEach(data -> updateOrderBookGranulated(alias, data, true));
-        }
-        
-        
-        private void resetOrderBooksOnReconnect(String alias, boolean isBid) {
-            OrderByOrderBook obob = (isBid ? bidOrderBooksGranulated : askOrderBooksGranulated).get(alias);
-            if (obob.getOrderBook().isEmpty()) return;
-
-            Collection<Long> ids = obob.getAllIds();
-
-            for (long id : ids) {
-                Object order = obob.getOrder(id);
-                Field[] fields = order.getClass().getFields();
-                Map<String, Object> objects = new HashMap<>();
-                for (Field field : fields) {
-                    try {
-                        objects.put(field.getName(), field.get(order));
-                    } catch (IllegalArgumentException | IllegalAccessException e) {
-                        throw new RuntimeException();
-                    }
+            long appliedNanos;
+            long returnedNanos = 0;
+            // the conflation timer flushes the book from its own thread
+            synchronized (context.getBook()) {
+                if (context.getBook().isClosed()) {
+                    // unsubscribed or resubscribed with other pips meanwhile
+                    return;
                 }
-                //a workaround for an obfuscated order field
-                Object priceObj = objects.get("price");
-                if (priceObj == null) {
-                    priceObj = objects.get("b");
+                updateOrderBookGranulated(context, action, marketDepths);
+                appliedNanos = System.nanoTime();
+                bookWatchdog.onBook(alias, context.getBook().getTopOfBook());
+                if ("partial".equals(action)) {
+                    onSnapshot(alias);
                 }
+                if (!context.isDepthConflated()) {
+                    flushDepth(context);
+                    returnedNanos = System.nanoTime();
+                }
+            }
+            if (marketDepths.decodedNanos != 0 && FeedLatency.isEnabled()) {
+                FeedLatency.DEPTH.onApplied(alias, marketDepths.decodedNanos, appliedNanos);
+                if (returnedNanos != 0) {
+                    // conflated books reach the listeners on the timer
+                    FeedLatency.DEPTH.onListeners(alias, appliedNanos, returnedNanos);
+                }
+            }
+        }
 
-                int price = (int) priceObj;
-                dataListeners.forEach(l -> l.onDepth(alias, isBid, price, 0));
+        private void updateOrderBookGranulated(InstrumentContext context, String action, MarketDepths marketDepths) {
+            if (action.equals("partial")) {
+                context.getBook().beginSnapshot();
             }
+
+            updateOrderBookGranulated(context, marketDepths.getAsks(), false);
+            updateOrderBookGranulated(context, marketDepths.getBids(), true);
+            context.getBook().applyWindow();
+            context.getBook().updateTopOfBook();
         }
-		
-		private void updateOrderBookGranulated(String alias, MarketDepth depth, boolean isBid) {
-            double tickSize = pipsSizeMultipliers.get(alias).getLeft();
-            InstrumentGeneric generic = genericInstruments.get(alias);
-            double defaultTickSize = generic.getTickSize();
-            long id = (long) Math.round(depth.getPrice() / defaultTickSize);
-            
-//            int size = depth.getContractAmount() == 0 ?
-//                    0 : (int) Math.min(depth.getContractAmount() * pipsSizeMultipliers.get(alias).getRight(), 1);
-            int size = (int) (depth.getContractAmount() * pipsSizeMultipliers.get(alias).getRight());
-
-            Function<Double, Double> rounder = isBid? Math::floor : Math::ceil;
-            int price = (int) Math.min(rounder.apply(depth.getPrice() / tickSize), Integer.MAX_VALUE);
-
-            OrderByOrderBook orderBook = isBid? bidOrderBooksGranulated.get(alias) : askOrderBooksGranulated.get(alias) ;
-            long newSize;
-
-            if (orderBook.hasOrder(id)) {
-                if (size == 0) {
-                    newSize = orderBook.removeOrder(id);
-                } else {
-                    OrderByOrderBook.OrderUpdateResult updateOrder = orderBook.updateOrder(id, price, size);
-                    newSize = updateOrder.toSize;
-                }
-            } else {
-                newSize = orderBook.addOrder(id, isBid, price, size);
+
+        private void updateOrderBookGranulated(InstrumentContext context, DepthLevels levels, boolean isBid) {
+            for (int i = 0; i < levels.size(); i++) {
+                updateOrderBookGranulated(context, levels.getPrice(i), levels.getSize(i), isBid);
             }
-            int absoluteSize = (int) (newSize);
-//          int absoluteSize = (int)(newSize * ((InstrumentSpot) generic).getMinSize());
-            dataListeners.forEach(l -> l.onDepth(alias, isBid, price, absoluteSize));
+        }
+		
+		/**
+		 * @param depthPrice fixed point price of the level
+		 * @param depthSize  fixed point size of the level
+		 */
+		private void updateOrderBookGranulated(InstrumentContext context, long depthPrice, long depthSize,
+		        boolean isBid) {
+            int size = FixedPoint.saturatedInt(context.getSizeUnit().truncate(depthSize));
+            context.getBook().update(isBid, depthPrice, size);
 		}
 		
 		@Override
-        public void onTradeRecord(String symbol, Expiration expiration, Trade tradeRecord) {
-            double pips = pipsSizeMultipliers.get(symbol).getLeft();
+        public void onTradeRecord(InstrumentHandle instrument, Expiration expiration, Trade tradeRecord) {
+            InstrumentContext context = instrument.getContext();
+            if (context == null) {
+                return;
+            }
+            String symbol = instrument.getAlias();
+            bookWatchdog.onTrade(symbol);
+            countMessage(instrument);
             boolean isBidAggressor = tradeRecord.getSide().equals("sell") ? true : false;
             boolean isOtc = false;
             
-            InstrumentGeneric generic = genericInstruments.get(symbol);
-            int size = (int) (generic instanceof InstrumentSpot
-                    ? tradeRecord.getQty() / ((InstrumentSpot) generic).getMinSize()
-                    : tradeRecord.getQty());
+            int size = FixedPoint.saturatedInt(context.getTradeSizeUnit().truncate(tradeRecord.getQty()));
+            double price = isBidAggressor
+                    ? context.getPipsUnit().floor(tradeRecord.getPrice())
+                    : context.getPipsUnit().ceil(tradeRecord.getPrice());
             
-            if (isBidAggressor) {
-                dataListeners.forEach(l -> l.onTrade(symbol, Math.floor(tradeRecord.getPrice() / pips),
-                        size, new TradeInfo(isOtc, !isBidAggressor)));
-            } else {
-                dataListeners.forEach(l -> l.onTrade(symbol, Math.ceil(tradeRecord.getPrice() / pips),
-                       size, new TradeInfo(isOtc, !isBidAggressor)));
-
+            long appliedNanos = System.nanoTime();
+            dataListeners.forEach(l -> l.onTrade(symbol, price, size, new TradeInfo(isOtc, !isBidAggressor)));
+            if (tradeRecord.getDecodedNanos() != 0 && FeedLatency.isEnabled()) {
+                FeedLatency.TRADE.onApplied(symbol, tradeRecord.getDecodedNanos(), appliedNanos);
+                FeedLatency.TRADE.onListeners(symbol, appliedNanos, System.nanoTime());
             }
 
             
             if (RealTimeProvider.this instanceof RealTimeTradingProvider) {
                 double unrealizedPnl = ((RealTimeTradingProvider) RealTimeProvider.this)
-                        .getUpdatedUnrealizedPnl(symbol, !isBidAggressor, tradeRecord.getPrice());
+                        .getUpdatedUnrealizedPnl(symbol, !isBidAggressor, FixedPoint.toDouble(tradeRecord.getPrice()));
                 
                 StatusInfoLocal info = aliasedStatusInfos.computeIfPresent(symbol, (k, v) -> {
                     v.setUnrealizedPnl(unrealizedPnl);
@@ -383,39 +1093,103 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
 		@Override
 		public void onConnectionLost(Connector.ClosedConnectionType closedConnectionType, String message) {
 			Log.info("OkexClient " + this.hashCode() +  ": onConnectionLost() " + closedConnectionType + ", " + message);
+			if (isStandby) {
+			    // the primary session still carries the data
+			    return;
+			}
+			for (InstrumentHandle instrument : getConnectionPool().aliasesOf(connection)) {
+			    bookWatchdog.pause(instrument.getAlias());
+			}
+        }
+
+        private void countMessage(InstrumentHandle instrument) {
+            ConnectionPool pool = connectionPool;
+            if (pool != null && pool.size() > 1) {
+                pool.onMessage(instrument);
+            }
+        }
+
+        private void onSnapshot(String alias) {
+            RestoreProgress restore = this.restore;
+            if (restore != null) {
+                restore.onSnapshot(alias);
+                if (restore.isDone()) {
+                    this.restore = null;
+                }
+            }
         }
 
         @Override
         public void onConnectionRestored() {
             Log.info("OkexClient " + this.hashCode() +  ": onConnectionRestored()");
-            
-            if ( RealTimeProvider.this instanceof RealTimeTradingProvider) {
+            long restoredNanos = System.nanoTime();
+            // a market data connection restores its own aliases and nothing else
+            boolean isPrimary = connection == 0;
+            ConnectionPool pool = getConnectionPool();
+            List<String> aliases;
+            synchronized (aliasInstruments) {
+                aliases = new ArrayList<>(aliasInstruments.keySet());
+            }
+            List<String> ownAliases = aliases.stream()
+                    .filter(alias -> pool.indexOf(InstrumentHandle.forAlias(alias)) == connection)
+                    .collect(Collectors.toList());
+            if (isStandby) {
+                restoreMarketData(getStandbyConnector(connection), ownAliases, restoredNanos);
+                return;
+            }
+            restoreMarketData(pool.get(connection), ownAliases, restoredNanos);
+
+            if (isPrimary && RealTimeProvider.this instanceof RealTimeTradingProvider) {
                 @SuppressWarnings("resource")
                 RealTimeTradingProvider provider = (RealTimeTradingProvider) RealTimeProvider.this;
-                provider.connector.wslogin();
+                provider.restoreTrading(aliases);
             }
-
-            for (String alias : aliasInstruments.keySet()) {
-                int at = alias.indexOf('@');
-                String symbol = alias.substring(at + 1);
-                String type = alias.substring(0, at);
-                Pair<Double, Double> pipsSizeMultiplier = pipsSizeMultipliers.get(alias);
-                double pips = pipsSizeMultiplier.getLeft();
-                Double sizeMultiplier = pipsSizeMultiplier.getRight() == null ? Double.NaN : pipsSizeMultiplier.getRight() ;
-                SubscribeInfoCrypto info = new SubscribeInfoCrypto(symbol, "", type, pips, sizeMultiplier);
-
-                isSubscribed(info, true);
-
-                if (RealTimeProvider.this instanceof RealTimeTradingProvider) {
-                    @SuppressWarnings("resource")
-                    RealTimeTradingProvider provider = (RealTimeTradingProvider) RealTimeProvider.this;
-                    provider.getSubscribed(info);
-                }
+            if (isPrimary) {
+                adminListeners.forEach(listener -> listener.onConnectionRestored());
+                RealTimeProvider.this.onConnectionRestored();
             }
-			adminListeners.forEach(listener -> listener.onConnectionRestored());
-			RealTimeProvider.this.onConnectionRestored();
 		}
 
+        /**
+         * Resubscribes depth and trades of all aliases in one go, without
+         * waiting for the acknowledgements, which are handled as they arrive.
+         * The books are kept, the new snapshots are diffed against them.
+         */
+        private void restoreMarketData(Connector marketDataConnector, List<String> aliases, long restoredNanos) {
+            if (aliases.isEmpty()) {
+                return;
+            }
+            RestoreProgress progress = new RestoreProgress(connection, aliases, restoredNanos);
+            restore = progress;
+            List<String> channels = new ArrayList<>();
+            for (String alias : aliases) {
+                InstrumentHandle handle = InstrumentHandle.forAlias(alias);
+                channels.addAll(depthAndTradeChannels(handle.getInstrumentId(), handle.getMarket()));
+            }
+            Map<String, CompletableFuture<Message>> acknowledgements = marketDataConnector.subscribeAsync(channels);
+            for (String alias : aliases) {
+                InstrumentHandle handle = InstrumentHandle.forAlias(alias);
+                CompletableFuture.allOf(
+                        acknowledgements.get(Connector.depthChannel(handle.getMarket(), handle.getInstrumentId())),
+                        acknowledgements.get(Connector.tradeChannel(handle.getMarket(), handle.getInstrumentId())))
+                        .whenComplete((result, e) -> {
+                            // on the read thread, which must not block
+                            if (e == null) {
+                                progress.onSubscribed(alias);
+                                bookWatchdog.watch(alias, connection);
+                            } else if (isStandby) {
+                                progress.onFailed(alias);
+                                Log.info("Failed to restore " + alias + " on standby session " + connection + ": "
+                                        + e.getMessage());
+                            } else {
+                                progress.onFailed(alias);
+                                Log.info("Failed to restore " + alias + ", retrying: " + e.getMessage());
+                                singleThreadExecutor.submit(() -> retryRestore(alias));
+                            }
+                        });
+            }
+        }
+
         @Override
         public void onPosition() {
             // TODO Auto-generated method stub
@@ -426,20 +1200,26 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
             ((RealTimeTradingProvider)RealTimeProvider.this).onFuturesPosition(response);
         }
        
-        public int getBestPrice(boolean isBid, String alias) {
-            double tickSize = pipsSizeMultipliers.get(alias).getLeft();
-            int price;
-            
-            if (isBid) {
-                OrderBook ob = askOrderBooksGranulated.get(alias).getOrderBook();
-                price = ob.getWorstAskPriceOrNone();
-            } else {
-                OrderBook ob = bidOrderBooksGranulated.get(alias).getOrderBook();
-                price = ob.getWorstBidPriceOrNone();
+        /**
+         * Limit price for a market order, the best price of the opposite side
+         * moved by {@link #MARKET_ORDER_PRICE_BAND} so that the order crosses
+         * more than the top level, rounded to the exchange tick. The price is
+         * taken from its fixed point value, so it has no more decimals than
+         * the tick, e.g. {@code 64296.1} rather than {@code 64296.100000000006}.
+         *
+         * @return the price, {@code NaN} if the opposite side is empty, the
+         *         caller must not send the order then
+         */
+        public double getBestPrice(boolean isBuy, String alias) {
+            InstrumentContext context = getContext(alias);
+            long best = context.getBook().getTopOfBook().get(!isBuy);
+            if (best == TopOfBook.NONE) {
+                Log.info("No " + (isBuy ? "ask" : "bid") + " to price a market order of " + alias);
+                return Double.NaN;
             }
-            price = (int)Math.round(price * tickSize);
-            return price;
-
+            double band = isBuy ? 1 + MARKET_ORDER_PRICE_BAND : 1 - MARKET_ORDER_PRICE_BAND;
+            long ticks = Math.round(TopOfBook.priceOf(best) * band);
+            return FixedPoint.toDouble(context.getTickUnit().value(ticks));
         }
 
         @Override
@@ -462,6 +1242,8 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
         if (connector == null) {
             connector = new Connector(apiKey, secretKey, passPhraze, new OkexClient(), wsLink, exchange);
             connector.setAdminListeners(adminListeners);
+            connector.setMarketDataLanes(marketDataLanes);
+            connector.setFeedArbiter(isMarketDataRedundant ? feedArbiter : null, false);
         }
         return connector;
     }
@@ -469,6 +1251,8 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
     public Connector getNewConnector() {
             connector = new Connector(apiKey, secretKey, passPhraze, new OkexClient(), wsLink, exchange);
             connector.setAdminListeners(adminListeners);
+            connector.setMarketDataLanes(marketDataLanes);
+            connector.setFeedArbiter(isMarketDataRedundant ? feedArbiter : null, false);
         return connector;
     }
 
@@ -483,6 +1267,27 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
         }
     }
 
+    /**
+     * Prices and sizes are carried with {@link FixedPoint#DECIMALS} decimals,
+     * an instrument quoted finer would be granulated wrongly and fail every
+     * depth checksum.
+     *
+     * @return the step that can not be represented, or {@code null}
+     */
+    private static String unsupportedPrecision(InstrumentGeneric instrument, double pips) {
+        if (instrument != null && !FixedPoint.isRepresentable(instrument.getTickSize())) {
+            return "tick size " + instrument.getTickSize();
+        }
+        if (instrument instanceof InstrumentSpot
+                && !FixedPoint.isRepresentable(((InstrumentSpot) instrument).getMinSize())) {
+            return "min size " + ((InstrumentSpot) instrument).getMinSize();
+        }
+        if (!FixedPoint.isRepresentable(pips)) {
+            return "pips " + pips;
+        }
+        return null;
+    }
+
     @Override
     public void subscribe(SubscribeInfo subscribeInfo) {
         isSubscribed(subscribeInfo, false);
@@ -536,6 +1341,15 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
             }
             pair = new ImmutablePair<Double, Double>(genericInstruments.get(alias).getTickSize(), minSizeInverted);
         }
+        String unsupported = unsupportedPrecision(genericInstruments.get(alias), pair.getLeft());
+        if (unsupported != null) {
+            String message = "Can not subscribe to " + alias + ": " + unsupported + " needs more than "
+                    + FixedPoint.DECIMALS + " decimals";
+            Log.info(message);
+            adminListeners.forEach(l -> l.onSystemTextMessage(message, SystemTextMessageType.UNCLASSIFIED));
+            instrumentListeners.forEach(l -> l.onInstrumentNotFound(symbol, exchange, type));
+            return false;
+        }
 
         Callable<Boolean> callableTask = () -> {
             synchronized (aliasInstruments) {
@@ -548,8 +1362,12 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
                 }
 
                 Pair<Double, Double> previousMultiplier = pipsSizeMultipliers.get(alias);
+                InstrumentHandle handle = InstrumentHandle.forAlias(alias);
+                InstrumentContext previousPublished = handle.getContext();
+                InstrumentContext previousContext = publishedContexts.get(alias);
                 Log.info("pipsSizeMultipliers put alias " + alias + " pips " + pair.getLeft());
                 pipsSizeMultipliers.put(alias, pair);
+                InstrumentContext context = publishContext(alias);
                 
                 boolean isSubscribedDepthTrade = subscribeDepthAndTrade(symbol, Market.valueOf(type));
                 if (!isSubscribedDepthTrade) {
@@ -560,13 +1378,28 @@ public class RealTimeProvider extends ExternalLiveBaseProvider {
                         Log.info("pipsSizeMultipliers put back alias " + alias + " pips " + previousMultiplier);
                         pipsSizeMultipliers.put(alias, previousMultiplier);
                     }
+                    handle.setContext(previousPublished);
+                    if (previousContext != null) {
+                        publishedContexts.put(alias, previousContext);
+                        scheduleDepthConflation(previousContext);
+                    } else {
+                        publishedContexts.remove(alias);
+                        cancelDepthConflation(alias);
+                    }
+                    if (previousContext == null || previousContext.getBook() != context.getBook()) {
+                        closeBook(context.getBook());
+                    }
                     return false;
                 }
+                if (previousContext != null && previousContext.getBook() != context.getBook()) {
+                    closeBook(previousContext.getBook());
+                }
                 
                 double tickSize = pipsSizeMultipliers.get(alias).getLeft();
                 double pips = genericInstruments.get(alias).getTickSize();
                 final Instrument instrument = new Instrument(alias, pips);
                 aliasInstruments.put(alias, instrument);
+                bookWatchdog.watch(alias, getConnectionPool().indexOf(handle));
                 Log.info("instrumentInfo to BM alias " + alias + " tickSize " + tickSize);
                 double sizeMultiplier = (double) ObjectUtils.firstNonNull(pipsSizeMultipliers.get(alias).getRight(), 1.0);
                 Log.info("sizeMultiplier " + sizeMultiplier);
@@ -17,6 +17,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.commons.codec.binary.Base32;
@@ -24,6 +29,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.java_websocket.util.Base64;
 
+import com.stableapps.bookmapadapter.client.Connector;
 import com.stableapps.bookmapadapter.model.Expiration;
 import com.stableapps.bookmapadapter.model.FutureAccountsContractFixedMargin;
 import com.stableapps.bookmapadapter.model.FuturesAccount;
@@ -50,6 +56,7 @@ import com.stableapps.bookmapadapter.model.rest.PlaceOrderResponse;
 import com.stableapps.bookmapadapter.rest.RestClient;
 import com.stableapps.bookmapadapter.util.Constants;
 import com.stableapps.bookmapadapter.util.Constants.Market;
+import com.stableapps.bookmapadapter.util.FixedPoint;
 import com.stableapps.bookmapadapter.util.Utils;
 
 import lombok.Data;
@@ -94,10 +101,28 @@ public class RealTimeTradingProvider extends RealTimeProvider {
 	private final HashMap<String, OrderInfoBuilder> bmIdSentOrders = new HashMap<>();
 	private final HashMap<String, String> clientOidToOrderId= new HashMap<>();
 	private final HashMap<String, String> orderIdToClientOid = new HashMap<>();
-	private Map <String, Pair <Integer, Integer>> positionsMap = new HashMap<>();
+	private Map <String, Pair <Integer, Integer>> positionsMap = new ConcurrentHashMap<>();
 	private Map <String, Set<String>> currenciesForSpotBalance = new HashMap<>();
 	private Map <String, Set<String>> currenciesForSpotPosition = new HashMap<>();
-	private Map<String, UnrealizedPnlData> unrealizedPnlMap = new HashMap<>();
+	private Map<String, UnrealizedPnlData> unrealizedPnlMap = new ConcurrentHashMap<>();
+
+	/**
+	 * REST requests running at once while the trading state of the aliases is
+	 * restored after a reconnect.
+	 */
+	private static final int RESTORE_THREADS = 4;
+
+	private final ThreadPoolExecutor restoreExecutor = new ThreadPoolExecutor(RESTORE_THREADS, RESTORE_THREADS,
+	        30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+	            Thread thread = new Thread(runnable, "okex-restore");
+	            thread.setDaemon(true);
+	            return thread;
+	        });
+	
+	{
+	    // idle between reconnects
+	    restoreExecutor.allowCoreThreadTimeOut(true);
+	}
 	
 	
 	@Data
@@ -262,7 +287,18 @@ public class RealTimeTradingProvider extends RealTimeProvider {
                 spotRequest.setFloatingPointSize(size / getSizeMultiplier(alias));
             } else if (orderInfo.getType() == OrderType.MKT) {
                 spotRequest.setFloatingPointSize(size / getSizeMultiplier(alias));
-                int bestPrice = ((OkexClient) connector.client).getBestPrice(orderInfo.isBuy(), alias);
+                double bestPrice = ((OkexClient) connector.client).getBestPrice(orderInfo.isBuy(), alias);
+                if (Double.isNaN(bestPrice)) {
+                    // sent as a limit order, it needs a price from the book
+                    orderInfo.setStatus(OrderStatus.REJECTED);
+                    tradingListeners.forEach(l -> l.onOrderUpdated(orderInfo.build()));
+                    orderInfo.markAllUnchanged();
+                    adminListeners.forEach(l -> l.onSystemTextMessage(
+                            "Market order of " + alias + " rejected, there is no "
+                                    + (orderInfo.isBuy() ? "ask" : "bid") + " to price it",
+                            SystemTextMessageType.ORDER_FAILURE));
+                    return;
+                }
                 spotRequest.setPrice(bestPrice);
             }
 
@@ -470,18 +506,18 @@ public class RealTimeTradingProvider extends RealTimeProvider {
                         || order instanceof OrderDataFutures
                                 && ((order.getType().equals("1") || order.getType().equals("4"))
                                         || (order.getType().equals("2") || order.getType().equals("3")))) {
-                    newBuilder.setLimitPrice(order.getPrice());
+                    newBuilder.setLimitPrice(FixedPoint.toDouble(order.getPrice()));
                     newBuilder.setType(OrderType.LMT);
                 }
 
                 order.setClientOid(order.getOrderId());
 
                 if (order instanceof OrderDataSpot) {
-                    newBuilder.setUnfilled((int) (Math.round(order.getSize() * getSizeMultiplier(alias))));
+                    newBuilder.setUnfilled(FixedPoint.saturatedInt(getContext(alias).getSizeUnit().round(order.getSize())));
                 }
                 if (order instanceof OrderDataFutures) {
                     newBuilder
-                            .setUnfilled((int) Math.round(order.getSize() - ((OrderDataFutures) order).getFilledQty()));
+                            .setUnfilled(FixedPoint.saturatedInt(FixedPoint.Unit.WHOLE.round(order.getSize() - ((OrderDataFutures) order).getFilledQty())));
                 }
 
                 newBuilder.setDuration(OrderDuration.GTC);
@@ -548,12 +584,12 @@ public class RealTimeTradingProvider extends RealTimeProvider {
                 Log.info("Order filled");
                 orderInfo.setUnfilled(0);
                 if (order.getInstrumentType().equals(Market.SPOT.toString())) {
-                    orderInfo.setFilled((int) Math.round(order.getSize() * getSizeMultiplier(alias)));
+                    orderInfo.setFilled(FixedPoint.saturatedInt(getContext(alias).getSizeUnit().round(order.getSize())));
                 } else {
-                    orderInfo.setFilled((int) order.getSize());// !!!!!!!!!!! size is fp, turn to integer
+                    orderInfo.setFilled(FixedPoint.saturatedInt(FixedPoint.Unit.WHOLE.truncate(order.getSize())));
                 }
                 orderInfo.setStatus(OrderStatus.FILLED);
-                orderInfo.setAverageFillPrice(order.getLastFillPx());
+                orderInfo.setAverageFillPrice(FixedPoint.toDouble(order.getLastFillPx()));
                 update = orderInfo.build();
                 tradingListeners.forEach(l -> l.onOrderUpdated(update));
                 orderInfo.markAllUnchanged();
@@ -707,45 +743,91 @@ public class RealTimeTradingProvider extends RealTimeProvider {
 
             singleThreadExecutor.execute(() -> {
                 synchronized (aliasInstruments) {
-                    getConnector().subscribeOrder(symbol, market);
-
-                    if (market == Market.FUTURES) {
-                        refreshFuturesPosition(alias);
-
-                        getConnector().subscribePositionFutures(symbol, market);
-                        String underlyingIndex = ((InstrumentFutures) genericInstruments.get(alias))
-                                .getUnderlyingIndex();
-                        refreshFuturesAccount(underlyingIndex);
-
-                        getConnector().TEMPsubscribeAccount(symbol, market, underlyingIndex);
-
-                    } else if (market == Market.SPOT) {
-                        refreshBalance(alias);
-
-                        String baseCurrency = ((InstrumentSpot) genericInstruments.get(alias)).getBaseCurrency();
-                        String quoteCurrency = ((InstrumentSpot) genericInstruments.get(alias)).getQuoteCurrency();
+                    subscribePrivateChannels(Collections.singletonList(alias));
+                    rehydrate(alias);
+                }
+            });
+        
+    }
 
-                        currenciesForSpotPosition.computeIfAbsent(baseCurrency, v -> new HashSet<String>());
-                        currenciesForSpotPosition.computeIfPresent(baseCurrency, (k, v) -> {
-                            v.add(alias);
-                            return v;
-                        });
+    /**
+     * Restores the trading state after the primary connection is back: one
+     * login, the private channels of all aliases in one frame, and the REST
+     * snapshots of the aliases fetched in parallel.
+     */
+    protected void restoreTrading(List<String> aliases) {
+        if (!getConnector().wslogin()) {
+            Log.info("Login failed while restoring the connection: " + getConnector().getLoginResponseMessage());
+            return;
+        }
+        synchronized (aliasInstruments) {
+            subscribePrivateChannels(aliases);
+        }
+        for (String alias : aliases) {
+            CompletableFuture.runAsync(() -> rehydrate(alias), restoreExecutor).whenComplete((result, e) -> {
+                if (e != null) {
+                    Log.error("Failed to refresh " + alias + " after reconnect", e);
+                }
+            });
+        }
+    }
 
-                        currenciesForSpotBalance.computeIfAbsent(quoteCurrency, v -> new HashSet<String>());
-                        currenciesForSpotBalance.computeIfPresent(quoteCurrency, (k, v) -> {
-                            v.add(alias);
-                            return v;
-                        });
+    /**
+     * Subscribes the order, position and account channels of the aliases in
+     * one frame, the acknowledgements are not waited for so the REST
+     * refreshes overlap with them.
+     */
+    private void subscribePrivateChannels(List<String> aliases) {
+        List<String> channels = new ArrayList<>();
+        for (String alias : aliases) {
+            Market market = Market.valueOf(Utils.getTypeFromALias(alias));
+            String symbol = Utils.getInstrumentIdFromALias(alias);
+            channels.add(Connector.orderChannel(market, symbol));
+            if (market == Market.FUTURES) {
+                String underlyingIndex = ((InstrumentFutures) genericInstruments.get(alias)).getUnderlyingIndex();
+                channels.add(Connector.positionChannel(market, symbol));
+                channels.add(Connector.accountChannel(market, underlyingIndex));
+            } else if (market == Market.SPOT) {
+                String baseCurrency = ((InstrumentSpot) genericInstruments.get(alias)).getBaseCurrency();
+                String quoteCurrency = ((InstrumentSpot) genericInstruments.get(alias)).getQuoteCurrency();
+                channels.add(Connector.accountChannel(market, baseCurrency));
+                channels.add(Connector.accountChannel(market, quoteCurrency));
+
+                currenciesForSpotPosition.computeIfAbsent(baseCurrency, v -> new HashSet<String>());
+                currenciesForSpotPosition.computeIfPresent(baseCurrency, (k, v) -> {
+                    v.add(alias);
+                    return v;
+                });
 
-                        getConnector().TEMPsubscribeAccount(symbol, market, baseCurrency);
-                        getConnector().TEMPsubscribeAccount(symbol, market, quoteCurrency);
+                currenciesForSpotBalance.computeIfAbsent(quoteCurrency, v -> new HashSet<String>());
+                currenciesForSpotBalance.computeIfPresent(quoteCurrency, (k, v) -> {
+                    v.add(alias);
+                    return v;
+                });
+            }
+        }
+        // an account channel shared by several aliases is sent once
+        List<String> distinct = channels.stream().distinct().collect(Collectors.toList());
+        getConnector().subscribeAsync(distinct).forEach((channel, request) -> request
+                .whenComplete((response, e) -> {
+                    if (e != null) {
+                        Log.info("Failed to subscribe " + channel + ": " + e.getMessage());
                     }
+                }));
+    }
 
-                    refreshOrders(alias);
-
-                }
-            });
-        
+    /**
+     * Fetches positions, balances and orders of an alias over REST.
+     */
+    private void rehydrate(String alias) {
+        Market market = Market.valueOf(Utils.getTypeFromALias(alias));
+        if (market == Market.FUTURES) {
+            refreshFuturesPosition(alias);
+            refreshFuturesAccount(((InstrumentFutures) genericInstruments.get(alias)).getUnderlyingIndex());
+        } else if (market == Market.SPOT) {
+            refreshBalance(alias);
+        }
+        refreshOrders(alias);
     }
     
     @Override
@@ -1023,7 +1105,7 @@ public class RealTimeTradingProvider extends RealTimeProvider {
         data.setQty(qty);
         data.setAvrCost(avrCost);
         
-        double price = qty > 0 ? data.getLastAskTrade() : data.getLastBidTrade();
+        double price = getPnlPrice(alias, qty, data);
         
         if (price == 0.0) {
             return 0.0;
@@ -1050,7 +1132,7 @@ public class RealTimeTradingProvider extends RealTimeProvider {
             return 0.0;
         }
 
-        double price = qty > 0 ? data.getLastAskTrade() : data.getLastBidTrade();
+        double price = getPnlPrice(alias, qty, data);
 
         if (price == 0.0) {
             return 0.0;
@@ -1065,6 +1147,18 @@ public class RealTimeTradingProvider extends RealTimeProvider {
         
     }
         
+    /**
+     * Price a position is valued at: the best ask for a long and the best bid
+     * for a short, or the last trade on that side while the book is empty.
+     */
+    private double getPnlPrice(String alias, int qty, UnrealizedPnlData data) {
+        double price = getTopPrice(alias, qty < 0);
+        if (Double.isNaN(price)) {
+            price = qty > 0 ? data.getLastAskTrade() : data.getLastBidTrade();
+        }
+        return price;
+    }
+
     private void closeFuturesPosition(PlaceOrderRequest workaroundRequest, String workaroundId,
             OrderInfoBuilder orderInfo, String type, int size) {
         workaroundRequest.setType(type);
@@ -1,9 +1,13 @@
 package com.stableapps.bookmapadapter.provider;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import velox.api.layer1.annotations.Layer1ApiVersion;
 import velox.api.layer1.annotations.Layer1ApiVersionValue;
 import velox.api.layer1.common.ListenableHelper;
 import velox.api.layer1.common.Log;
+import velox.api.layer1.data.ExtendedLoginData;
 import velox.api.layer1.data.Layer1ApiProviderSupportedFeatures;
 import velox.api.layer1.data.LoginData;
 import velox.api.layer1.data.SubscribeInfo;
@@ -35,6 +39,21 @@ public class RelayProvider extends Layer1ApiRelay {
         }
     }
     
+    /**
+     * @return value of each login panel field by its name, for
+     *         {@link RealTimeProvider#configure}
+     */
+    protected static Map<String, String> settingsOf(ExtendedLoginData loginData) {
+        Map<String, String> settings = new HashMap<>();
+        // fields added later are missing from credentials saved before
+        loginData.extendedData.forEach((name, field) -> {
+            if (field != null) {
+                settings.put(name, field.getStringValue());
+            }
+        });
+        return settings;
+    }
+
     @Override
     public void close() {
         synchronized (lock) {
@@ -13,6 +13,20 @@ public class Constants {
     public static final String API_PASSPHRASE_FIELD_LABEL = "API key: Passphrase";
     public static final String ENABLE_TRADING_CHECKBOX_NAME = "enableTrading";
     public static final String ENABLE_TRADING_CHECKBOX_LABEL = "Enable trading";
+    public static final String MARKET_DATA_CONNECTIONS_FIELD_NAME = "marketDataConnections";
+    public static final String MARKET_DATA_CONNECTIONS_FIELD_LABEL = "Market data connections (1 = shared)";
+    public static final String REDUNDANT_MARKET_DATA_CHECKBOX_NAME = "redundantMarketData";
+    public static final String REDUNDANT_MARKET_DATA_CHECKBOX_LABEL = "Redundant market data sessions";
+    public static final String DEPTH_CONFLATION_FIELD_NAME = "depthConflationMillis";
+    public static final String DEPTH_CONFLATION_FIELD_LABEL = "Depth conflation, ms (0 = every message)";
+    public static final String DEPTH_WINDOW_FIELD_NAME = "depthWindow";
+    public static final String DEPTH_WINDOW_FIELD_LABEL = "Depth window, e.g. 200 ticks or 50 levels";
+    public static final String MARKET_DATA_LANES_FIELD_NAME = "marketDataLanes";
+    public static final String MARKET_DATA_LANES_FIELD_LABEL = "Market data lanes (0 = socket thread)";
+    public static final String OFF_HEAP_BOOKS_CHECKBOX_NAME = "offHeapBooks";
+    public static final String OFF_HEAP_BOOKS_CHECKBOX_LABEL = "Off-heap order books";
+    public static final String DEPTH_CHECKSUM_INTERVAL_FIELD_NAME = "depthChecksumInterval";
+    public static final String DEPTH_CHECKSUM_INTERVAL_FIELD_LABEL = "Validate depth checksum every N-th message (0 = off)";
 
     public static String EXCHANGE;
     public String ADAPTER_FULL_NAME;
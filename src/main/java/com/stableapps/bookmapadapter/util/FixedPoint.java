@@ -0,0 +1,270 @@
+package com.stableapps.bookmapadapter.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Decimal numbers scaled to a {@code long} with {@link #DECIMALS} fractional
+ * digits. Prices and sizes are parsed from their decimal text straight into
+ * this representation, so converting them to ticks or size units is exact
+ * integer arithmetic.
+ * <p>
+ * Instruments whose tick or lot size needs more than {@link #DECIMALS}
+ * decimals can not be represented and are refused on subscription, see
+ * {@link #isRepresentable}. Their prices and sizes may still be sent with
+ * trailing zeros beyond it, which {@link #decimals} and {@link #write} keep.
+ */
+public final class FixedPoint {
+
+    public static final int DECIMALS = 8;
+    public static final long ONE = 100_000_000L;
+    /**
+     * Most decimals of a text that {@link #write} reproduces, enough for the
+     * trailing zeros OKEx pads values with.
+     */
+    public static final int MAX_TEXT_DECIMALS = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[DECIMALS + 1];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= DECIMALS; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Parses a decimal such as {@code -3960.25}. Digits beyond
+     * {@link #DECIMALS} are truncated, for a representable instrument they
+     * are zeros. Exponents are accepted but go through {@code double}.
+     */
+    public static long parse(char[] chars, int offset, int length) {
+        int position = offset;
+        int end = offset + length;
+        boolean negative = false;
+
+        if (position < end && (chars[position] == '-' || chars[position] == '+')) {
+            negative = chars[position] == '-';
+            position++;
+        }
+
+        long whole = 0;
+        long fraction = 0;
+        int fractionDigits = -1;
+        boolean hasDigits = false;
+
+        for (; position < end; position++) {
+            char c = chars[position];
+            if (c >= '0' && c <= '9') {
+                hasDigits = true;
+                if (fractionDigits < 0) {
+                    whole = whole * 10 + (c - '0');
+                    if (whole > Long.MAX_VALUE / ONE) {
+                        throw new NumberFormatException("Out of range: " + new String(chars, offset, length));
+                    }
+                } else if (fractionDigits < DECIMALS) {
+                    fraction = fraction * 10 + (c - '0');
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if ((c == 'e' || c == 'E') && hasDigits) {
+                return fromDouble(Double.parseDouble(new String(chars, offset, length)));
+            } else {
+                throw new NumberFormatException("Not a decimal: " + new String(chars, offset, length));
+            }
+        }
+        if (!hasDigits) {
+            throw new NumberFormatException("Not a decimal: " + new String(chars, offset, length));
+        }
+
+        long value = whole * ONE;
+        if (fractionDigits > 0) {
+            value += fraction * POWERS_OF_TEN[DECIMALS - fractionDigits];
+        }
+        return negative ? -value : value;
+    }
+
+    public static long parse(String text) {
+        return parse(text.toCharArray(), 0, text.length());
+    }
+
+    /**
+     * Parses the current string or number token without creating a
+     * {@code String} or a {@code double}.
+     */
+    public static long parse(JsonParser jp) throws IOException {
+        return parse(jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength());
+    }
+
+    /**
+     * @return number of digits after the decimal point of the text, at most
+     *         {@link #MAX_TEXT_DECIMALS}, so that {@link #write} can reproduce
+     *         it
+     */
+    public static int decimals(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (chars[i] == '.') {
+                return Math.min(offset + length - i - 1, MAX_TEXT_DECIMALS);
+            }
+        }
+        return 0;
+    }
+
+    public static int decimals(JsonParser jp) throws IOException {
+        return decimals(jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength());
+    }
+
+    /**
+     * Writes the value as ASCII with exactly {@code decimals} fractional digits,
+     * e.g. {@code 3960.10} for two decimals. Digits beyond {@link #DECIMALS}
+     * are written as zeros.
+     *
+     * @return the position after the last written byte
+     */
+    public static int write(long value, int decimals, byte[] buffer, int offset) {
+        if (value < 0) {
+            buffer[offset++] = '-';
+            value = -value;
+        }
+        int padding = Math.max(decimals - DECIMALS, 0);
+        decimals -= padding;
+        long whole = value / ONE;
+        long fraction = value % ONE / POWERS_OF_TEN[DECIMALS - decimals];
+
+        int digits = 1;
+        for (long rest = whole / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + whole % 10);
+            whole /= 10;
+        }
+        offset += digits;
+
+        if (decimals > 0) {
+            buffer[offset++] = '.';
+            for (int i = offset + decimals - 1; i >= offset; i--) {
+                buffer[i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            offset += decimals;
+        }
+        for (; padding > 0; padding--) {
+            buffer[offset++] = '0';
+        }
+        return offset;
+    }
+
+    public static long fromDouble(double value) {
+        return BigDecimal.valueOf(value).setScale(DECIMALS, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    public static double toDouble(long value) {
+        return (double) value / ONE;
+    }
+
+    /**
+     * @return {@code true} if a positive step such as a tick size is a whole
+     *         number of {@code 1e-8}, up to the noise of a {@code double}
+     */
+    public static boolean isRepresentable(double step) {
+        if (!(step > 0) || Double.isInfinite(step)) {
+            return false;
+        }
+        long value = fromDouble(step);
+        return value > 0 && Math.abs(toDouble(value) - step) <= step * 1e-9;
+    }
+
+    public static int saturatedInt(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(value, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Step in which fixed point values are counted, e.g. a tick size of
+     * {@code 0.01} or a size unit of {@code 1/sizeMultiplier}.
+     */
+    public static final class Unit {
+
+        public static final Unit WHOLE = new Unit(ONE, 1.0);
+
+        /**
+         * Fixed point size of one unit, {@code 0} when it can not be
+         * represented exactly.
+         */
+        private final long size;
+        /**
+         * Units in {@code 1.0}, used only when {@link #size} is {@code 0}.
+         */
+        private final double perOne;
+
+        private Unit(long size, double perOne) {
+            this.size = size;
+            this.perOne = perOne;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the size is not
+         *         {@link #isRepresentable representable}
+         */
+        public static Unit of(double unitSize) {
+            if (!isRepresentable(unitSize)) {
+                throw new IllegalArgumentException(
+                        "Unit size " + unitSize + " needs more than " + DECIMALS + " decimals");
+            }
+            return new Unit(fromDouble(unitSize), 1 / unitSize);
+        }
+
+        /**
+         * @param multiplier number of units in {@code 1.0}, e.g. a size
+         *                   multiplier of {@code 1000} makes a unit of
+         *                   {@code 0.001}
+         */
+        public static Unit perOne(double multiplier) {
+            if (!(multiplier > 0)) {
+                throw new IllegalArgumentException("Multiplier " + multiplier);
+            }
+            long size;
+            try {
+                BigDecimal unit = BigDecimal.ONE.divide(BigDecimal.valueOf(multiplier)).movePointRight(DECIMALS);
+                size = unit.stripTrailingZeros().scale() <= 0 ? unit.longValueExact() : 0;
+            } catch (ArithmeticException e) {
+                // 1/multiplier does not terminate within DECIMALS digits
+                size = 0;
+            }
+            return new Unit(size, multiplier);
+        }
+
+        public long floor(long value) {
+            return size != 0 ? Math.floorDiv(value, size) : (long) Math.floor(toDouble(value) * perOne);
+        }
+
+        public long ceil(long value) {
+            return size != 0 ? -Math.floorDiv(-value, size) : (long) Math.ceil(toDouble(value) * perOne);
+        }
+
+        public long round(long value) {
+            return size != 0 ? Math.floorDiv(value + size / 2, size) : Math.round(toDouble(value) * perOne);
+        }
+
+        /**
+         * @return fixed point value of a number of units, e.g. the price of a
+         *         tick index
+         */
+        public long value(long units) {
+            return size != 0 ? units * size : fromDouble(units / perOne);
+        }
+
+        /**
+         * Rounds towards zero, like a cast to {@code int}.
+         */
+        public long truncate(long value) {
+            return size != 0 ? value / size : (long) (toDouble(value) * perOne);
+        }
+    }
+}
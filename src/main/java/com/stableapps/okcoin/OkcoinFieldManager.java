@@ -14,6 +14,7 @@ import velox.api.layer0.credentialscomponents.CredentialsCheckbox;
 import velox.api.layer0.credentialscomponents.CredentialsComponent;
 import velox.api.layer0.credentialscomponents.CredentialsFieldManager;
 import velox.api.layer0.credentialscomponents.CredentialsSerializationField;
+import velox.api.layer0.credentialscomponents.CredentialsTextField;
 
 public class OkcoinFieldManager implements CredentialsFieldManager {
 
@@ -28,6 +29,21 @@ public class OkcoinFieldManager implements CredentialsFieldManager {
 
     CustomCheckbox tradingCheckbox = new CustomCheckbox(Constants.ENABLE_TRADING_CHECKBOX_NAME, true,
             Constants.ENABLE_TRADING_CHECKBOX_LABEL);
+    // market data settings, see RealTimeProvider#configure
+    CredentialsTextField marketDataConnectionsField = new CredentialsTextField(
+            Constants.MARKET_DATA_CONNECTIONS_FIELD_NAME, false, Constants.MARKET_DATA_CONNECTIONS_FIELD_LABEL, false);
+    CredentialsCheckbox redundantMarketDataCheckbox = new CredentialsCheckbox(
+            Constants.REDUNDANT_MARKET_DATA_CHECKBOX_NAME, false, Constants.REDUNDANT_MARKET_DATA_CHECKBOX_LABEL);
+    CredentialsTextField depthConflationMillisField = new CredentialsTextField(
+            Constants.DEPTH_CONFLATION_FIELD_NAME, false, Constants.DEPTH_CONFLATION_FIELD_LABEL, false);
+    CredentialsTextField depthWindowField = new CredentialsTextField(
+            Constants.DEPTH_WINDOW_FIELD_NAME, false, Constants.DEPTH_WINDOW_FIELD_LABEL, false);
+    CredentialsTextField marketDataLanesField = new CredentialsTextField(
+            Constants.MARKET_DATA_LANES_FIELD_NAME, false, Constants.MARKET_DATA_LANES_FIELD_LABEL, false);
+    CredentialsCheckbox offHeapBooksCheckbox = new CredentialsCheckbox(
+            Constants.OFF_HEAP_BOOKS_CHECKBOX_NAME, false, Constants.OFF_HEAP_BOOKS_CHECKBOX_LABEL);
+    CredentialsTextField depthChecksumIntervalField = new CredentialsTextField(
+            Constants.DEPTH_CHECKSUM_INTERVAL_FIELD_NAME, false, Constants.DEPTH_CHECKSUM_INTERVAL_FIELD_LABEL, false);
 
     List<CredentialsComponent> components = new LinkedList<>();
 
@@ -41,6 +57,13 @@ public class OkcoinFieldManager implements CredentialsFieldManager {
             }
         }
         components.add(tradingCheckbox);
+        components.add(marketDataConnectionsField);
+        components.add(redundantMarketDataCheckbox);
+        components.add(depthConflationMillisField);
+        components.add(depthWindowField);
+        components.add(marketDataLanesField);
+        components.add(offHeapBooksCheckbox);
+        components.add(depthChecksumIntervalField);
     }
 
     @Override
@@ -1,5 +1,6 @@
 package com.stableapps.okcoin;
 
+import com.stableapps.bookmapadapter.provider.RealTimeProvider;
 import com.stableapps.bookmapadapter.provider.RelayProvider;
 import com.stableapps.bookmapadapter.util.Constants;
 
@@ -33,6 +34,7 @@ public class OkcoinRelayProvider extends RelayProvider {
             throw new IllegalArgumentException("Trading not supported");
         } else {
             Layer1ApiProvider provider = new OkcoinRealTimeProvider(OkcoinConstants.EXCHANGE, OkcoinConstants.WS_PORT_NUMBER, OkcoinConstants.WS_LINK);
+            ((RealTimeProvider) provider).configure(settingsOf(extendedLoginData));
             setProvider(provider);
             Log.info("OkexRealtimeProvider " + provider.hashCode());
         }
@@ -34,6 +34,21 @@ public class OkexFieldManager implements CredentialsFieldManager {
             Constants.API_PASSPHRASE_FIELD_LABEL, true);
     CustomCheckbox tradingCheckbox = new CustomCheckbox(Constants.ENABLE_TRADING_CHECKBOX_NAME, true,
             Constants.ENABLE_TRADING_CHECKBOX_LABEL);
+    // market data settings, see RealTimeProvider#configure
+    CredentialsTextField marketDataConnectionsField = new CredentialsTextField(
+            Constants.MARKET_DATA_CONNECTIONS_FIELD_NAME, false, Constants.MARKET_DATA_CONNECTIONS_FIELD_LABEL, false);
+    CredentialsCheckbox redundantMarketDataCheckbox = new CredentialsCheckbox(
+            Constants.REDUNDANT_MARKET_DATA_CHECKBOX_NAME, false, Constants.REDUNDANT_MARKET_DATA_CHECKBOX_LABEL);
+    CredentialsTextField depthConflationMillisField = new CredentialsTextField(
+            Constants.DEPTH_CONFLATION_FIELD_NAME, false, Constants.DEPTH_CONFLATION_FIELD_LABEL, false);
+    CredentialsTextField depthWindowField = new CredentialsTextField(
+            Constants.DEPTH_WINDOW_FIELD_NAME, false, Constants.DEPTH_WINDOW_FIELD_LABEL, false);
+    CredentialsTextField marketDataLanesField = new CredentialsTextField(
+            Constants.MARKET_DATA_LANES_FIELD_NAME, false, Constants.MARKET_DATA_LANES_FIELD_LABEL, false);
+    CredentialsCheckbox offHeapBooksCheckbox = new CredentialsCheckbox(
+            Constants.OFF_HEAP_BOOKS_CHECKBOX_NAME, false, Constants.OFF_HEAP_BOOKS_CHECKBOX_LABEL);
+    CredentialsTextField depthChecksumIntervalField = new CredentialsTextField(
+            Constants.DEPTH_CHECKSUM_INTERVAL_FIELD_NAME, false, Constants.DEPTH_CHECKSUM_INTERVAL_FIELD_LABEL, false);
 
     List<CredentialsComponent> components = new LinkedList<>();
 
@@ -43,6 +58,13 @@ public class OkexFieldManager implements CredentialsFieldManager {
         components.add(apiKeyField);
         components.add(apiSecretField);
         components.add(apiPassphraseField);
+        components.add(marketDataConnectionsField);
+        components.add(redundantMarketDataCheckbox);
+        components.add(depthConflationMillisField);
+        components.add(depthWindowField);
+        components.add(marketDataLanesField);
+        components.add(offHeapBooksCheckbox);
+        components.add(depthChecksumIntervalField);
 
         tradingCheckbox.addSettingsChangedListener(
             () -> {
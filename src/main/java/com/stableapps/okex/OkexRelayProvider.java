@@ -1,5 +1,6 @@
 package com.stableapps.okex;
 
+import com.stableapps.bookmapadapter.provider.RealTimeProvider;
 import com.stableapps.bookmapadapter.provider.RelayProvider;
 import com.stableapps.bookmapadapter.util.Constants;
 
@@ -32,11 +33,13 @@ public class OkexRelayProvider extends RelayProvider {
                 .valueOf(extendedLoginData.extendedData.get(Constants.ENABLE_TRADING_CHECKBOX_NAME).getStringValue())) {
             Layer1ApiProvider provider = new OkexRealTimeTradingProvider(OkexConstants.EXCHANGE,
                     OkexConstants.WS_PORT_NUMBER, OkexConstants.WS_LINK);
+            ((RealTimeProvider) provider).configure(settingsOf(extendedLoginData));
             setProvider(provider);
             Log.info("OkexRealtimeTradingProvider " + provider.hashCode());
         } else {
             Layer1ApiProvider provider = new OkexRealTimeProvider(OkexConstants.EXCHANGE,
                     OkexConstants.WS_PORT_NUMBER, OkexConstants.WS_LINK);
+            ((RealTimeProvider) provider).configure(settingsOf(extendedLoginData));
             setProvider(provider);
             Log.info("OkexRealtimeProvider " + provider.hashCode());
         }
@@ -0,0 +1,56 @@
+package com.stableapps.bookmapadapter.book;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that a silent depth channel is only resubscribed while other aliases
+ * of its connection keep receiving messages.
+ */
+public class BookWatchdogTest {
+
+    private static final long STALE_MILLIS = 200;
+
+    private final List<String> resubscribed = new ArrayList<>();
+    private final BookWatchdog watchdog = new BookWatchdog(STALE_MILLIS, 0, resubscribed::add, alias -> {
+    });
+
+    @Test
+    public void silentDepthNextToActiveAliasIsResubscribed() throws InterruptedException {
+        watchdog.watch("SPOT@BTC-USDT", 0);
+        watchdog.watch("SPOT@ETH-USDT", 0);
+        Thread.sleep(2 * STALE_MILLIS);
+        watchdog.onTrade("SPOT@ETH-USDT");
+        watchdog.check();
+
+        // the active alias has no active neighbour, so it is not stale either
+        assertEquals(Arrays.asList("SPOT@BTC-USDT"), resubscribed);
+    }
+
+    @Test
+    public void quietConnectionIsNotResubscribed() throws InterruptedException {
+        watchdog.watch("SPOT@BTC-USDT", 0);
+        watchdog.watch("SPOT@ETH-USDT", 0);
+        watchdog.watch("FUTURES@BTC-USD-190628", 1);
+        Thread.sleep(2 * STALE_MILLIS);
+        watchdog.onTrade("FUTURES@BTC-USD-190628");
+        watchdog.check();
+
+        assertEquals(Collections.emptyList(), resubscribed);
+    }
+
+    @Test
+    public void aliasAloneOnItsConnectionIsNotResubscribed() throws InterruptedException {
+        watchdog.watch("SPOT@BTC-USDT", 0);
+        Thread.sleep(2 * STALE_MILLIS);
+        watchdog.check();
+
+        assertEquals(Collections.emptyList(), resubscribed);
+    }
+}
@@ -0,0 +1,162 @@
+package com.stableapps.bookmapadapter.book;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import com.stableapps.bookmapadapter.model.DepthLevels;
+import com.stableapps.bookmapadapter.util.FixedPoint;
+
+/**
+ * Checks the OKEx checksum of a {@link DepthBook} against the examples of the
+ * OKEx API documentation and against the checksum string built from a map
+ * model of the book.
+ */
+public class DepthBookTest {
+
+    @Test
+    public void documentedExampleWithEqualSides() {
+        DepthBook book = new DepthBook();
+        apply(book, true, "3366.1", "7", "3366", "6");
+        apply(book, false, "3366.8", "9", "3368", "8");
+
+        assertEquals(crc("3366.1:7:3366.8:9:3366:6:3368:8"), book.checksum());
+        assertEquals(-1881014294, book.checksum());
+    }
+
+    @Test
+    public void documentedExampleWithAShorterSide() {
+        DepthBook book = new DepthBook();
+        apply(book, true, "3366.1", "7");
+        apply(book, false, "3366.8", "9", "3368", "8", "3372", "8");
+
+        assertEquals(crc("3366.1:7:3366.8:9:3368:8:3372:8"), book.checksum());
+        assertEquals(831078360, book.checksum());
+    }
+
+    @Test
+    public void levelsKeepTheDecimalsTheyWereSentWith() {
+        DepthBook book = new DepthBook();
+        apply(book, true, "0.00001230", "100.0", "0.0000122", "0.000000010");
+        apply(book, false, "0.000012400", "5");
+
+        assertEquals(crc("0.00001230:100.0:0.000012400:5:0.0000122:0.000000010"), book.checksum());
+    }
+
+    @Test
+    public void removedLevelsLeaveTheChecksum() {
+        DepthBook book = new DepthBook();
+        apply(book, true, "10.5", "1", "10.4", "2", "10.3", "3");
+        apply(book, false, "10.6", "1");
+        apply(book, true, "10.5", "0", "10.3", "4");
+
+        assertEquals(2, book.getBidCount());
+        assertEquals(crc("10.4:2:10.6:1:10.3:4"), book.checksum());
+    }
+
+    @Test
+    public void fullSideKeepsItsBestLevels() {
+        DepthBook book = new DepthBook(LadderAllocator.HEAP, DepthBook.CHECKSUM_DEPTH);
+        for (int i = 0; i < 40; i++) {
+            apply(book, true, Integer.toString(1000 - i), "1");
+        }
+        assertEquals(DepthBook.CHECKSUM_DEPTH, book.getBidCount());
+
+        // a better level pushes the worst one out, a worse one is ignored
+        apply(book, true, "1001", "1", "900", "1");
+
+        assertEquals(DepthBook.CHECKSUM_DEPTH, book.getBidCount());
+        StringBuilder expected = new StringBuilder("1001:1");
+        for (int i = 0; i < DepthBook.CHECKSUM_DEPTH - 1; i++) {
+            expected.append(':').append(1000 - i).append(":1");
+        }
+        assertEquals(crc(expected.toString()), book.checksum());
+    }
+
+    @Test
+    public void heapBookMatchesModel() {
+        runAgainstModel(new DepthBook(LadderAllocator.HEAP));
+    }
+
+    @Test
+    public void directBookMatchesModel() {
+        LadderAllocator.Direct allocator = new LadderAllocator.Direct(6);
+        DepthBook book = new DepthBook(allocator);
+        runAgainstModel(book);
+
+        book.close();
+        assertEquals(6, allocator.getFreeCount());
+    }
+
+    /**
+     * Random updates within fewer levels than the book keeps, so that the
+     * book is exact and its checksum string can be built from the model.
+     */
+    private static void runAgainstModel(DepthBook book) {
+        Random random = new Random(7);
+        TreeMap<BigDecimal, String> bids = new TreeMap<>();
+        TreeMap<BigDecimal, String> asks = new TreeMap<>();
+        for (int message = 0; message < 5_000; message++) {
+            boolean isBid = random.nextBoolean();
+            int offset = 1 + random.nextInt(DepthBook.DEFAULT_DEPTH - 1);
+            String price = BigDecimal.valueOf(isBid ? 50_000 - offset : 50_000 + offset, 1).toPlainString();
+            String size = random.nextInt(4) == 0 ? "0" : BigDecimal.valueOf(random.nextInt(100_000), 3).toPlainString();
+            TreeMap<BigDecimal, String> side = isBid ? bids : asks;
+            if (FixedPoint.parse(size) == 0) {
+                side.remove(new BigDecimal(price));
+            } else {
+                side.put(new BigDecimal(price), price + ":" + size);
+            }
+            apply(book, isBid, price, size);
+
+            if (message % 10 == 0) {
+                assertEquals(bids.size(), book.getBidCount());
+                assertEquals(asks.size(), book.getAskCount());
+                assertEquals(crc(checksumString(bids.descendingMap(), asks)), book.checksum());
+            }
+        }
+    }
+
+    private static String checksumString(Map<BigDecimal, String> bids, Map<BigDecimal, String> asks) {
+        StringBuilder string = new StringBuilder();
+        Object[] bidLevels = bids.values().toArray();
+        Object[] askLevels = asks.values().toArray();
+        for (int i = 0; i < DepthBook.CHECKSUM_DEPTH; i++) {
+            if (i < bidLevels.length) {
+                string.append(bidLevels[i]).append(':');
+            }
+            if (i < askLevels.length) {
+                string.append(askLevels[i]).append(':');
+            }
+        }
+        return string.length() == 0 ? "" : string.substring(0, string.length() - 1);
+    }
+
+    /**
+     * @param pricesAndSizes price and size text of each level, in turn
+     */
+    private static void apply(DepthBook book, boolean isBid, String... pricesAndSizes) {
+        DepthLevels levels = new DepthLevels();
+        for (int i = 0; i < pricesAndSizes.length; i += 2) {
+            String price = pricesAndSizes[i];
+            String size = pricesAndSizes[i + 1];
+            levels.add(FixedPoint.parse(price), FixedPoint.parse(size),
+                    FixedPoint.decimals(price.toCharArray(), 0, price.length()),
+                    FixedPoint.decimals(size.toCharArray(), 0, size.length()));
+        }
+        book.apply(levels, isBid);
+    }
+
+    private static int crc(String string) {
+        CRC32 crc = new CRC32();
+        crc.update(string.getBytes(StandardCharsets.US_ASCII));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,205 @@
+package com.stableapps.bookmapadapter.book;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.stableapps.bookmapadapter.util.FixedPoint;
+
+/**
+ * Runs random messages through a windowed {@link GranulatedBook} and checks it
+ * against a map model of the exchange book and of the levels shown in
+ * Bookmap. The levels are spread wider than a {@link PriceLadder} window, so
+ * trimming also reaches the overflow.
+ */
+public class GranulatedBookWindowTest {
+
+    private static final FixedPoint.Unit TICK = FixedPoint.Unit.of(0.5);
+    private static final FixedPoint.Unit PIPS = FixedPoint.Unit.of(2.0);
+    private static final int MESSAGES = 20_000;
+    private static final int SPREAD = 3 * PriceLadder.DEFAULT_CAPACITY;
+    private static final boolean[] SIDES = { true, false };
+
+    private final Random random = new Random(0x0CE7L);
+    private final GranulatedBook book = new GranulatedBook(TICK, PIPS);
+    /** Exchange book per side, tick to size. */
+    private final TreeMap<Long, Long> bidExchange = new TreeMap<>();
+    private final TreeMap<Long, Long> askExchange = new TreeMap<>();
+    /** Levels reported by {@link GranulatedBook#flush}, pips to size. */
+    private final Map<Long, Long> bidsShown = new HashMap<>();
+    private final Map<Long, Long> asksShown = new HashMap<>();
+    private long mid = 20_000;
+
+    @Test
+    public void tickWindowTrimsAndRestores() {
+        DepthWindow window = DepthWindow.ticks(40);
+        book.setWindow(window);
+        runMessages(window);
+
+        // every exchange level inside the window is kept again once it is
+        // updated, whatever was evicted before
+        for (boolean isBid : SIDES) {
+            long best = book.getTicks(isBid).getBest();
+            for (Map.Entry<Long, Long> level : exchange(isBid).entrySet()) {
+                if (Math.abs(level.getKey() - best) <= window.getSize()) {
+                    update(isBid, level.getKey(), level.getValue() + 1);
+                }
+            }
+        }
+        endMessage(window);
+        for (boolean isBid : SIDES) {
+            long best = book.getTicks(isBid).getBest();
+            TreeMap<Long, Long> expected = new TreeMap<>(exchange(isBid)
+                    .subMap(best - window.getSize(), true, best + window.getSize(), true));
+            assertEquals(expected, kept(isBid));
+        }
+    }
+
+    @Test
+    public void levelWindowTrimsAndRestores() {
+        DepthWindow window = DepthWindow.levels(25);
+        book.setWindow(window);
+        runMessages(window);
+    }
+
+    @Test
+    public void removedWindowRestoresEveryLevel() {
+        DepthWindow window = DepthWindow.levels(10);
+        book.setWindow(window);
+        runMessages(window);
+
+        book.setWindow(null);
+        for (boolean isBid : SIDES) {
+            for (Map.Entry<Long, Long> level : exchange(isBid).entrySet()) {
+                update(isBid, level.getKey(), level.getValue() + 1);
+            }
+        }
+        endMessage(null);
+        for (boolean isBid : SIDES) {
+            assertEquals(exchange(isBid), kept(isBid));
+        }
+    }
+
+    private void runMessages(DepthWindow window) {
+        for (int message = 0; message < MESSAGES; message++) {
+            if (message % 2_000 == 0) {
+                book.beginSnapshot();
+                for (boolean isBid : SIDES) {
+                    exchange(isBid).clear();
+                    for (int i = 0; i < 200; i++) {
+                        update(isBid, randomTick(isBid), randomSize());
+                    }
+                }
+            } else {
+                if (random.nextInt(10) == 0) {
+                    // moves the window in and out
+                    mid += random.nextInt(101) - 50;
+                }
+                for (boolean isBid : SIDES) {
+                    for (int i = random.nextInt(8); i >= 0; i--) {
+                        Long existing = exchange(isBid).ceilingKey(randomTick(isBid));
+                        if (existing != null && random.nextInt(3) == 0) {
+                            update(isBid, existing, 0);
+                        } else if (existing != null && random.nextBoolean()) {
+                            update(isBid, existing, randomSize());
+                        } else {
+                            update(isBid, nearTick(isBid), randomSize());
+                        }
+                    }
+                }
+            }
+            endMessage(window);
+        }
+    }
+
+    private void update(boolean isBid, long tick, long size) {
+        if (size == 0) {
+            exchange(isBid).remove(tick);
+        } else {
+            exchange(isBid).put(tick, size);
+        }
+        book.update(isBid, TICK.value(tick), size);
+    }
+
+    private void endMessage(DepthWindow window) {
+        book.applyWindow();
+        book.updateTopOfBook();
+        for (boolean isBid : SIDES) {
+            Map<Long, Long> levels = shown(isBid);
+            book.flush(isBid, (price, size) -> {
+                if (size == 0) {
+                    levels.remove(price);
+                } else {
+                    levels.put(price, size);
+                }
+            });
+            verify(isBid, window);
+        }
+    }
+
+    private void verify(boolean isBid, DepthWindow window) {
+        TreeMap<Long, Long> levels = exchange(isBid);
+        TreeMap<Long, Long> kept = kept(isBid);
+        Map<Long, Long> buckets = new HashMap<>();
+        for (Map.Entry<Long, Long> level : kept.entrySet()) {
+            // a kept level is never stale
+            assertEquals("tick " + level.getKey(), levels.get(level.getKey()), level.getValue());
+            long price = TICK.value(level.getKey());
+            long pips = FixedPoint.saturatedInt(isBid ? PIPS.floor(price) : PIPS.ceil(price));
+            buckets.merge(pips, level.getValue(), Long::sum);
+        }
+        // the buckets shown are those of the kept levels
+        assertEquals(buckets, shown(isBid));
+        Map<Long, Long> side = new HashMap<>();
+        book.getSide(isBid).forEach(side::put);
+        assertEquals(buckets, side);
+
+        if (window == null || kept.isEmpty()) {
+            return;
+        }
+        if (window.getMode() == DepthWindow.Mode.TICKS) {
+            long best = isBid ? kept.lastKey() : kept.firstKey();
+            long worst = isBid ? kept.firstKey() : kept.lastKey();
+            assertTrue("worst tick " + worst + " of best " + best, Math.abs(best - worst) <= window.getSize());
+        } else {
+            assertTrue(kept.size() + " levels", kept.size() <= window.getSize());
+        }
+    }
+
+    private TreeMap<Long, Long> exchange(boolean isBid) {
+        return isBid ? bidExchange : askExchange;
+    }
+
+    private Map<Long, Long> shown(boolean isBid) {
+        return isBid ? bidsShown : asksShown;
+    }
+
+    private TreeMap<Long, Long> kept(boolean isBid) {
+        TreeMap<Long, Long> kept = new TreeMap<>();
+        book.getTicks(isBid).forEach(kept::put);
+        return kept;
+    }
+
+    private long randomTick(boolean isBid) {
+        long distance = 1 + random.nextInt(SPREAD);
+        return isBid ? mid - distance : mid + distance;
+    }
+
+    /**
+     * @return a tick close to the touch, most updates of a real book are there
+     */
+    private long nearTick(boolean isBid) {
+        long distance = 1 + random.nextInt(random.nextInt(4) == 0 ? SPREAD : 60);
+        return isBid ? mid - distance : mid + distance;
+    }
+
+    private long randomSize() {
+        return (1 + random.nextInt(10_000)) * FixedPoint.ONE / 1_000;
+    }
+}
@@ -0,0 +1,182 @@
+package com.stableapps.bookmapadapter.book;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.stableapps.bookmapadapter.util.FixedPoint;
+
+/**
+ * Checks a {@link PriceLadder} against a map model while the best price moves
+ * the window back and forth, and what a full overflow does with the levels it
+ * can not keep.
+ */
+public class PriceLadderTest {
+
+    private static final int STEPS = 50_000;
+
+    @Test
+    public void heapBidsMatchModel() {
+        runAgainstModel(new PriceLadder(true, 16), true);
+    }
+
+    @Test
+    public void heapAsksMatchModel() {
+        runAgainstModel(new PriceLadder(false, 16), false);
+    }
+
+    @Test
+    public void directLaddersMatchModel() {
+        LadderAllocator.Direct allocator = new LadderAllocator.Direct(6);
+        runAgainstModel(new PriceLadder(true, allocator), true);
+        runAgainstModel(new PriceLadder(false, allocator), false);
+    }
+
+    @Test
+    public void fullOverflowDropsItsWorstLevel() {
+        List<Long> dropped = new ArrayList<>();
+        PriceLadder bids = new PriceLadder(true, 4);
+        bids.setDropListener((price, size) -> dropped.add(price));
+        // the window is 97..100, 90..87 fill the overflow
+        bids.set(100, 1);
+        for (long price = 90; price > 86; price--) {
+            bids.set(price, 1);
+        }
+
+        bids.set(89, 2);
+        bids.set(98, 1);
+        assertEquals(Arrays.asList(), dropped);
+        bids.set(92, 1);
+
+        assertEquals(Arrays.asList(87L), dropped);
+        assertEquals(0, bids.get(87));
+        assertEquals(6, bids.size());
+        assertEquals(88, bids.getWorst());
+    }
+
+    @Test
+    public void levelWorseThanAFullOverflowIsDropped() {
+        List<Long> dropped = new ArrayList<>();
+        PriceLadder asks = new PriceLadder(false, 4);
+        asks.setDropListener((price, size) -> dropped.add(price));
+        asks.set(100, 1);
+        for (long price = 110; price < 114; price++) {
+            asks.set(price, 1);
+        }
+
+        assertEquals(0, asks.set(120, 5));
+
+        assertEquals(Arrays.asList(120L), dropped);
+        assertEquals(0, asks.get(120));
+        assertEquals(113, asks.getWorst());
+    }
+
+    @Test
+    public void droppedTickLeavesItsPriceLevel() {
+        FixedPoint.Unit tick = FixedPoint.Unit.of(1.0);
+        LadderAllocator small = new LadderAllocator() {
+            @Override
+            public LongBuffer allocate() {
+                return LongBuffer.allocate(8);
+            }
+
+            @Override
+            public void release(LongBuffer buffer) {
+            }
+        };
+        GranulatedBook book = new GranulatedBook(tick, FixedPoint.Unit.of(2.0), small);
+        book.update(true, tick.value(100), 1);
+        // the tick ladder keeps 94..101 in its window and 8 levels behind it,
+        // so 82 and 81 are dropped
+        for (long price = 90; price > 80; price--) {
+            book.update(true, tick.value(price), 1);
+        }
+
+        PriceLadder ticks = book.getTicks(true);
+        PriceLadder bids = book.getSide(true);
+        assertEquals(9, ticks.size());
+        assertEquals(0, ticks.get(82));
+        assertEquals(1, bids.get(41));
+        assertEquals(0, bids.get(40));
+        long[] total = new long[2];
+        ticks.forEach((price, size) -> total[0] += size);
+        bids.forEach((price, size) -> total[1] += size);
+        assertEquals(total[0], total[1]);
+    }
+
+    @Test
+    public void releaseGivesEveryBufferBack() {
+        LadderAllocator.Direct allocator = new LadderAllocator.Direct(3);
+        PriceLadder ladder = new PriceLadder(true, allocator);
+        assertEquals(0, allocator.getFreeCount());
+
+        ladder.release(allocator);
+
+        assertEquals(3, allocator.getFreeCount());
+    }
+
+    /**
+     * Trends the best price down and up again, so the window is re-centred in
+     * both directions, and keeps the book narrow enough for the overflow.
+     */
+    private static void runAgainstModel(PriceLadder ladder, boolean isBid) {
+        Random random = new Random(isBid ? 17 : 18);
+        TreeMap<Long, Long> model = new TreeMap<>();
+        long mid = 10_000;
+        for (int step = 0; step < STEPS; step++) {
+            mid += (step / 3_000 % 2 == 0 ? -1 : 1) * random.nextInt(3);
+            long price = isBid ? mid - random.nextInt(12) : mid + random.nextInt(12);
+            long size = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(100);
+            long previous = model.getOrDefault(price, 0L);
+            if (size == 0) {
+                model.remove(price);
+            } else {
+                model.put(price, size);
+            }
+            assertEquals(previous, ladder.set(price, size));
+
+            // levels that crossed the moving mid and those far behind it
+            long front = isBid ? mid + 4 : mid - 4;
+            long back = isBid ? mid - 11 : mid + 11;
+            for (long level : new ArrayList<>(model.keySet())) {
+                if (isBid ? level > front : level < front) {
+                    model.remove(level);
+                    ladder.set(level, 0);
+                }
+            }
+            if (step % 7 == 0) {
+                ladder.removeBeyond(back, (p, s) -> { });
+                (isBid ? model.headMap(back, false) : model.tailMap(back, false)).clear();
+            }
+            assertMatches(model, ladder, isBid);
+        }
+        ladder.clear();
+        assertEquals(PriceLadder.NONE, ladder.getBest());
+    }
+
+    private static void assertMatches(TreeMap<Long, Long> model, PriceLadder ladder, boolean isBid) {
+        assertEquals(model.size(), ladder.size());
+        if (model.isEmpty()) {
+            assertEquals(PriceLadder.NONE, ladder.getBest());
+            return;
+        }
+        assertEquals((long) (isBid ? model.lastKey() : model.firstKey()), ladder.getBest());
+        assertEquals((long) (isBid ? model.firstKey() : model.lastKey()), ladder.getWorst());
+        int rank = 0;
+        for (long price : isBid ? model.descendingKeySet() : model.navigableKeySet()) {
+            assertEquals(price, ladder.priceAt(rank++));
+            assertEquals((long) model.get(price), ladder.get(price));
+        }
+        assertEquals(PriceLadder.NONE, ladder.priceAt(rank));
+        TreeMap<Long, Long> visited = new TreeMap<>();
+        ladder.forEach(visited::put);
+        assertEquals(model, visited);
+    }
+}
@@ -0,0 +1,181 @@
+package com.stableapps.bookmapadapter.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.stableapps.bookmapadapter.metrics.Histogram;
+import com.stableapps.bookmapadapter.metrics.Metrics;
+import com.stableapps.bookmapadapter.model.InstrumentHandle;
+import com.stableapps.bookmapadapter.model.MarketDepths;
+import com.stableapps.bookmapadapter.model.Trade;
+import com.stableapps.bookmapadapter.util.Constants.Market;
+
+/**
+ * Feeds the messages of a primary and a standby session through a
+ * {@link FeedArbiter}. Every trade has to be forwarded exactly once and in
+ * order even if the sessions batch them into different messages, every depth
+ * message once unless it is a snapshot.
+ */
+public class FeedArbiterTest {
+
+    private final FeedArbiter.Feed feed = new FeedArbiter()
+            .feedOf(InstrumentHandle.of(Market.SPOT, "BTC-USDT"));
+    private final List<Long> forwarded = new ArrayList<>();
+    private final Histogram leadNanos = Metrics.histogram("arbiter.leadNanos");
+
+    @Test
+    public void overlappingMessagesForwardOnlyNewTrades() {
+        receive(trades(1, 2, 3), false);
+        receive(trades(1, 2), true);
+        receive(trades(3, 4), true);
+        receive(trades(4, 5), false);
+        receive(trades(5, 6), true);
+        receive(trades(6), false);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), forwarded);
+    }
+
+    @Test
+    public void differentlyBatchedSessionsForwardEveryTradeOnce() {
+        Random random = new Random(23);
+        int count = 10_000;
+        List<List<Trade>> primary = batches(count, random);
+        List<List<Trade>> standby = batches(count, random);
+        int p = 0;
+        int s = 0;
+        while (p < primary.size() || s < standby.size()) {
+            if (s == standby.size() || (p < primary.size() && random.nextBoolean())) {
+                receive(primary.get(p++), false);
+            } else {
+                receive(standby.get(s++), true);
+            }
+        }
+
+        assertEquals(count, forwarded.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i + 1, (long) forwarded.get(i));
+        }
+    }
+
+    @Test
+    public void newMessageIsForwardedAsIs() {
+        receive(trades(1, 2), false);
+        List<Trade> trades = trades(3, 4);
+
+        assertSame(trades, feed.newTrades(trades, true));
+        assertTrue(feed.newTrades(trades(3, 4), false).isEmpty());
+    }
+
+    @Test
+    public void tradeWithoutNumericIdIsForwarded() {
+        receive(trades(1, 2), false);
+        Trade unknown = Trade.builder().trade_id("x").build();
+
+        assertEquals(Arrays.asList(unknown), feed.newTrades(Arrays.asList(trade(2), unknown), true));
+    }
+
+    @Test
+    public void lateCopiesOfTradesRecordTheirLead() {
+        long count = leadNanos.getCount();
+        receive(trades(1, 2), false);
+        assertEquals(count, leadNanos.getCount());
+
+        receive(trades(1, 2), true);
+        assertEquals(count + 1, leadNanos.getCount());
+        receive(trades(2, 3), true);
+        assertEquals(count + 2, leadNanos.getCount());
+        receive(trades(4), false);
+        assertEquals(count + 2, leadNanos.getCount());
+    }
+
+    @Test
+    public void depthUpdateIsForwardedOnceAcrossSessions() {
+        assertTrue(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.001Z", 1), false));
+        assertFalse(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.001Z", 1), true));
+        assertTrue(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.002Z", 2), true));
+        assertFalse(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.002Z", 2), false));
+        assertFalse(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.001Z", 1), false));
+    }
+
+    @Test
+    public void depthUpdatesOfTheSameMillisecondAreToldApartByChecksum() {
+        assertTrue(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.001Z", 1), false));
+        assertTrue(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.001Z", 2), true));
+        assertFalse(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.001Z", 2), false));
+        assertFalse(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.001Z", 1), true));
+    }
+
+    @Test
+    public void lateCopiesOfDepthRecordTheirLead() {
+        long count = leadNanos.getCount();
+        feed.isFirstDepth("update", depths("2026-10-18T10:00:00.001Z", 1), false);
+        assertEquals(count, leadNanos.getCount());
+
+        feed.isFirstDepth("update", depths("2026-10-18T10:00:00.001Z", 1), true);
+        assertEquals(count + 1, leadNanos.getCount());
+    }
+
+    @Test
+    public void partialOlderThanAForwardedUpdateIsForwardedAndRestartsTheFeed() {
+        assertTrue(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.005Z", 5), true));
+        assertTrue(feed.isFirstDepth("partial", depths("2026-10-18T10:00:00.003Z", 3), false));
+        assertFalse(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.003Z", 3), true));
+        assertTrue(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.004Z", 4), false));
+        assertFalse(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.004Z", 4), true));
+    }
+
+    @Test
+    public void partialWithAKnownChecksumIsForwarded() {
+        assertTrue(feed.isFirstDepth("update", depths("2026-10-18T10:00:00.001Z", 1), true));
+        assertTrue(feed.isFirstDepth("partial", depths("2026-10-18T10:00:00.001Z", 1), false));
+    }
+
+    private static MarketDepths depths(String timestamp, int checksum) {
+        MarketDepths depths = new MarketDepths();
+        depths.timestamp = timestamp;
+        depths.checksum = checksum;
+        return depths;
+    }
+
+    private void receive(List<Trade> trades, boolean isStandby) {
+        for (Trade trade : feed.newTrades(trades, isStandby)) {
+            forwarded.add(Long.parseLong(trade.getTrade_id()));
+        }
+    }
+
+    /**
+     * @return trades {@code 1} to {@code count} in messages of 1 to 5 trades
+     */
+    private static List<List<Trade>> batches(int count, Random random) {
+        List<List<Trade>> batches = new ArrayList<>();
+        for (int id = 1; id <= count;) {
+            List<Trade> batch = new ArrayList<>();
+            for (int size = 1 + random.nextInt(5); size > 0 && id <= count; size--) {
+                batch.add(trade(id++));
+            }
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private static List<Trade> trades(long... ids) {
+        List<Trade> trades = new ArrayList<>();
+        for (long id : ids) {
+            trades.add(trade(id));
+        }
+        return trades;
+    }
+
+    private static Trade trade(long id) {
+        return Trade.builder().trade_id(Long.toString(id)).build();
+    }
+}
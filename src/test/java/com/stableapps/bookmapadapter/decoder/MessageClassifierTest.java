@@ -0,0 +1,104 @@
+package com.stableapps.bookmapadapter.decoder;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.stableapps.bookmapadapter.model.MessageType;
+
+/**
+ * Classification of frames as the OKEx v3 websocket sends them, by their
+ * leading {@code table}, {@code event} or {@code op} field.
+ */
+public class MessageClassifierTest {
+
+    @Test
+    public void tablesOfTheSpotAndFuturesChannels() {
+        assertEquals(MessageType.DEPTH, classify("{\"table\":\"spot/depth\",\"action\":\"partial\",\"data\":[{"
+                + "\"instrument_id\":\"ETH-USDT\",\"asks\":[[\"8.8\",\"96.99999966\",1]],\"bids\":[[\"8.6\",\"1.9\",1]],"
+                + "\"timestamp\":\"2018-12-18T09:48:05.145Z\",\"checksum\":-189285386}]}"));
+        assertEquals(MessageType.DEPTH, classify("{\"table\":\"futures/depth\",\"action\":\"update\",\"data\":[{"
+                + "\"instrument_id\":\"BTC-USD-190628\",\"asks\":[[\"3989.81\",\"0\",\"0\",\"0\"]],\"bids\":[],"
+                + "\"timestamp\":\"2019-03-06T02:20:36.402Z\",\"checksum\":-1200119424}]}"));
+        assertEquals(MessageType.TRADE, classify("{\"table\":\"spot/trade\",\"data\":[{\"instrument_id\":\"ETH-USDT\","
+                + "\"price\":\"162.12\",\"side\":\"buy\",\"size\":\"11.085\",\"timestamp\":\"2019-05-06T06:51:24.389Z\","
+                + "\"trade_id\":\"1210447366\"}]}"));
+        assertEquals(MessageType.TRADE, classify("{\"table\":\"futures/trade\",\"data\":[{\"side\":\"sell\","
+                + "\"trade_id\":\"2778148208082945\",\"price\":5556.91,\"qty\":5,\"instrument_id\":\"BTC-USD-190628\","
+                + "\"timestamp\":\"2019-05-06T07:19:37.496Z\"}]}"));
+        assertEquals(MessageType.SPOT_ORDER, classify("{\"table\":\"spot/order\",\"data\":[{\"order_id\":\"2800471712204800\"}]}"));
+        assertEquals(MessageType.FUTURES_ORDER, classify("{\"table\":\"futures/order\",\"data\":[{\"order_id\":\"2800463549964288\"}]}"));
+        assertEquals(MessageType.FUTURES_ACCOUNT, classify("{\"table\":\"futures/account\",\"data\":[{\"BTC\":{\"equity\":\"0.0225\"}}]}"));
+        assertEquals(MessageType.SPOT_ACCOUNT, classify("{\"table\":\"spot/account\",\"data\":[{\"balance\":\"2.215374581911\",\"currency\":\"USDT\"}]}"));
+        assertEquals(MessageType.FUTURES_POSITION, classify("{\"table\":\"futures/position\",\"data\":[{\"long_qty\":\"1\"}]}"));
+    }
+
+    @Test
+    public void unknownTableIsAString() {
+        assertEquals(MessageType.STRING, classify("{\"table\":\"spot/ticker\",\"data\":[{\"instrument_id\":\"ETH-USDT\",\"last\":\"8.8\"}]}"));
+        assertEquals(MessageType.STRING, classify("{\"table\":\"spot/depth5\",\"data\":[]}"));
+    }
+
+    @Test
+    public void subscriptionsByTheirChannelBeforeTheInstrument() {
+        assertEquals(MessageType.DEPTH_SUBSCRIBED, classify("{\"event\":\"subscribe\",\"channel\":\"spot/depth:ETH-USDT\"}"));
+        assertEquals(MessageType.DEPTH_SUBSCRIBED, classify("{\"event\":\"subscribe\",\"channel\":\"futures/depth:BTC-USD-190628\"}"));
+        assertEquals(MessageType.TRADE_SUBSCRIBED, classify("{\"event\":\"subscribe\",\"channel\":\"futures/trade:BTC-USD-190628\"}"));
+        assertEquals(MessageType.ORDER_SUBSCRIBED, classify("{\"event\":\"subscribe\",\"channel\":\"spot/order:ETH-USDT\"}"));
+        assertEquals(MessageType.FUTURES_ACCOUNT_SUBSCRIBED, classify("{\"event\":\"subscribe\",\"channel\":\"futures/account:BTC\"}"));
+        assertEquals(MessageType.SPOT_ACCOUNT_SUBSCRIBED, classify("{\"event\":\"subscribe\",\"channel\":\"spot/account:USDT\"}"));
+        assertEquals(MessageType.SPOT_MARGIN_ACCOUNT_SUBSCRIBED, classify("{\"event\":\"subscribe\",\"channel\":\"spot/margin_account:BTC-USDT\"}"));
+        assertEquals(MessageType.FUTURES_POSITION_SUBSCRIBED, classify("{\"event\":\"subscribe\",\"channel\":\"futures/position:BTC-USD-190628\"}"));
+        assertEquals(MessageType.STRING, classify("{\"event\":\"subscribe\",\"channel\":\"spot/ticker:ETH-USDT\"}"));
+        assertEquals(MessageType.STRING, classify("{\"event\":\"subscribe\"}"));
+    }
+
+    @Test
+    public void events() {
+        assertEquals(MessageType.UNSUBSCRIBED, classify("{\"event\":\"unsubscribe\",\"channel\":\"spot/depth:ETH-USDT\"}"));
+        assertEquals(MessageType.LOGIN, classify("{\"event\":\"login\",\"success\":true}"));
+        assertEquals(MessageType.PONG, classify("{\"op\":\"pong\"}"));
+    }
+
+    @Test
+    public void authenticationErrorsAnswerTheLogin() {
+        assertEquals(MessageType.LOGIN, classify("{\"event\":\"error\",\"message\":\"Invalid sign\",\"errorCode\":30013}"));
+        assertEquals(MessageType.LOGIN, classify("{\"event\":\"error\",\"message\":\"Invalid OK_ACCESS_KEY\",\"errorCode\":\"30006\"}"));
+        assertEquals(MessageType.STRING, classify("{\"event\":\"error\",\"message\":\"Channel spot/depth:ETH-USD doesn't exist\",\"errorCode\":30040}"));
+        assertEquals(MessageType.STRING, classify("{\"event\":\"error\",\"message\":\"Unknown\"}"));
+    }
+
+    @Test
+    public void whitespaceAndLeadingBracket() {
+        assertEquals(MessageType.DEPTH_SUBSCRIBED, classify(" { \"event\" : \"subscribe\" , \"channel\" : \"spot/depth:ETH-USDT\" }"));
+        assertEquals(MessageType.TRADE, classify("[{\"table\":\"spot/trade\",\"data\":[]}]"));
+        assertEquals(MessageType.LOGIN, classify("\n[ {\"event\":\"login\",\"success\":true} ]"));
+    }
+
+    @Test
+    public void framesThatAreNotObjectsAreStrings() {
+        assertEquals(MessageType.STRING, classify("pong"));
+        assertEquals(MessageType.STRING, classify(""));
+        assertEquals(MessageType.STRING, classify("{"));
+        assertEquals(MessageType.STRING, classify("{\"table\":\"spot/dep"));
+        assertEquals(MessageType.STRING, classify("{\"instrument_id\":\"ETH-USDT\",\"table\":\"spot/depth\"}"));
+    }
+
+    @Test
+    public void readsOnlyTheGivenRange() {
+        String frame = "{\"table\":\"spot/trade\",\"data\":[]}";
+        byte[] bytes = ("xx{\"event\":\"login\"}" + frame + "{\"op\":\"pong\"}").getBytes(StandardCharsets.US_ASCII);
+        int offset = bytes.length - frame.length() - "{\"op\":\"pong\"}".length();
+
+        assertEquals(MessageType.TRADE, MessageClassifier.classify(bytes, offset, frame.length()));
+        // a frame cut before its channel value ends
+        assertEquals(MessageType.STRING, MessageClassifier.classify(bytes, offset, 18));
+    }
+
+    private static MessageType classify(String frame) {
+        byte[] bytes = frame.getBytes(StandardCharsets.US_ASCII);
+        return MessageClassifier.classify(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,129 @@
+package com.stableapps.bookmapadapter.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.stableapps.bookmapadapter.book.DepthBook;
+import com.stableapps.bookmapadapter.model.DepthLevels;
+import com.stableapps.bookmapadapter.model.InstrumentHandle;
+import com.stableapps.bookmapadapter.model.SubscribeContractMarketDepthResponse;
+import com.stableapps.bookmapadapter.util.Constants.Market;
+import com.stableapps.bookmapadapter.util.FixedPoint;
+
+/**
+ * Decoding of {@code futures/depth} and {@code spot/depth} frames as OKEx
+ * sends them, down to the checksum of the book they build.
+ */
+public class SubscribeContractMarketDepthIncrementalResponseDecoderTest {
+
+    private static final String FUTURES_PARTIAL = "{\"table\":\"futures/depth\",\"action\":\"partial\",\"data\":[{"
+            + "\"instrument_id\":\"BTC-USD-190628\","
+            + "\"asks\":[[\"3366.8\",\"9\",\"0\",\"2\"],[\"3368\",\"8\",\"0\",\"1\"]],"
+            + "\"bids\":[[\"3366.1\",\"7\",\"0\",\"3\"],[\"3366\",\"6\",\"1\",\"2\"]],"
+            + "\"timestamp\":\"2019-03-06T02:19:56.701Z\",\"checksum\":-1881014294}]}";
+
+    private static final String FUTURES_UPDATE = "{\"table\":\"futures/depth\",\"action\":\"update\",\"data\":[{"
+            + "\"instrument_id\":\"BTC-USD-190628\","
+            + "\"asks\":[[\"3372\",\"8\",\"0\",\"1\"]],"
+            + "\"bids\":[[\"3366\",\"0\",\"0\",\"0\"]],"
+            + "\"timestamp\":\"2019-03-06T02:19:57.059Z\",\"checksum\":831078360}]}";
+
+    private static final String SPOT_PARTIAL = "{\"table\":\"spot/depth\",\"action\":\"partial\",\"data\":[{"
+            + "\"instrument_id\":\"ETH-USDT\","
+            + "\"asks\":[[\"8.8\",\"96.99999966\",1],[\"9\",\"39\",3],[\"9.5\",\"100\",1]],"
+            + "\"bids\":[[\"8.6\",\"0.10\",1],[\"8.5\",\"1.50000000\",2]],"
+            + "\"timestamp\":\"2018-12-18T09:48:05.145Z\",\"checksum\":1019734610}]}";
+
+    private final SubscribeContractMarketDepthIncrementalResponseDecoder decoder =
+            new SubscribeContractMarketDepthIncrementalResponseDecoder();
+
+    @Test
+    public void futuresPartial() throws Exception {
+        SubscribeContractMarketDepthResponse response = decode(FUTURES_PARTIAL);
+
+        assertEquals("partial", response.action);
+        assertSame(InstrumentHandle.of(Market.FUTURES, "BTC-USD-190628"), response.instrument);
+        assertEquals("BTC-USD-190628", response.data.instrument_id);
+        assertEquals("2019-03-06T02:19:56.701Z", response.data.timestamp);
+        assertEquals(-1881014294, response.data.checksum);
+        assertLevels(response.data.getAsks(), "3366.8", "9", "3368", "8");
+        assertLevels(response.data.getBids(), "3366.1", "7", "3366", "6");
+    }
+
+    @Test
+    public void spotPartialKeepsTheDecimalsOfTheText() throws Exception {
+        SubscribeContractMarketDepthResponse response = decode(SPOT_PARTIAL);
+
+        assertSame(InstrumentHandle.of(Market.SPOT, "ETH-USDT"), response.instrument);
+        assertEquals(1019734610, response.data.checksum);
+        assertLevels(response.data.getAsks(), "8.8", "96.99999966", "9", "39", "9.5", "100");
+        assertLevels(response.data.getBids(), "8.6", "0.10", "8.5", "1.50000000");
+    }
+
+    @Test
+    public void reusedResponseHoldsOnlyTheLatestFrame() throws Exception {
+        decode(FUTURES_PARTIAL);
+        SubscribeContractMarketDepthResponse response = decode(FUTURES_UPDATE);
+
+        assertEquals("update", response.action);
+        assertEquals(831078360, response.data.checksum);
+        assertLevels(response.data.getAsks(), "3372", "8");
+        assertLevels(response.data.getBids(), "3366", "0");
+    }
+
+    @Test
+    public void framesBuildTheBookTheyWereChecksummedFrom() throws Exception {
+        DepthBook book = new DepthBook();
+        for (String frame : new String[] { FUTURES_PARTIAL, FUTURES_UPDATE, SPOT_PARTIAL }) {
+            SubscribeContractMarketDepthResponse response = decode(frame);
+            if ("partial".equals(response.action)) {
+                book.clear();
+            }
+            book.apply(response.data.getBids(), true);
+            book.apply(response.data.getAsks(), false);
+
+            assertEquals(response.data.checksum, book.checksum());
+        }
+    }
+
+    @Test
+    public void levelsOfSeveralDigitsAndExtraFieldsAreSkipped() throws Exception {
+        SubscribeContractMarketDepthResponse response = decode("{\"table\":\"spot/depth\",\"action\":\"update\","
+                + "\"data\":[{\"instrument_id\":\"BTC-USDT\",\"asks\":[],\"bids\":[[\"3960.25\",\"0.002\",\"0\",\"1\"]],"
+                + "\"extra\":{\"nested\":[1,2]},\"timestamp\":\"2019-05-06T07:19:37.496Z\",\"checksum\":7}]}");
+
+        assertEquals(0, response.data.getAsks().size());
+        assertLevels(response.data.getBids(), "3960.25", "0.002");
+        assertEquals(7, response.data.checksum);
+    }
+
+    @Test
+    public void frameThatIsNotAnObjectIsNotDecoded() throws Exception {
+        assertNull(decode("pong"));
+    }
+
+    /**
+     * @param pricesAndSizes price and size text of each level, in turn
+     */
+    private static void assertLevels(DepthLevels levels, String... pricesAndSizes) {
+        assertEquals(pricesAndSizes.length / 2, levels.size());
+        for (int i = 0; i < levels.size(); i++) {
+            String price = pricesAndSizes[2 * i];
+            String size = pricesAndSizes[2 * i + 1];
+            assertEquals(FixedPoint.parse(price), levels.getPrice(i));
+            assertEquals(FixedPoint.parse(size), levels.getSize(i));
+            assertEquals(FixedPoint.decimals(price.toCharArray(), 0, price.length()), levels.getPriceDecimals(i));
+            assertEquals(FixedPoint.decimals(size.toCharArray(), 0, size.length()), levels.getSizeDecimals(i));
+        }
+    }
+
+    private SubscribeContractMarketDepthResponse decode(String frame) throws Exception {
+        byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+        return decoder.decode(bytes, 0, bytes.length);
+    }
+}
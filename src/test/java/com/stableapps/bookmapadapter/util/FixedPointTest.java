@@ -0,0 +1,125 @@
+package com.stableapps.bookmapadapter.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Parsing and writing of {@link FixedPoint} values as OKEx sends them, and
+ * the steps an instrument may have.
+ */
+public class FixedPointTest {
+
+    @Test
+    public void parsesOkexPricesAndSizes() {
+        assertEquals(396_025_000_000L, FixedPoint.parse("3960.25"));
+        assertEquals(-396_025_000_000L, FixedPoint.parse("-3960.25"));
+        assertEquals(700_000_000L, FixedPoint.parse("7"));
+        assertEquals(1L, FixedPoint.parse("0.00000001"));
+        assertEquals(50_000_000L, FixedPoint.parse(".5"));
+        assertEquals(150_000_000L, FixedPoint.parse("+1.5"));
+        assertEquals(123_000_000L, FixedPoint.parse("1.23e0"));
+    }
+
+    @Test
+    public void truncatesDigitsBeyondEightDecimals() {
+        assertEquals(1L, FixedPoint.parse("0.000000010"));
+        assertEquals(110_000_000L, FixedPoint.parse("1.1000000000"));
+        assertEquals(1L, FixedPoint.parse("0.000000019"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsText() {
+        FixedPoint.parse("1.2.3");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsSignOnly() {
+        FixedPoint.parse("-");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsValuesBeyondRange() {
+        FixedPoint.parse("100000000000000");
+    }
+
+    @Test
+    public void countsTheDecimalsOfTheText() {
+        assertEquals(0, decimals("3366"));
+        assertEquals(1, decimals("3366.1"));
+        assertEquals(2, decimals("3366.10"));
+        assertEquals(9, decimals("0.000000010"));
+        assertEquals(FixedPoint.MAX_TEXT_DECIMALS, decimals("0.00000000000000000000000001"));
+    }
+
+    @Test
+    public void writesTheTextBack() {
+        for (String text : new String[] { "3366", "3366.1", "3366.10", "-0.5", "0.00000001", "0.000000010",
+                "1.1000000000", "92233720368.54775807" }) {
+            assertEquals(text, write(FixedPoint.parse(text), decimals(text)));
+        }
+    }
+
+    @Test
+    public void writesFewerDecimalsThanKept() {
+        assertEquals("3960.2", write(FixedPoint.parse("3960.25"), 1));
+        assertEquals("3960", write(FixedPoint.parse("3960.25"), 0));
+    }
+
+    @Test
+    public void stepsOfEightDecimalsAreRepresentable() {
+        assertTrue(FixedPoint.isRepresentable(0.1));
+        assertTrue(FixedPoint.isRepresentable(0.00000001));
+        assertTrue(FixedPoint.isRepresentable(100));
+        // double noise of a step computed from another one
+        assertTrue(FixedPoint.isRepresentable(0.1 * 3));
+    }
+
+    @Test
+    public void finerStepsAreNotRepresentable() {
+        assertFalse(FixedPoint.isRepresentable(0.000000001));
+        assertFalse(FixedPoint.isRepresentable(0.000000015));
+        assertFalse(FixedPoint.isRepresentable(0));
+        assertFalse(FixedPoint.isRepresentable(-0.1));
+        assertFalse(FixedPoint.isRepresentable(Double.NaN));
+        assertFalse(FixedPoint.isRepresentable(Double.POSITIVE_INFINITY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unitRefusesFinerSteps() {
+        FixedPoint.Unit.of(0.000000001);
+    }
+
+    @Test
+    public void unitCountsTicks() {
+        FixedPoint.Unit tick = FixedPoint.Unit.of(0.25);
+        long price = FixedPoint.parse("100.30");
+
+        assertEquals(401, tick.floor(price));
+        assertEquals(402, tick.ceil(price));
+        assertEquals(401, tick.round(price));
+        assertEquals(FixedPoint.parse("100.25"), tick.value(401));
+    }
+
+    @Test
+    public void unitOfAMultiplierThatDoesNotTerminate() {
+        FixedPoint.Unit third = FixedPoint.Unit.perOne(3);
+
+        assertEquals(3, third.truncate(FixedPoint.parse("1.0")));
+        assertEquals(4, third.ceil(FixedPoint.parse("1.1")));
+    }
+
+    private static int decimals(String text) {
+        return FixedPoint.decimals(text.toCharArray(), 0, text.length());
+    }
+
+    private static String write(long value, int decimals) {
+        byte[] buffer = new byte[64];
+        int end = FixedPoint.write(value, decimals, buffer, 0);
+        return new String(buffer, 0, end, StandardCharsets.US_ASCII);
+    }
+}